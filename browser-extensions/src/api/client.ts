@@ -14,7 +14,15 @@ const COMMANDS = {
   DELETE_FILE: 6,
   STOP_DOWNLOADING: 7,
   RESUME_DOWNLOADING: 8,
-  LIST_FOLDERS: 9
+  LIST_FOLDERS: 9,
+  SEARCH_FILES: 10,
+  GET_STATISTICS: 11,
+  NOT_MODIFIED: 12,
+  GET_CHANGES: 13,
+  FILES_DELTA_REPORT: 14,
+  SUBSCRIBE_REPORTS: 15,
+  SUBSCRIBE_FILES: 16,
+  UNSUBSCRIBE_FILES: 17
 };
 
 interface WebSocketClientHandler {
@@ -165,12 +173,57 @@ export default class WebSocketClient {
     return this.send(COMMANDS.LOGIN, JSON.stringify({ username, password, subscribeOnDownloadingFilesReport: true }));
   }
 
+  /**
+   * Changes the report subscription, e.g. to report less often, while the page is in the background.
+   * Interval of 0 restores the default one.
+   */
+  subscribeReports(deltaReports: boolean, reportIntervalMillis: number) {
+    return this.send(COMMANDS.SUBSCRIBE_REPORTS, JSON.stringify({deltaReports, reportIntervalMillis}));
+  }
+
+  /**
+   * Narrows the reports to the visible files: the files by id plus a page of the history,
+   * the rest of the downloading files is reported only as an aggregate. Page size of 0 keeps the previous page.
+   */
+  subscribeFiles(fileIds: string[] | null, pageOffset: number, pageSize: number) {
+    return this.send(COMMANDS.SUBSCRIBE_FILES, JSON.stringify({fileIds, pageOffset, pageSize}));
+  }
+
+  /**
+   * Once no files are visible, all of them are reported again.
+   */
+  unsubscribeFiles(fileIds: string[] | null, page: boolean) {
+    return this.send(COMMANDS.UNSUBSCRIBE_FILES, JSON.stringify({fileIds, page}));
+  }
+
   downloadFile(url: string, fileName: string, path?: string): Promise<HistoryFile> {
     return this.send(COMMANDS.DOWNLOAD_URL, JSON.stringify({url, fileName, path}));
   }
 
-  getFilesHistory(offset: number, size: number): Promise<Page<HistoryFile>> {
-    return this.send(COMMANDS.GET_FILES_HISTORY, JSON.stringify({offset, size}));
+  getFilesHistory(offset: number, size: number, cursor?: string): Promise<Page<HistoryFile>> {
+    return this.send(COMMANDS.GET_FILES_HISTORY, JSON.stringify({offset, size, cursor}));
+  }
+
+  /**
+   * Resolves with null, if the files are not changed since the page of the version was received.
+   */
+  getFilesHistoryIfModified(offset: number, size: number, version: number, cursor?: string): Promise<Page<HistoryFile> | null> {
+    return this.send(COMMANDS.GET_FILES_HISTORY, JSON.stringify({offset, size, cursor, version}));
+  }
+
+  searchFiles(query: string | null, status: HistoryFile['status'] | null, offset: number, size: number): Promise<Page<HistoryFile>> {
+    return this.send(COMMANDS.SEARCH_FILES, JSON.stringify({query, status, offset, size}));
+  }
+
+  /**
+   * Without the sequence, returns only the current position to read the changes after.
+   */
+  getChanges(afterSequence: number | null, size: number): Promise<ChangesResponse> {
+    return this.send(COMMANDS.GET_CHANGES, JSON.stringify({afterSequence, size}));
+  }
+
+  getStatistics(): Promise<StatisticsResponse> {
+    return this.send(COMMANDS.GET_STATISTICS, JSON.stringify(null));
   }
 
   stopDownloading(fileId: string): Promise<HistoryFile> {
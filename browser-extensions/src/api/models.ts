@@ -1,6 +1,8 @@
 type Page<T> = {
   content: T[]
   totalElements: number
+  nextCursor?: string
+  version?: number
 }
 
 interface HistoryFile {
@@ -12,8 +14,56 @@ interface HistoryFile {
   speedBytesPerSecond: number
 }
 
+interface FilesStatistics {
+  filesCountByStatus: Record<HistoryFile['status'], number>
+  downloadedBytes: number
+  speedBytesPerSecond: number
+}
+
+// downloading files, which are not visible to the subscription, summed up
+interface FilesAggregate {
+  filesCount: number
+  totalBytes: number
+  downloadedBytes: number
+  speedBytesPerSecond: number
+}
+
 interface FilesHistoryReport {
   files: HistoryFile[]
+  statistics: FilesStatistics
+  others?: FilesAggregate
+}
+
+interface ReportedFile {
+  handle: number
+  file: HistoryFile
+}
+
+interface FilesDeltaReport {
+  files: ReportedFile[]
+  // handle, downloaded bytes and speed of every file, one after another
+  progress: number[]
+  statistics?: FilesStatistics
+  others?: FilesAggregate
+}
+
+interface StatisticsResponse {
+  user: FilesStatistics
+  server?: FilesStatistics
+}
+
+interface FileChange {
+  sequence: number
+  type: 'CREATED' | 'UPDATED' | 'DELETED'
+  fileId: string
+  file?: HistoryFile
+}
+
+interface ChangesResponse {
+  changes: FileChange[]
+  lastSequence: number
+  hasMore: boolean
+  reset: boolean
 }
 
 interface ListFile {
@@ -2,17 +2,26 @@ package io.remotedownloader;
 
 import io.remotedownloader.dao.DownloadManagerDao;
 import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.HistoryArchiveDao;
+import io.remotedownloader.dao.KeyValueStorageDao;
+import io.remotedownloader.dao.LogStorageDao;
 import io.remotedownloader.dao.SessionDao;
+import io.remotedownloader.dao.ShardedStorageDao;
 import io.remotedownloader.dao.StorageDao;
 import io.remotedownloader.dao.ThreadPoolsHolder;
 import io.remotedownloader.dao.TransportTypeHolder;
 import io.remotedownloader.dao.UserDao;
 
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 public class Holder {
     public final ServerProperties serverProperties;
     public final TransportTypeHolder transportTypeHolder;
     public final ThreadPoolsHolder threadPoolsHolder;
     public final StorageDao storageDao;
+    public final HistoryArchiveDao historyArchiveDao;
     public final FilesStorageDao filesStorageDao;
     public final DownloadManagerDao downloadManagerDao;
     public final UserDao userDao;
@@ -25,12 +34,46 @@ public class Holder {
     public Holder(ServerProperties serverProperties) {
         this.serverProperties = serverProperties;
         this.transportTypeHolder = new TransportTypeHolder(serverProperties);
-        this.threadPoolsHolder = new ThreadPoolsHolder();
-        this.storageDao = new StorageDao(serverProperties, threadPoolsHolder);
-        this.filesStorageDao = new FilesStorageDao(storageDao);
+        this.threadPoolsHolder = new ThreadPoolsHolder(Math.max(serverProperties.getStorageShards(), 1));
+        this.storageDao = createStorageDao(serverProperties, threadPoolsHolder);
+        this.historyArchiveDao = new HistoryArchiveDao(Path.of(serverProperties.getHistoryArchiveFolder()));
+        this.filesStorageDao = new FilesStorageDao(storageDao, historyArchiveDao, serverProperties.getChangeFeedSize());
         this.downloadManagerDao = new DownloadManagerDao(
                 serverProperties, transportTypeHolder, filesStorageDao, threadPoolsHolder);
         this.userDao = new UserDao(storageDao);
-        this.sessionDao = new SessionDao();
+        this.sessionDao = new SessionDao(serverProperties.getReportIntervalMillis());
+    }
+
+    private static StorageDao createStorageDao(ServerProperties serverProperties, ThreadPoolsHolder threadPoolsHolder) {
+        Path storagePath = Path.of(serverProperties.getStorageFile());
+        if (threadPoolsHolder.storageThreadPoolExecutors.length == 1) {
+            return createStorageShard(serverProperties, storagePath, threadPoolsHolder.storageThreadPoolExecutor);
+        }
+
+        // the first shard keeps the original file name, so the existing storage is picked up
+        return new ShardedStorageDao(threadPoolsHolder.storageThreadPoolExecutors, (shard, executor) -> createStorageShard(
+                serverProperties,
+                shard == 0 ? storagePath : storagePath.resolveSibling(storagePath.getFileName() + "." + shard),
+                executor));
+    }
+
+    private static StorageDao createStorageShard(ServerProperties serverProperties,
+                                                 Path storagePath,
+                                                 ScheduledExecutorService storageExecutor) {
+        return switch (serverProperties.getStorageType()) {
+            case "log" -> new LogStorageDao(
+                    storagePath,
+                    storageExecutor,
+                    serverProperties.getStorageCoalesceWindowMillis(),
+                    serverProperties.getStorageFsync(),
+                    TimeUnit.MINUTES.toMillis(serverProperties.getStorageCompactionIntervalMinutes()));
+            // "indexed" is the former name of the type
+            case "kv", "indexed" -> new KeyValueStorageDao(
+                    storagePath,
+                    storageExecutor,
+                    serverProperties.getStorageCoalesceWindowMillis(),
+                    serverProperties.getStorageFsync());
+            default -> throw new IllegalArgumentException("Unknown storage type: " + serverProperties.getStorageType());
+        };
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package io.remotedownloader;
 
 import io.remotedownloader.server.HttpServer;
 import io.remotedownloader.worker.DownloadingFilesReportWorker;
+import io.remotedownloader.worker.RetentionWorker;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -18,9 +19,12 @@ public class RemoteDownloader {
         HttpServer httpServer = new HttpServer(holder);
         httpServer.start();
 
-        holder.threadPoolsHolder.scheduledThreadPoolExecutor.scheduleAtFixedRate(
-                new DownloadingFilesReportWorker(holder),
-                1, 1, TimeUnit.SECONDS);
+        new DownloadingFilesReportWorker(holder).start(holder.transportTypeHolder.workerGroup);
+
+        int retentionIntervalMinutes = holder.serverProperties.getRetentionIntervalMinutes();
+        holder.threadPoolsHolder.scheduledThreadPoolExecutor.scheduleWithFixedDelay(
+                new RetentionWorker(holder),
+                retentionIntervalMinutes, retentionIntervalMinutes, TimeUnit.MINUTES);
 
         if (!holder.userDao.hasAdminUser()) {
             holder.userDao.createAdmin();
@@ -39,6 +43,12 @@ public class RemoteDownloader {
                 log.warn("Failed to gracefully shutdown thread pools", e);
             }
 
+            try {
+                holder.storageDao.close();
+            } catch (Exception e) {
+                log.warn("Failed to gracefully close the storage", e);
+            }
+
             try {
                 holder.transportTypeHolder.close();
             } catch (Exception e) {
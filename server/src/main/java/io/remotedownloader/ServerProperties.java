@@ -1,12 +1,16 @@
 package io.remotedownloader;
 
+import io.remotedownloader.dao.ChangeFeed;
+import io.remotedownloader.model.DownloadingFileStatus;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.EnumSet;
 import java.util.Properties;
+import java.util.Set;
 
 public class ServerProperties extends Properties {
     private static final Logger log = LogManager.getLogger(ServerProperties.class);
@@ -87,6 +91,48 @@ public class ServerProperties extends Properties {
         return getProperty("storage.file", "./storage");
     }
 
+    public String getStorageType() {
+        return getProperty("storage.type", "log");
+    }
+
+    public int getStorageShards() {
+        return getIntProperty("storage.shards", 1);
+    }
+
+    public int getStorageCompactionIntervalMinutes() {
+        return getIntProperty("storage.compaction.interval.minutes", 60);
+    }
+
+    public String getHistoryArchiveFolder() {
+        return getProperty("storage.archive.folder", "./archive");
+    }
+
+    public int getRetentionMaxAgeDays() {
+        return getIntProperty("retention.max.age.days", 0);
+    }
+
+    public int getRetentionMaxFilesPerUser() {
+        return getIntProperty("retention.max.files.per.user", 0);
+    }
+
+    public Set<DownloadingFileStatus> getRetentionStatuses() {
+        Set<DownloadingFileStatus> statuses = EnumSet.noneOf(DownloadingFileStatus.class);
+        for (String status : getProperty("retention.statuses", "DOWNLOADED,ERROR").split(",")) {
+            try {
+                statuses.add(DownloadingFileStatus.valueOf(status.trim()));
+            } catch (Exception e) {
+                log.warn("Unknown status '{}' in 'retention.statuses' property", status, e);
+            }
+        }
+        // files, that are being downloaded, are never archived
+        statuses.remove(DownloadingFileStatus.DOWNLOADING);
+        return statuses;
+    }
+
+    public int getRetentionIntervalMinutes() {
+        return getIntProperty("retention.interval.minutes", 10);
+    }
+
     public boolean getFollowRedirect() {
         return getBooleanProperty("follow.redirect", false);
     }
@@ -115,6 +161,42 @@ public class ServerProperties extends Properties {
         return getIntProperty("file.commit.size", 1024 * 1024 * 1024); // 1GB
     }
 
+    public int getStorageCoalesceWindowMillis() {
+        return getIntProperty("storage.coalesce.window.millis", 50);
+    }
+
+    public boolean getStorageFsync() {
+        return getBooleanProperty("storage.fsync", true);
+    }
+
+    public boolean getDurableAcknowledgements() {
+        return getBooleanProperty("storage.durable.acknowledgements", true);
+    }
+
+    public int getReportIntervalMillis() {
+        return getIntProperty("report.interval.millis", 1000);
+    }
+
+    public int getChangeFeedSize() {
+        return getIntProperty("change.feed.size", ChangeFeed.DEFAULT_CAPACITY);
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return getIntProperty("write.buffer.low.water.mark", 32 * 1024); // 32KB
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return getIntProperty("write.buffer.high.water.mark", 64 * 1024); // 64KB
+    }
+
+    public int getSessionOutboundBudgetBytes() {
+        return getIntProperty("session.outbound.budget.bytes", 1024 * 1024); // 1MB
+    }
+
+    public int getSessionLagTimeoutMillis() {
+        return getIntProperty("session.lag.timeout.millis", 30_000);
+    }
+
     private int getIntProperty(String key, int defaultValue) {
         String strValue = getProperty(key);
         if (strValue != null) {
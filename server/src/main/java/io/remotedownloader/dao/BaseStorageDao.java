@@ -0,0 +1,224 @@
+package io.remotedownloader.dao;
+
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.StorageAction;
+import io.remotedownloader.model.StorageModel;
+import io.remotedownloader.model.StorageRecord;
+import io.remotedownloader.model.dto.Error;
+import io.remotedownloader.protocol.ErrorException;
+import io.remotedownloader.util.LatencyHistogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces storage actions per record and writes them in batches (group commits) on the storage executor.
+ */
+public abstract class BaseStorageDao implements StorageDao {
+    private static final Logger log = LogManager.getLogger(BaseStorageDao.class);
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 100;
+    protected final ScheduledExecutorService storageExecutor;
+    private final long coalesceWindowMillis;
+
+    // the latest not yet written action per record, guarded by itself
+    private final Map<StorageKey, PendingAction> pendingActions = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    private final LongAdder submittedActions = new LongAdder();
+    private final LongAdder writtenActions = new LongAdder();
+    private final LatencyHistogram acknowledgementLatency = new LatencyHistogram();
+
+    protected BaseStorageDao(ScheduledExecutorService storageExecutor, long coalesceWindowMillis) {
+        this.storageExecutor = storageExecutor;
+        this.coalesceWindowMillis = coalesceWindowMillis;
+    }
+
+    @Override
+    public CompletableFuture<Void> saveRecord(StorageRecord<?> record) {
+        return saveEntry(new StorageKey(record.getModel(), record.getId()), new StorageAction.Save(record));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveProgress(DownloadingFile file, long commitedDownloadedBytes, long updatedAt) {
+        return saveEntry(new StorageKey(StorageModel.DOWNLOADING_FILE, file.id),
+                new StorageAction.Progress(file.id, file.status, commitedDownloadedBytes, updatedAt));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteRecord(StorageRecord<?> record) {
+        return saveEntry(new StorageKey(record.getModel(), record.getId()),
+                new StorageAction.Delete(record.getModel(), record.getId()));
+    }
+
+    private CompletableFuture<Void> saveEntry(StorageKey key, StorageAction action) {
+        submittedActions.increment();
+        PendingWrite write = new PendingWrite(new CompletableFuture<>(), System.nanoTime());
+
+        boolean scheduleFlush;
+        synchronized (pendingActions) {
+            // re-inserting the key, so the log keeps the order of the latest changes
+            PendingAction pendingAction = pendingActions.remove(key);
+            if (pendingAction == null) {
+                pendingAction = new PendingAction(key, action);
+            } else {
+                pendingAction.action = merge(pendingAction.action, action);
+            }
+            // the superseded writes are acknowledged together with the latest one
+            pendingAction.writes.add(write);
+            pendingActions.put(key, pendingAction);
+
+            scheduleFlush = !flushScheduled;
+            flushScheduled = true;
+        }
+
+        if (scheduleFlush) {
+            storageExecutor.schedule(this::flushPendingActions, coalesceWindowMillis, TimeUnit.MILLISECONDS);
+        }
+        return write.future;
+    }
+
+    private void flushPendingActions() {
+        List<PendingAction> pending;
+        synchronized (pendingActions) {
+            pending = new ArrayList<>(pendingActions.values());
+            pendingActions.clear();
+            flushScheduled = false;
+        }
+
+        List<StorageAction> actions = new ArrayList<>(pending.size());
+        for (PendingAction action : pending) {
+            actions.add(action.action);
+        }
+
+        try {
+            writeActions(actions);
+        } catch (Exception e) {
+            log.warn("Failed to save the records to the storage", e);
+            retryOrFail(pending, e);
+            return;
+        }
+
+        for (PendingAction action : pending) {
+            for (PendingWrite write : action.writes) {
+                acknowledgementLatency.recordSince(write.submittedAt);
+                write.future.complete(null);
+            }
+        }
+
+        writtenActions.add(actions.size());
+        if (log.isDebugEnabled()) {
+            log.debug("Flushed {} storage actions, coalescing ratio is {}, acknowledgement latency is {}",
+                    actions.size(), getCoalescingRatio(), acknowledgementLatency);
+        }
+    }
+
+    /**
+     * Puts the failed actions back to the pending ones, so they are written with the next batch,
+     * and fails the writes of the actions, which are out of attempts.
+     */
+    private void retryOrFail(List<PendingAction> pending, Exception cause) {
+        List<PendingAction> failed = new ArrayList<>();
+        boolean scheduleFlush = false;
+        synchronized (pendingActions) {
+            for (PendingAction action : pending) {
+                if (++action.attempts >= MAX_WRITE_ATTEMPTS) {
+                    failed.add(action);
+                    continue;
+                }
+
+                PendingAction newerAction = pendingActions.get(action.key);
+                if (newerAction == null) {
+                    pendingActions.put(action.key, action);
+                } else {
+                    // the record was changed since the batch was taken, the newer action supersedes the failed one
+                    newerAction.action = merge(action.action, newerAction.action);
+                    newerAction.writes.addAll(0, action.writes);
+                }
+            }
+
+            if (!pendingActions.isEmpty() && !flushScheduled) {
+                flushScheduled = true;
+                scheduleFlush = true;
+            }
+        }
+
+        if (scheduleFlush) {
+            storageExecutor.schedule(this::flushPendingActions,
+                    Math.max(coalesceWindowMillis, RETRY_DELAY_MILLIS), TimeUnit.MILLISECONDS);
+        }
+
+        if (!failed.isEmpty()) {
+            log.warn("Failed to save {} storage actions after {} attempts", failed.size(), MAX_WRITE_ATTEMPTS);
+            ErrorException error = new ErrorException(Error.ErrorTypes.UNKNOWN, "Failed to save changes.", cause);
+            for (PendingAction action : failed) {
+                // from the newest, so the callbacks rolling back the state restore the oldest state last
+                for (int i = action.writes.size() - 1; i >= 0; i--) {
+                    action.writes.get(i).future.completeExceptionally(error);
+                }
+            }
+        }
+    }
+
+    private static StorageAction merge(StorageAction previousAction, StorageAction action) {
+        if (previousAction instanceof StorageAction.Save(StorageRecord<?> record)
+            && action instanceof StorageAction.Progress progress) {
+            // the full record is not written yet, so the progress has to be folded onto it
+            return new StorageAction.Save(((DownloadingFile) record).withProgress(
+                    progress.status(), progress.commitedDownloadedBytes(), progress.updatedAt()));
+        }
+        return action;
+    }
+
+    /**
+     * Durably persists the batch of actions. Called only from the storage executor.
+     */
+    protected abstract void writeActions(List<StorageAction> actions) throws Exception;
+
+    @Override
+    public LatencyHistogram getAcknowledgementLatency() {
+        return acknowledgementLatency;
+    }
+
+    public long getSubmittedActionsCount() {
+        return submittedActions.sum();
+    }
+
+    public long getWrittenActionsCount() {
+        return writtenActions.sum();
+    }
+
+    /**
+     * @return how many submitted actions correspond to a single written one, {@code 1.0} means no coalescing.
+     */
+    public double getCoalescingRatio() {
+        long written = writtenActions.sum();
+        return written == 0 ? 1.0 : (double) submittedActions.sum() / written;
+    }
+
+    private record StorageKey(StorageModel model, Object id) {
+    }
+
+    private static final class PendingAction {
+        private final StorageKey key;
+        private final List<PendingWrite> writes = new ArrayList<>(1);
+        private StorageAction action;
+        private int attempts;
+
+        private PendingAction(StorageKey key, StorageAction action) {
+            this.key = key;
+            this.action = action;
+        }
+    }
+
+    private record PendingWrite(CompletableFuture<Void> future, long submittedAt) {
+    }
+}
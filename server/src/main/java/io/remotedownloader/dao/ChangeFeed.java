@@ -0,0 +1,132 @@
+package io.remotedownloader.dao;
+
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.FileChangeType;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ring of the latest changes of the files of a single user, numbered by the sequence of the user.
+ * Changes are appended under the lock of the owning {@link UserFiles}, so the changes of a file are numbered
+ * in the order they are made, and the users don't contend with each other.
+ * The ring starts small and doubles up to the capacity, once it's full, so a user with a few files keeps a few changes.
+ * Readers don't take the lock: a change is published after its slot is written and the grown ring is published
+ * before the change, so the ring read after the last sequence holds it,
+ * and a slot, which was overwritten while it was read, is recognized by its sequence.
+ * Deleted files are not kept, only their ids.
+ * Sequences start from the boot time, so the positions of the clients from before a restart are recognized as lost.
+ */
+public class ChangeFeed {
+    public static final int DEFAULT_CAPACITY = 4 * 1024;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final VarHandle CHANGES = MethodHandles.arrayElementVarHandle(Change[].class);
+
+    private final int capacity;
+    private final long firstSequence;
+    private volatile Change[] changes; // replaced under the lock of the owning files
+    private volatile long lastSequence; // written under the lock of the owning files
+
+    ChangeFeed(int capacity, long firstSequence) {
+        this.capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.firstSequence = firstSequence;
+        this.changes = new Change[Math.min(this.capacity, INITIAL_CAPACITY)];
+        this.lastSequence = firstSequence;
+    }
+
+    /**
+     * @return sequence of the change
+     */
+    long append(FileChangeType type, DownloadingFile file) {
+        long sequence = lastSequence + 1;
+        Change[] changes = this.changes;
+        int slot = (int) (sequence & (changes.length - 1));
+        if (changes[slot] != null && changes.length < capacity) {
+            changes = grow(changes);
+            slot = (int) (sequence & (changes.length - 1));
+        }
+        Change change = type == FileChangeType.DELETED
+                ? new Change(sequence, type, file.id, null)
+                : new Change(sequence, type, file.id, file);
+        CHANGES.setRelease(changes, slot, change);
+        this.lastSequence = sequence;
+        return sequence;
+    }
+
+    private Change[] grow(Change[] changes) {
+        Change[] grownChanges = new Change[changes.length * 2];
+        int mask = grownChanges.length - 1;
+        for (Change change : changes) {
+            grownChanges[(int) (change.sequence & mask)] = change;
+        }
+        this.changes = grownChanges;
+        return grownChanges;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Reads the changes, made after the sequence. Repeated changes of a file are merged into the latest one.
+     *
+     * @param limit max number of the changes to read, including the changes, which are merged
+     * @return changes or {@code null}, if the changes after the sequence are not kept anymore
+     */
+    public Changes read(long afterSequence, int limit) {
+        long lastSequence = this.lastSequence;
+        Change[] changes = this.changes;
+        int mask = changes.length - 1;
+        if (afterSequence < firstSequence || afterSequence > lastSequence || afterSequence < lastSequence - changes.length) {
+            return null;
+        }
+
+        Map<String, Change> changesByFileId = new LinkedHashMap<>();
+        int count = 0;
+        long sequence = afterSequence;
+        while (sequence < lastSequence && count < limit) {
+            Change change = (Change) CHANGES.getAcquire(changes, (int) ((sequence + 1) & mask));
+            if (change == null || change.sequence != sequence + 1) {
+                // the slot was taken by a newer change, while the reader was behind
+                return null;
+            }
+            sequence++;
+            count++;
+
+            Change previousChange = changesByFileId.remove(change.fileId);
+            // the file stays created for the reader, who hasn't seen it yet
+            if (previousChange != null && previousChange.type == FileChangeType.CREATED
+                && change.type == FileChangeType.UPDATED) {
+                change = new Change(change.sequence, FileChangeType.CREATED, change.fileId, change.file);
+            }
+            changesByFileId.put(change.fileId, change);
+        }
+        return new Changes(new ArrayList<>(changesByFileId.values()), sequence, sequence < lastSequence);
+    }
+
+    /**
+     * @param lastSequence sequence, up to which the changes were read
+     * @param hasMore      whether there are newer changes, which were not read due to the limit
+     */
+    public record Changes(
+            List<Change> changes,
+            long lastSequence,
+            boolean hasMore
+    ) {
+    }
+
+    /**
+     * @param file file after the change or {@code null}, if the file was deleted
+     */
+    public record Change(
+            long sequence,
+            FileChangeType type,
+            String fileId,
+            DownloadingFile file
+    ) {
+    }
+}
@@ -61,17 +61,15 @@ public class DownloadManagerDao {
                 .build();
         this.asyncHttpClient = new DefaultAsyncHttpClient(httpClientConfig);
 
-        for (DownloadingFile file : filesStorageDao.getAllFiles()) {
-            if (file.status == DownloadingFileStatus.DOWNLOADING) {
-                resumeDownloading(null, null, file)
-                        .exceptionally(e -> {
-                            log.warn("Failed to resume downloading file '{}' after boot", file.name, e);
-                            filesStorageDao.updateFile(file.commitBytes(
-                                    DownloadingFileStatus.ERROR,
-                                    file.downloadedBytes));
-                            return null;
-                        });
-            }
+        for (DownloadingFile file : filesStorageDao.getFilesByStatus(DownloadingFileStatus.DOWNLOADING)) {
+            resumeDownloading(null, null, file)
+                    .exceptionally(e -> {
+                        log.warn("Failed to resume downloading file '{}' after boot", file.name, e);
+                        filesStorageDao.updateFile(file.commitBytes(
+                                DownloadingFileStatus.ERROR,
+                                file.commitedDownloadedBytes));
+                        return null;
+                    });
         }
     }
 
@@ -104,12 +102,9 @@ public class DownloadManagerDao {
         return CompletableFuture.runAsync(() -> {
             Path filePath = resolveFilePath(file.path, file.name, false);
 
-            long downloadedBytes = file.commitedDownloadedBytes;
-            file.downloadedBytes = downloadedBytes;
-
             ResumeFileDownloader handler = new ResumeFileDownloader(
                     ctx, msg, file, filePath, filesStorageDao, properties);
-            startDownloading(Uri.create(file.url), file.id, handler, downloadedBytes);
+            startDownloading(Uri.create(file.getUrl()), file.id, handler, file.commitedDownloadedBytes);
         }, threadPoolsHolder.blockingTasksExecutor);
     }
 
@@ -0,0 +1,34 @@
+package io.remotedownloader.dao;
+
+import io.remotedownloader.model.DownloadingFile;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Publishes the files, which are created or change the status, e.g. complete or fail, to the listeners.
+ * Files are published under the lock of the owner files, once the change is visible,
+ * so the transitions of a file come in the order they are made, and the listeners should only queue them.
+ */
+public class FilesEventBus {
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    void publish(DownloadingFile file) {
+        for (Listener listener : listeners) {
+            listener.onTransition(file);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        void onTransition(DownloadingFile file);
+    }
+}
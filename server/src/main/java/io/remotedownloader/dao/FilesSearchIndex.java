@@ -0,0 +1,279 @@
+package io.remotedownloader.dao;
+
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index over the name and URL of the user files, plus the index by status.
+ * Every indexed file gets a document number, which only grows, so the posting lists stay sorted.
+ * Removed documents are skipped while searching and dropped by the rebuild, once they outnumber the live ones.
+ * URL prefixes are shared by many files, so their trigrams are indexed once per prefix, which lists its documents.
+ * The text itself is not copied, the candidates are checked against the file name and URL by the caller,
+ * so the lock guarding the index is held only while the posting lists are intersected.
+ * Not thread-safe, guarded by the owning {@link UserFiles}.
+ */
+class FilesSearchIndex {
+    /**
+     * Shorter queries can't be looked up by the trigrams.
+     */
+    static final int MIN_QUERY_LENGTH = 3;
+    private static final int MIN_REBUILD_DOCUMENTS = 1024;
+
+    private final Map<Long, PostingList> postings = new HashMap<>();
+    private final Map<String, UrlPrefix> urlPrefixes = new HashMap<>();
+    private final Map<Long, List<UrlPrefix>> urlPrefixesByTrigram = new HashMap<>();
+    private final Map<String, Integer> documentsByFileId = new HashMap<>();
+    private final Map<DownloadingFileStatus, BitSet> documentsByStatus = new EnumMap<>(DownloadingFileStatus.class);
+    private DownloadingFile[] files = new DownloadingFile[16];
+    private int nextDocument;
+    private int removedDocuments;
+
+    FilesSearchIndex() {
+        for (DownloadingFileStatus status : DownloadingFileStatus.values()) {
+            documentsByStatus.put(status, new BitSet());
+        }
+    }
+
+    void put(DownloadingFile file) {
+        Integer document = documentsByFileId.get(file.id);
+        if (document != null) {
+            DownloadingFile previousFile = files[document];
+            if (previousFile.name.equals(file.name) && previousFile.hasSameUrl(file)) {
+                // the text is not changed, so just the status has to be reindexed
+                files[document] = file;
+                if (previousFile.status != file.status) {
+                    documentsByStatus.get(previousFile.status).clear(document);
+                    documentsByStatus.get(file.status).set(document);
+                }
+                return;
+            }
+            remove(file.id);
+        }
+
+        int newDocument = nextDocument++;
+        if (newDocument == files.length) {
+            files = Arrays.copyOf(files, files.length * 2);
+        }
+
+        files[newDocument] = file;
+        documentsByFileId.put(file.id, newDocument);
+        documentsByStatus.get(file.status).set(newDocument);
+
+        String urlPrefix = file.getUrlPrefix();
+        getOrCreateUrlPrefix(urlPrefix).documents.add(newDocument);
+
+        // the end of the prefix is kept, so the trigrams crossing the prefix and the suffix are indexed as well
+        String urlPrefixEnd = urlPrefix.substring(Math.max(0, urlPrefix.length() - 2));
+        String text = normalize(file.name + '\n' + urlPrefixEnd + file.getUrlSuffix());
+        for (long trigram : trigrams(text)) {
+            postings.computeIfAbsent(trigram, key -> new PostingList()).add(newDocument);
+        }
+    }
+
+    void remove(String fileId) {
+        Integer document = documentsByFileId.remove(fileId);
+        if (document == null) {
+            return;
+        }
+
+        documentsByStatus.get(files[document].status).clear(document);
+        files[document] = null;
+        removedDocuments++;
+
+        if (removedDocuments >= MIN_REBUILD_DOCUMENTS && removedDocuments > documentsByFileId.size()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Candidates are checked only against the trigrams, the caller has to check the text itself with
+     * {@link #matches(DownloadingFile, String)}, as the trigrams don't preserve their order in the query.
+     *
+     * @param normalizedQuery query of at least {@link #MIN_QUERY_LENGTH} characters
+     * @param status          status of the files or {@code null} to match any
+     * @return candidate files in no particular order
+     */
+    List<DownloadingFile> findCandidates(String normalizedQuery, DownloadingFileStatus status) {
+        List<DownloadingFile> result = new ArrayList<>();
+
+        // candidates are taken from the most selective trigram, trigrams without URL prefixes are used as filters
+        long selectiveTrigram = 0;
+        int selectiveTrigramSize = Integer.MAX_VALUE;
+        List<PostingList> filters = new ArrayList<>();
+        for (long trigram : trigrams(normalizedQuery)) {
+            PostingList list = postings.get(trigram);
+            List<UrlPrefix> prefixes = urlPrefixesByTrigram.getOrDefault(trigram, List.of());
+            if (list == null && prefixes.isEmpty()) {
+                return result;
+            }
+
+            int size = list != null ? list.size : 0;
+            for (UrlPrefix prefix : prefixes) {
+                size += prefix.documents.size;
+            }
+            if (size < selectiveTrigramSize) {
+                selectiveTrigram = trigram;
+                selectiveTrigramSize = size;
+            }
+            if (prefixes.isEmpty()) {
+                filters.add(list);
+            }
+        }
+
+        // the most selective filters reject the candidates first
+        filters.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        BitSet statusDocuments = status != null ? documentsByStatus.get(status) : null;
+        List<UrlPrefix> prefixes = urlPrefixesByTrigram.getOrDefault(selectiveTrigram, List.of());
+        // a document might be listed both by its own trigrams and by its URL prefix
+        BitSet visitedDocuments = prefixes.isEmpty() ? null : new BitSet(nextDocument);
+        collectCandidates(postings.get(selectiveTrigram), statusDocuments, filters, visitedDocuments, result);
+        for (UrlPrefix prefix : prefixes) {
+            collectCandidates(prefix.documents, statusDocuments, filters, visitedDocuments, result);
+        }
+        return result;
+    }
+
+    private void collectCandidates(PostingList candidates,
+                                   BitSet statusDocuments,
+                                   List<PostingList> filters,
+                                   BitSet visitedDocuments,
+                                   List<DownloadingFile> result) {
+        if (candidates == null) {
+            return;
+        }
+
+        candidates:
+        for (int i = 0; i < candidates.size; i++) {
+            int document = candidates.documents[i];
+            if (files[document] == null || (statusDocuments != null && !statusDocuments.get(document))) {
+                continue;
+            }
+            if (visitedDocuments != null) {
+                if (visitedDocuments.get(document)) {
+                    continue;
+                }
+                visitedDocuments.set(document);
+            }
+
+            for (PostingList filter : filters) {
+                if (filter != candidates && !filter.contains(document)) {
+                    continue candidates;
+                }
+            }
+
+            result.add(files[document]);
+        }
+    }
+
+    void clear() {
+        postings.clear();
+        urlPrefixes.clear();
+        urlPrefixesByTrigram.clear();
+        documentsByFileId.clear();
+        for (BitSet documents : documentsByStatus.values()) {
+            documents.clear();
+        }
+        files = new DownloadingFile[16];
+        nextDocument = 0;
+        removedDocuments = 0;
+    }
+
+    private void rebuild() {
+        Collection<DownloadingFile> liveFiles = new ArrayList<>(documentsByFileId.size());
+        for (int document = 0; document < nextDocument; document++) {
+            if (files[document] != null) {
+                liveFiles.add(files[document]);
+            }
+        }
+
+        clear();
+        for (DownloadingFile file : liveFiles) {
+            put(file);
+        }
+    }
+
+    private UrlPrefix getOrCreateUrlPrefix(String urlPrefix) {
+        UrlPrefix prefix = urlPrefixes.get(urlPrefix);
+        if (prefix == null) {
+            prefix = new UrlPrefix();
+            urlPrefixes.put(urlPrefix, prefix);
+            for (long trigram : trigrams(normalize(urlPrefix))) {
+                urlPrefixesByTrigram.computeIfAbsent(trigram, key -> new ArrayList<>(1)).add(prefix);
+            }
+        }
+        return prefix;
+    }
+
+    /**
+     * @param normalizedQuery query, which was {@link #normalize(String) normalized}
+     * @return whether the file name or URL contains the query, ignoring case
+     */
+    static boolean matches(DownloadingFile file, String normalizedQuery) {
+        return containsIgnoreCase(file.name, "", normalizedQuery)
+               || containsIgnoreCase(file.getUrlPrefix(), file.getUrlSuffix(), normalizedQuery);
+    }
+
+    /**
+     * Checks the text, which is split into two parts, without joining them.
+     */
+    private static boolean containsIgnoreCase(String first, String second, String normalizedQuery) {
+        int queryLength = normalizedQuery.length();
+        for (int i = 0; i + queryLength <= first.length() + second.length(); i++) {
+            int firstLength = Math.clamp(first.length() - i, 0, queryLength);
+            if ((firstLength == 0 || first.regionMatches(true, i, normalizedQuery, 0, firstLength))
+                && (firstLength == queryLength || second.regionMatches(
+                        true, i + firstLength - first.length(), normalizedQuery, firstLength, queryLength - firstLength))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<Long> trigrams(String text) {
+        Set<Long> result = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            result.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+        return result;
+    }
+
+    private static class UrlPrefix {
+        private final PostingList documents = new PostingList();
+    }
+
+    /**
+     * Sorted growable list of document numbers.
+     */
+    private static class PostingList {
+        private int[] documents = new int[4];
+        private int size;
+
+        private void add(int document) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+            }
+            documents[size++] = document;
+        }
+
+        private boolean contains(int document) {
+            return Arrays.binarySearch(documents, 0, size, document) >= 0;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.remotedownloader.dao;
+
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the files, which are maintained on every change of the files and propagated to the parent counters.
+ * The downloaded bytes count only the files, which are not downloading, the live progress of the downloading files
+ * is taken from the {@link ProgressTable}, when the statistics are read.
+ */
+public class FilesStatistics {
+    private static final DownloadingFileStatus[] STATUSES = DownloadingFileStatus.values();
+
+    private final FilesStatistics parent;
+    private final LongAdder[] filesCountByStatus = new LongAdder[STATUSES.length];
+    private final LongAdder committedBytes = new LongAdder();
+
+    FilesStatistics(FilesStatistics parent) {
+        this.parent = parent;
+        for (int i = 0; i < filesCountByStatus.length; i++) {
+            filesCountByStatus[i] = new LongAdder();
+        }
+    }
+
+    void add(DownloadingFile file) {
+        change(file, 1);
+    }
+
+    void remove(DownloadingFile file) {
+        change(file, -1);
+    }
+
+    private void change(DownloadingFile file, int sign) {
+        filesCountByStatus[file.status.ordinal()].add(sign);
+        if (file.status != DownloadingFileStatus.DOWNLOADING) {
+            committedBytes.add(sign * file.commitedDownloadedBytes);
+        }
+        if (parent != null) {
+            parent.change(file, sign);
+        }
+    }
+
+    public long getFilesCount(DownloadingFileStatus status) {
+        return filesCountByStatus[status.ordinal()].sum();
+    }
+
+    /**
+     * @return downloaded bytes of the files, which are not downloading
+     */
+    public long getCommittedBytes() {
+        return committedBytes.sum();
+    }
+
+    void reset() {
+        for (LongAdder count : filesCountByStatus) {
+            count.reset();
+        }
+        committedBytes.reset();
+    }
+}
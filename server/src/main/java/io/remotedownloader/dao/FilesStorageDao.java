@@ -1,21 +1,45 @@
 package io.remotedownloader.dao;
 
 import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
 import io.remotedownloader.model.StorageModel;
+import io.remotedownloader.model.dto.FilesStatisticsDTO;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 public class FilesStorageDao {
     private final ConcurrentMap<String, DownloadingFile> downloadingFiles; // id -> file
-    private final ConcurrentMap<String, DownloadingFile[]> userFiles; // owner username -> files[]
+    private final ConcurrentMap<String, UserFiles> userFiles; // owner username -> files
     private final StorageDao storageDao;
+    private final HistoryArchiveDao historyArchiveDao;
+    private final ProgressTable progressTable = new ProgressTable();
+    private final FilesStatistics serverStatistics = new FilesStatistics(null);
+    private final HistoryPageCache historyPageCache = new HistoryPageCache();
+    private final int changeFeedCapacity;
+    private final FilesEventBus eventBus = new FilesEventBus();
+    // versions start from the boot time, so the versions seen by the clients before a restart are not repeated
+    private final long initialVersion = System.currentTimeMillis() << 20;
 
-    public FilesStorageDao(StorageDao storageDao) {
+    public FilesStorageDao(StorageDao storageDao, HistoryArchiveDao historyArchiveDao) {
+        this(storageDao, historyArchiveDao, ChangeFeed.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param changeFeedCapacity number of the latest changes of every user, which are kept for the clients to catch up
+     */
+    public FilesStorageDao(StorageDao storageDao, HistoryArchiveDao historyArchiveDao, int changeFeedCapacity) {
         this.storageDao = storageDao;
+        this.historyArchiveDao = historyArchiveDao;
+        this.changeFeedCapacity = changeFeedCapacity;
 
         this.downloadingFiles = new ConcurrentHashMap<>();
         this.userFiles = new ConcurrentHashMap<>();
@@ -26,79 +50,297 @@ public class FilesStorageDao {
         }
     }
 
-    public DownloadingFile[] getUserFiles(String ownerUsername) {
-        return userFiles.getOrDefault(ownerUsername, DownloadingFile.EMPTY_ARRAY);
+    public Collection<DownloadingFile> getUserFiles(String ownerUsername) {
+        UserFiles files = userFiles.get(ownerUsername);
+        return files != null ? files.getFiles() : List.of();
+    }
+
+    /**
+     * @param after key of the last file of the previous page or {@code null} to start from the newest file
+     */
+    public Collection<DownloadingFile> getUserFilesNewestFirst(String ownerUsername, UserFiles.CreatedAtKey after) {
+        UserFiles files = userFiles.get(ownerUsername);
+        return files != null ? files.getNewestFirst(after) : List.of();
+    }
+
+    /**
+     * @return version of the user files, which is incremented on every change
+     */
+    public long getUserVersion(String ownerUsername) {
+        UserFiles files = userFiles.get(ownerUsername);
+        return files != null ? files.getVersion() : initialVersion;
+    }
+
+    public Collection<DownloadingFile> getUserFilesByStatus(String ownerUsername, DownloadingFileStatus status) {
+        UserFiles files = userFiles.get(ownerUsername);
+        return files != null ? files.getFilesByStatus(status) : List.of();
+    }
+
+    public List<DownloadingFile> getFilesByStatus(DownloadingFileStatus status) {
+        List<DownloadingFile> result = new ArrayList<>();
+        for (UserFiles files : userFiles.values()) {
+            result.addAll(files.getFilesByStatus(status));
+        }
+        return result;
+    }
+
+    /**
+     * Searches the files, which are kept in memory. Archived files are not searched.
+     *
+     * @return the page of the matching files, ordered by creation time from the newest
+     */
+    public UserFiles.SearchResult searchUserFiles(String ownerUsername,
+                                                  String query,
+                                                  DownloadingFileStatus status,
+                                                  int offset,
+                                                  int limit) {
+        UserFiles files = userFiles.get(ownerUsername);
+        return files != null ? files.search(query, status, offset, limit) : new UserFiles.SearchResult(List.of(), 0);
     }
 
     public DownloadingFile getById(String id) {
         return downloadingFiles.get(id);
     }
 
-    public void updateFile(DownloadingFile file) {
-        String fileId = file.id;
-        downloadingFiles.put(fileId, file);
-        userFiles.compute(file.ownerUsername, (username, files) -> {
-            if (files == null) {
-                return new DownloadingFile[]{file};
-            }
+    public CompletableFuture<Void> updateFile(DownloadingFile file) {
+        DownloadingFile previousFile = downloadingFiles.put(file.id, file);
+        getOrCreateUserFiles(file.ownerUsername).put(file);
+        trackProgress(file);
 
-            for (int i = 0; i < files.length; i++) {
-                if (files[i].id.equals(fileId)) {
-                    DownloadingFile[] updatedFiles = Arrays.copyOf(files, files.length);
-                    updatedFiles[i] = file;
-                    return updatedFiles;
-                }
-            }
-
-            DownloadingFile[] updatedFiles = new DownloadingFile[files.length + 1];
-            System.arraycopy(files, 0, updatedFiles, 0, files.length);
-            updatedFiles[files.length] = file;
-            return updatedFiles;
-        });
+        CompletableFuture<Void> future = previousFile != null && previousFile.hasSameMetadata(file)
+                ? storageDao.saveProgress(file)
+                : storageDao.saveRecord(file);
+        return rollbackOnFailure(future, previousFile, file);
+    }
 
-        storageDao.saveRecord(file);
+    /**
+     * Persists the progress of the downloading file, keeping it in the slot of the {@link ProgressTable},
+     * so a commit doesn't rebuild the file, which is replaced only once its status changes.
+     * The progress of the file, which was already paused or stopped, is not persisted.
+     */
+    public CompletableFuture<Void> commitProgress(DownloadingFile file, int progressSlot, long commitedDownloadedBytes) {
+        if (downloadingFiles.get(file.id) != file) {
+            return CompletableFuture.completedFuture(null);
+        }
+        progressTable.setCommitedDownloadedBytes(progressSlot, file.id, commitedDownloadedBytes);
+        return storageDao.saveProgress(file, commitedDownloadedBytes, System.currentTimeMillis());
     }
 
-    public void addFile(DownloadingFile file) {
+    public CompletableFuture<Void> addFile(DownloadingFile file) {
         addFileWithoutStoring(file);
-        storageDao.saveRecord(file);
+        return rollbackOnFailure(storageDao.saveRecord(file), null, file);
     }
 
     private void addFileWithoutStoring(DownloadingFile file) {
-        String fileId = file.id;
-        downloadingFiles.put(fileId, file);
-        userFiles.compute(file.ownerUsername, (username, files) -> {
-            if (files == null) {
-                return new DownloadingFile[]{file};
-            }
+        downloadingFiles.put(file.id, file);
+        getOrCreateUserFiles(file.ownerUsername).put(file);
+        trackProgress(file);
+    }
 
-            DownloadingFile[] updatedFiles = new DownloadingFile[files.length + 1];
-            System.arraycopy(files, 0, updatedFiles, 0, files.length);
-            updatedFiles[files.length] = file;
-            return updatedFiles;
-        });
+    /**
+     * Keeps the slot in the progress table, while the file is downloading.
+     */
+    private void trackProgress(DownloadingFile file) {
+        if (file.status == DownloadingFileStatus.DOWNLOADING) {
+            progressTable.acquire(file.id, file.commitedDownloadedBytes);
+        } else {
+            progressTable.release(file.id);
+        }
     }
 
-    public void deleteById(DownloadingFile file) {
-        String fileId = file.id;
-        downloadingFiles.remove(fileId);
-        userFiles.compute(file.ownerUsername, (username, files) -> {
-            if (files == null) {
-                return null;
-            }
+    private UserFiles getOrCreateUserFiles(String ownerUsername) {
+        UserFiles files = userFiles.get(ownerUsername);
+        return files != null ? files : userFiles.computeIfAbsent(ownerUsername, username -> new UserFiles(serverStatistics, eventBus, changeFeedCapacity, initialVersion));
+    }
+
+    public CompletableFuture<Void> deleteById(DownloadingFile file) {
+        downloadingFiles.remove(file.id);
+        removeUserFile(file, false);
+        progressTable.release(file.id);
+        return rollbackOnFailure(storageDao.deleteRecord(file), file, null);
+    }
 
-            for (int i = 0; i < files.length; i++) {
-                if (files[i].id.equals(fileId)) {
-                    DownloadingFile[] newFiles = new DownloadingFile[files.length - 1];
-                    System.arraycopy(files, 0, newFiles, 0, i);
-                    System.arraycopy(files, i + 1, newFiles, i, files.length - i - 1);
-                    return newFiles;
+    /**
+     * Restores the previous state of the file in memory, once the storage gives up on persisting the change,
+     * so the memory doesn't drift apart from the storage. Nothing is restored, if the file was changed again since.
+     *
+     * @param previousFile the file before the change or {@code null} if it was added
+     * @param file the file after the change or {@code null} if it was deleted
+     */
+    private CompletableFuture<Void> rollbackOnFailure(CompletableFuture<Void> future,
+                                                      DownloadingFile previousFile,
+                                                      DownloadingFile file) {
+        future.exceptionally(e -> {
+            if (file == null) {
+                if (downloadingFiles.putIfAbsent(previousFile.id, previousFile) == null) {
+                    getOrCreateUserFiles(previousFile.ownerUsername).put(previousFile);
+                    trackProgress(previousFile);
+                }
+            } else if (previousFile == null) {
+                if (replaceIfSame(file, null)) {
+                    removeUserFile(file, false);
+                    progressTable.release(file.id);
                 }
+            } else if (replaceIfSame(file, previousFile)) {
+                getOrCreateUserFiles(previousFile.ownerUsername).put(previousFile);
+                trackProgress(previousFile);
             }
-            return files;
+            return null;
+        });
+        return future;
+    }
+
+    /**
+     * Compares the files by identity, as the map compares them by {@link DownloadingFile#equals(Object)},
+     * which doesn't tell apart the files with different progress.
+     *
+     * @param replacement the file to put instead or {@code null} to remove the file
+     * @return whether the file was still in memory and was replaced
+     */
+    private boolean replaceIfSame(DownloadingFile file, DownloadingFile replacement) {
+        boolean[] replaced = new boolean[1];
+        downloadingFiles.computeIfPresent(file.id, (id, currentFile) -> {
+            replaced[0] = currentFile == file;
+            return replaced[0] ? replacement : currentFile;
         });
+        return replaced[0];
+    }
+
+    /**
+     * Moves the files of the user from memory and storage to the history archive.
+     * The files are archived before they leave memory, so the history doesn't miss them meanwhile,
+     * and the files, which were changed since they were selected, are kept and deleted from the archive.
+     */
+    public void archiveFiles(String ownerUsername, List<DownloadingFile> files) throws IOException {
+        historyArchiveDao.archive(ownerUsername, files);
+
+        List<String> keptFileIds = new ArrayList<>();
+        for (DownloadingFile file : files) {
+            if (replaceIfSame(file, null)) {
+                removeUserFile(file, true);
+                storageDao.deleteRecord(file);
+            } else {
+                keptFileIds.add(file.id);
+            }
+        }
+
+        if (!keptFileIds.isEmpty()) {
+            historyArchiveDao.delete(ownerUsername, keptFileIds);
+        }
+    }
+
+    /**
+     * Deletes the file from the history archive and reports it as deleted. Performs blocking IO.
+     *
+     * @return the deleted file or {@code null}, if the user has no such archived file
+     */
+    public DownloadingFile deleteArchivedFile(String ownerUsername, String fileId) throws IOException {
+        DownloadingFile file = historyArchiveDao.getFile(ownerUsername, fileId);
+        if (file == null || historyArchiveDao.delete(ownerUsername, List.of(fileId)).isEmpty()) {
+            return null;
+        }
+
+        getOrCreateUserFiles(ownerUsername).archivedFileDeleted(file);
+        return file;
+    }
+
+    /**
+     * Moves the file from the history archive back to memory and storage. Performs blocking IO.
+     *
+     * @return the restored file or {@code null}, if the user has no such archived file
+     */
+    public DownloadingFile restoreArchivedFile(String ownerUsername, String fileId) throws IOException {
+        DownloadingFile file = historyArchiveDao.getFile(ownerUsername, fileId);
+        if (file == null) {
+            return null;
+        }
+
+        // the file is deleted from the archive once it's stored, the history prefers the file in memory meanwhile
+        addFile(file).join();
+        historyArchiveDao.delete(ownerUsername, List.of(fileId));
+        return file;
+    }
+
+    private void removeUserFile(DownloadingFile file, boolean archived) {
+        UserFiles files = userFiles.get(file.ownerUsername);
+        if (files != null) {
+            files.remove(file, archived);
+        }
+    }
+
+    /**
+     * Doesn't depend on the size of the history: the counters are maintained on every change,
+     * and only the live progress of the downloading files is summed up.
+     */
+    public FilesStatisticsDTO getUserStatistics(String ownerUsername) {
+        UserFiles files = userFiles.get(ownerUsername);
+        if (files == null) {
+            return toStatisticsDTO(new FilesStatistics(null), 0, 0);
+        }
+
+        long downloadedBytes = 0;
+        long speedBytesPerSecond = 0;
+        for (DownloadingFile file : files.getFilesByStatus(DownloadingFileStatus.DOWNLOADING)) {
+            downloadedBytes += progressTable.getDownloadedBytes(file);
+            speedBytesPerSecond += progressTable.getSpeedBytesPerSecond(file);
+        }
+        return toStatisticsDTO(files.getStatistics(), downloadedBytes, speedBytesPerSecond);
+    }
+
+    public FilesStatisticsDTO getServerStatistics() {
+        return toStatisticsDTO(
+                serverStatistics,
+                progressTable.getTotalDownloadedBytes(),
+                progressTable.getTotalSpeedBytesPerSecond());
+    }
+
+    private static FilesStatisticsDTO toStatisticsDTO(FilesStatistics statistics,
+                                                      long liveDownloadedBytes,
+                                                      long speedBytesPerSecond) {
+        Map<DownloadingFileStatus, Long> filesCountByStatus = new EnumMap<>(DownloadingFileStatus.class);
+        for (DownloadingFileStatus status : DownloadingFileStatus.values()) {
+            filesCountByStatus.put(status, statistics.getFilesCount(status));
+        }
+        return new FilesStatisticsDTO(
+                filesCountByStatus,
+                statistics.getCommittedBytes() + liveDownloadedBytes,
+                speedBytesPerSecond);
+    }
+
+    public ProgressTable getProgressTable() {
+        return progressTable;
+    }
+
+    public HistoryPageCache getHistoryPageCache() {
+        return historyPageCache;
+    }
+
+    /**
+     * @return sequence of the latest change of the user files
+     */
+    public long getLastChangeSequence(String ownerUsername) {
+        UserFiles files = userFiles.get(ownerUsername);
+        return files != null ? files.getChangeFeed().getLastSequence() : initialVersion;
+    }
+
+    /**
+     * @see ChangeFeed#read(long, int)
+     */
+    public ChangeFeed.Changes readChanges(String ownerUsername, long afterSequence, int limit) {
+        UserFiles files = userFiles.get(ownerUsername);
+        if (files != null) {
+            return files.getChangeFeed().read(afterSequence, limit);
+        }
+        // the feed of the user, who has no files yet, starts from the initial version
+        return afterSequence == initialVersion ? new ChangeFeed.Changes(List.of(), afterSequence, false) : null;
+    }
+
+    public FilesEventBus getEventBus() {
+        return eventBus;
+    }
 
-        storageDao.deleteRecord(StorageModel.DOWNLOADING_FILE, fileId);
+    public Set<String> getOwners() {
+        return userFiles.keySet();
     }
 
     public Collection<DownloadingFile> getAllFiles() {
@@ -108,5 +350,8 @@ public class FilesStorageDao {
     public void clear() {
         downloadingFiles.clear();
         userFiles.clear();
+        progressTable.clear();
+        serverStatistics.reset();
+        historyPageCache.clear();
     }
 }
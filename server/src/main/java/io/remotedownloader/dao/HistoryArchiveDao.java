@@ -0,0 +1,378 @@
+package io.remotedownloader.dao;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.util.JsonUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Cold storage of the finished files, which were moved out of memory by the retention policy.
+ * Every user has its own append-only segment of the archived files and the tombstones of the deleted ones.
+ * The segment is read once, when the history of the user reaches the archive, to build the index of the record
+ * positions, and then only the records of the requested pages are read.
+ * Once the most of the segment records are dead, the deleted files and their tombstones, the segment is rewritten
+ * with only the live records, so the deleted and restored files don't grow it and its reading forever.
+ */
+public class HistoryArchiveDao {
+    private static final Logger log = LogManager.getLogger(HistoryArchiveDao.class);
+    private static final String SEGMENT_EXTENSION = ".archive";
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+    private static final ObjectReader FILE_READER = JsonUtil.MAPPER.readerFor(DownloadingFile.class);
+    private static final ObjectReader HEADER_READER = JsonUtil.MAPPER.readerFor(RecordHeader.class);
+    private static final int COMPACTION_MIN_DEAD_RECORDS = 256;
+
+    private final Path archiveFolder;
+    private final Set<String> archivedUsers = ConcurrentHashMap.newKeySet();
+    // index of the user segment, present only once the segment was read
+    private final ConcurrentMap<String, SegmentIndex> indexes = new ConcurrentHashMap<>();
+
+    public HistoryArchiveDao(Path archiveFolder) {
+        this.archiveFolder = archiveFolder;
+
+        try {
+            Files.createDirectories(archiveFolder);
+            try (DirectoryStream<Path> segments = Files.newDirectoryStream(archiveFolder, "*" + SEGMENT_EXTENSION)) {
+                for (Path segment : segments) {
+                    String fileName = segment.getFileName().toString();
+                    String encodedUsername = fileName.substring(0, fileName.length() - SEGMENT_EXTENSION.length());
+                    archivedUsers.add(new String(HEX_FORMAT.parseHex(encodedUsername), StandardCharsets.UTF_8));
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to open history archive " + archiveFolder, e);
+        }
+        log.info("Opened history archive {} with {} users", archiveFolder, archivedUsers.size());
+    }
+
+    /**
+     * Durably appends the files to the user segment.
+     */
+    public synchronized void archive(String ownerUsername, Collection<DownloadingFile> files) throws IOException {
+        List<byte[]> records = new ArrayList<>(files.size());
+        for (DownloadingFile file : files) {
+            records.add(JsonUtil.MAPPER.writeValueAsBytes(file));
+        }
+        long[] positions = append(ownerUsername, records);
+
+        archivedUsers.add(ownerUsername);
+        SegmentIndex index = indexes.get(ownerUsername);
+        if (index != null) {
+            int i = 0;
+            for (DownloadingFile file : files) {
+                index.put(new UserFiles.CreatedAtKey(file), positions[i], (int) (positions[i + 1] - positions[i]));
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Durably appends the tombstones of the files to the user segment, so the files are not read anymore.
+     * Performs blocking IO.
+     *
+     * @return ids of the files, which were archived and are deleted now
+     */
+    public synchronized List<String> delete(String ownerUsername, Collection<String> fileIds) throws IOException {
+        SegmentIndex index = getIndex(ownerUsername);
+        List<String> deletedIds = new ArrayList<>(fileIds.size());
+        List<byte[]> records = new ArrayList<>(fileIds.size());
+        for (String fileId : fileIds) {
+            if (index.get(fileId) != null) {
+                deletedIds.add(fileId);
+                records.add(JsonUtil.MAPPER.writeValueAsBytes(new Tombstone(fileId)));
+            }
+        }
+
+        if (!records.isEmpty()) {
+            append(ownerUsername, records);
+            for (String fileId : deletedIds) {
+                index.delete(fileId);
+            }
+            compactIfNeeded(ownerUsername, index);
+        }
+        return deletedIds;
+    }
+
+    /**
+     * Rewrites the user segment with only the live records, if they make up less than a half of it,
+     * and replaces the index of the segment.
+     * Readers, which took the positions from the previous index, find the moved records by the new index.
+     */
+    private void compactIfNeeded(String ownerUsername, SegmentIndex index) throws IOException {
+        if (index.deadRecords < COMPACTION_MIN_DEAD_RECORDS || index.deadRecords <= index.size()) {
+            return;
+        }
+
+        Path segment = getSegmentPath(ownerUsername);
+        Path compactedSegment = segment.resolveSibling(segment.getFileName() + ".compacting");
+        SegmentIndex compactedIndex = new SegmentIndex();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ);
+             FileChannel compactedChannel = FileChannel.open(compactedSegment, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(compactedChannel));
+            long position = 0;
+            for (RecordPosition record : index.getNewestFirst(null)) {
+                byte[][] payload = new byte[1][];
+                boolean valid = StorageLogFile.readRecord(channel, record.offset(), record.length(),
+                        (buf, offset, length) -> payload[0] = Arrays.copyOfRange(buf, offset, offset + length));
+                if (!valid) {
+                    log.warn("Dropping corrupted archive record at offset {} of {}", record.offset(), ownerUsername);
+                    continue;
+                }
+                int length = StorageLogFile.writeRecord(out, payload[0]);
+                compactedIndex.put(record.key(), position, length);
+                position += length;
+            }
+            out.flush();
+            compactedChannel.force(false);
+        }
+        Files.move(compactedSegment, segment, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        indexes.put(ownerUsername, compactedIndex);
+        log.info("Compacted archive segment of {}: {} dead records dropped, {} records kept",
+                ownerUsername, index.deadRecords, compactedIndex.size());
+    }
+
+    /**
+     * @return positions of the appended records, followed by the end of the segment
+     */
+    private long[] append(String ownerUsername, List<byte[]> records) throws IOException {
+        long[] positions = new long[records.size() + 1];
+        try (FileChannel channel = FileChannel.open(getSegmentPath(ownerUsername),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long position = channel.size();
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            for (int i = 0; i < records.size(); i++) {
+                positions[i] = position;
+                position += StorageLogFile.writeRecord(out, records.get(i));
+            }
+            positions[records.size()] = position;
+            out.flush();
+            channel.force(false);
+        }
+        return positions;
+    }
+
+    public boolean hasArchivedFiles(String ownerUsername) {
+        return archivedUsers.contains(ownerUsername);
+    }
+
+    /**
+     * @return index of the user segment or {@code null}, if the segment was not read yet
+     */
+    public SegmentIndex getLoadedIndex(String ownerUsername) {
+        return indexes.get(ownerUsername);
+    }
+
+    /**
+     * Reads the user segment on the first call to build its index. Performs blocking IO.
+     */
+    public synchronized SegmentIndex getIndex(String ownerUsername) throws IOException {
+        SegmentIndex index = indexes.get(ownerUsername);
+        if (index != null) {
+            return index;
+        }
+
+        SegmentIndex newIndex = new SegmentIndex();
+        Path segment = getSegmentPath(ownerUsername);
+        if (Files.exists(segment)) {
+            // the file might be archived twice, if the server stopped before deleting it from the storage
+            StorageLogFile.readRecords(segment, (recordOffset, recordLength, buf, offset, length) -> {
+                RecordHeader header = HEADER_READER.readValue(buf, offset, length);
+                if (header.deletedId() != null) {
+                    newIndex.delete(header.deletedId());
+                } else {
+                    newIndex.put(new UserFiles.CreatedAtKey(header.createdAt(), header.id()), recordOffset, recordLength);
+                }
+            });
+        }
+        indexes.put(ownerUsername, newIndex);
+        return newIndex;
+    }
+
+    /**
+     * @return the archived file or {@code null}, if the user has no such file. Performs blocking IO.
+     */
+    public DownloadingFile getFile(String ownerUsername, String fileId) throws IOException {
+        RecordPosition position = getIndex(ownerUsername).get(fileId);
+        if (position == null) {
+            return null;
+        }
+        List<DownloadingFile> files = readFiles(ownerUsername, List.of(position));
+        return files.isEmpty() ? null : files.getFirst();
+    }
+
+    /**
+     * Reads only the records at the positions, which were taken from the user index. Performs blocking IO.
+     */
+    public List<DownloadingFile> readFiles(String ownerUsername, List<RecordPosition> positions) throws IOException {
+        List<DownloadingFile> result = new ArrayList<>(positions.size());
+        if (positions.isEmpty()) {
+            return result;
+        }
+
+        try (FileChannel channel = FileChannel.open(getSegmentPath(ownerUsername), StandardOpenOption.READ)) {
+            for (RecordPosition position : positions) {
+                DownloadingFile file = readFile(channel, position);
+                if (file == null) {
+                    // the segment might be compacted after the position was taken
+                    file = readMovedFile(ownerUsername, position);
+                }
+                if (file != null) {
+                    result.add(file);
+                } else {
+                    log.warn("Skipping corrupted archive record at offset {} of {}", position.offset(), ownerUsername);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the file or {@code null}, if the record at the position is corrupted or belongs to another file
+     */
+    private static DownloadingFile readFile(FileChannel channel, RecordPosition position) throws IOException {
+        DownloadingFile[] file = new DownloadingFile[1];
+        boolean valid = StorageLogFile.readRecord(channel, position.offset(), position.length(),
+                (buf, offset, length) -> file[0] = FILE_READER.readValue(buf, offset, length));
+        return valid && position.key().id().equals(file[0].id) ? file[0] : null;
+    }
+
+    private DownloadingFile readMovedFile(String ownerUsername, RecordPosition position) throws IOException {
+        SegmentIndex index = indexes.get(ownerUsername);
+        RecordPosition movedPosition = index != null ? index.get(position.key().id()) : null;
+        if (movedPosition == null || movedPosition.equals(position)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(getSegmentPath(ownerUsername), StandardOpenOption.READ)) {
+            return readFile(channel, movedPosition);
+        }
+    }
+
+    private Path getSegmentPath(String ownerUsername) {
+        return archiveFolder.resolve(HEX_FORMAT.formatHex(ownerUsername.getBytes(StandardCharsets.UTF_8)) + SEGMENT_EXTENSION);
+    }
+
+    public synchronized void clear() {
+        for (String username : archivedUsers) {
+            try {
+                Files.deleteIfExists(getSegmentPath(username));
+            } catch (IOException e) {
+                log.warn("Failed to delete archive segment of {}", username, e);
+            }
+        }
+        archivedUsers.clear();
+        indexes.clear();
+    }
+
+    /**
+     * Positions of the live records of the user segment, ordered by creation time of the files from the newest.
+     * Changed only under the archive lock, read without locks.
+     */
+    public static final class SegmentIndex {
+        private final ConcurrentNavigableMap<UserFiles.CreatedAtKey, RecordPosition> positions =
+                new ConcurrentSkipListMap<>();
+        private final Map<String, RecordPosition> positionsById = new ConcurrentHashMap<>();
+        // records of the segment, which are not indexed: replaced and deleted files and the tombstones
+        private int deadRecords;
+
+        private void put(UserFiles.CreatedAtKey key, long offset, int length) {
+            if (remove(key.id())) {
+                deadRecords++;
+            }
+            RecordPosition position = new RecordPosition(key, offset, length);
+            positionsById.put(key.id(), position);
+            positions.put(key, position);
+        }
+
+        /**
+         * Removes the file by its tombstone.
+         */
+        private void delete(String fileId) {
+            deadRecords += remove(fileId) ? 2 : 1;
+        }
+
+        private boolean remove(String fileId) {
+            RecordPosition position = positionsById.remove(fileId);
+            if (position != null) {
+                positions.remove(position.key());
+                return true;
+            }
+            return false;
+        }
+
+        public RecordPosition get(String fileId) {
+            return positionsById.get(fileId);
+        }
+
+        public int size() {
+            return positionsById.size();
+        }
+
+        /**
+         * @return creation time of the newest archived file or {@link Long#MIN_VALUE}, if there are no files
+         */
+        public long getNewestCreatedAt() {
+            Map.Entry<UserFiles.CreatedAtKey, RecordPosition> newest = positions.firstEntry();
+            return newest != null ? newest.getKey().createdAt() : Long.MIN_VALUE;
+        }
+
+        /**
+         * @param after key of the last file of the previous page or {@code null} to start from the newest file
+         * @return weakly consistent view of the positions, ordered by creation time of the files from the newest
+         */
+        public Collection<RecordPosition> getNewestFirst(UserFiles.CreatedAtKey after) {
+            return after != null ? positions.tailMap(after, false).values() : positions.values();
+        }
+    }
+
+    /**
+     * @param length length of the record in the segment
+     */
+    public record RecordPosition(
+            UserFiles.CreatedAtKey key,
+            long offset,
+            int length
+    ) {
+    }
+
+    /**
+     * Marks the file, which was archived before, as deleted.
+     */
+    private record Tombstone(
+            String deletedId
+    ) {
+    }
+
+    /**
+     * Fields of the archived file or of the tombstone, which are needed to index the record.
+     */
+    private record RecordHeader(
+            String id,
+            long createdAt,
+            String deletedId
+    ) {
+    }
+}
@@ -0,0 +1,64 @@
+package io.remotedownloader.dao;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Serialized history pages of the users, valid for a single version of the user files.
+ * A change of the files makes the pages of the previous version unreachable, they are dropped on the next put.
+ * Only a few pages are kept per user, as the clients poll the first pages of the history.
+ */
+public class HistoryPageCache {
+    private static final int MAX_PAGES_PER_USER = 8;
+
+    private final ConcurrentMap<String, UserPages> pagesByUser = new ConcurrentHashMap<>();
+
+    /**
+     * @return UTF-8 JSON of the page or {@code null}, if the page of the version is not cached
+     */
+    public byte[] get(String username, long version, PageKey key) {
+        UserPages pages = pagesByUser.get(username);
+        return pages != null && pages.version == version ? pages.pages.get(key) : null;
+    }
+
+    public void put(String username, long version, PageKey key, byte[] page) {
+        UserPages pages = pagesByUser.get(username);
+        if (pages == null || pages.version < version) {
+            UserPages newPages = new UserPages(version);
+            pages = pages == null
+                    ? pagesByUser.putIfAbsent(username, newPages)
+                    : pagesByUser.replace(username, pages, newPages) ? null : pagesByUser.get(username);
+            if (pages == null) {
+                pages = newPages;
+            }
+        }
+
+        // a concurrent request might have cached a newer version already
+        if (pages.version == version && pages.pages.size() < MAX_PAGES_PER_USER) {
+            pages.pages.put(key, page);
+        }
+    }
+
+    public void clear() {
+        pagesByUser.clear();
+    }
+
+    /**
+     * @param cursor {@code null}, if the page is requested by the offset
+     */
+    public record PageKey(
+            int offset,
+            int size,
+            String cursor
+    ) {
+    }
+
+    private static class UserPages {
+        private final long version;
+        private final ConcurrentMap<PageKey, byte[]> pages = new ConcurrentHashMap<>();
+
+        private UserPages(long version) {
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.remotedownloader.dao;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.model.StorageAction;
+import io.remotedownloader.model.StorageModel;
+import io.remotedownloader.model.StorageRecord;
+import io.remotedownloader.util.JsonUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Embedded on-disk key-value storage, which keeps the records by id and updates them in place.
+ * Unlike the log, it never has to be compacted, as its size depends only on the live records.
+ * It has no secondary indexes: the records are indexed in memory by {@link UserFiles},
+ * and the old history is moved out of it by the retention policy to the {@link HistoryArchiveDao},
+ * which pages it from the disk.
+ */
+public class KeyValueStorageDao extends BaseStorageDao {
+    private static final Logger log = LogManager.getLogger(KeyValueStorageDao.class);
+    private static final ObjectReader RECORD_READER = JsonUtil.MAPPER.readerFor(StorageRecord.class);
+
+    private final MVStore store;
+    private final boolean fsync;
+    private final Map<StorageModel, MVMap<String, byte[]>> records = new EnumMap<>(StorageModel.class);
+
+    public KeyValueStorageDao(Path storagePath,
+                             ScheduledExecutorService storageExecutor,
+                             long coalesceWindowMillis,
+                             boolean fsync) {
+        super(storageExecutor, coalesceWindowMillis);
+        this.fsync = fsync;
+        this.store = new MVStore.Builder()
+                .fileName(storagePath.toString())
+                .autoCommitDisabled()
+                .open();
+
+        for (StorageModel model : StorageModel.values()) {
+            records.put(model, store.openMap("records." + model.name()));
+        }
+
+        log.info("Opened key-value storage {} with {} files", storagePath, records.get(StorageModel.DOWNLOADING_FILE).size());
+    }
+
+    @Override
+    protected void writeActions(List<StorageAction> actions) throws Exception {
+        try {
+            for (StorageAction action : actions) {
+                applyAction(action);
+            }
+            store.commit();
+            if (fsync) {
+                store.sync();
+            }
+        } catch (Exception e) {
+            // dropping the partially applied batch, so it's retried as a whole
+            store.rollback();
+            throw e;
+        }
+    }
+
+    private void applyAction(StorageAction action) throws IOException {
+        switch (action) {
+            case StorageAction.Save(StorageRecord<?> record) -> records.get(record.getModel())
+                    .put(String.valueOf(record.getId()), JsonUtil.MAPPER.writeValueAsBytes(record));
+
+            case StorageAction.Delete(StorageModel model, Object id) ->
+                    records.get(model).remove(String.valueOf(id));
+
+            case StorageAction.Progress(String id, DownloadingFileStatus status,
+                                        long commitedDownloadedBytes, long updatedAt) -> {
+                MVMap<String, byte[]> files = records.get(StorageModel.DOWNLOADING_FILE);
+                byte[] value = files.get(id);
+                if (value != null) {
+                    DownloadingFile file = RECORD_READER.readValue(value);
+                    files.put(id, JsonUtil.MAPPER.writeValueAsBytes(
+                            file.withProgress(status, commitedDownloadedBytes, updatedAt)));
+                }
+            }
+        }
+    }
+
+    @Override
+    public <I, T extends StorageRecord<I>> Map<I, T> readAllRecords(StorageModel model) {
+        Map<I, T> result = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : records.get(model).entrySet()) {
+            T record = readRecord(entry.getValue());
+            if (record != null) {
+                result.put(record.getId(), record);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    private static <T> T readRecord(byte[] value) {
+        try {
+            return RECORD_READER.readValue(value);
+        } catch (Exception e) {
+            log.error("Failed to read the record from the key-value storage.", e);
+            return null;
+        }
+    }
+}
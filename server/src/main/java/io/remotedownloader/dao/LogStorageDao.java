@@ -0,0 +1,198 @@
+package io.remotedownloader.dao;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.model.StorageAction;
+import io.remotedownloader.model.StorageModel;
+import io.remotedownloader.model.StorageRecord;
+import io.remotedownloader.util.JsonUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only log of storage actions, which is replayed in full on startup
+ * and periodically compacted down to the latest state of every record.
+ */
+public class LogStorageDao extends BaseStorageDao {
+    private static final Logger log = LogManager.getLogger(LogStorageDao.class);
+    private static final ObjectReader ACTION_READER = JsonUtil.MAPPER.readerFor(StorageAction.class);
+    private final Path storagePath;
+    private final boolean fsync;
+
+    // records, replayed on startup, until they are handed over by readAllRecords
+    private final Map<StorageModel, Map<Object, StorageRecord<?>>> replayedRecords = new EnumMap<>(StorageModel.class);
+    private int corruptedRecords;
+    // actions appended since the last compaction, accessed only from the storage executor
+    private long appendedActions;
+
+    public LogStorageDao(Path storagePath,
+                         ScheduledExecutorService storageExecutor,
+                         long coalesceWindowMillis,
+                         boolean fsync) {
+        this(storagePath, storageExecutor, coalesceWindowMillis, fsync, 0);
+    }
+
+    /**
+     * @param compactionIntervalMillis how often the log is compacted, {@code 0} disables the compaction
+     */
+    public LogStorageDao(Path storagePath,
+                         ScheduledExecutorService storageExecutor,
+                         long coalesceWindowMillis,
+                         boolean fsync,
+                         long compactionIntervalMillis) {
+        super(storageExecutor, coalesceWindowMillis);
+        this.storagePath = storagePath;
+        this.fsync = fsync;
+
+        if (!Files.exists(storagePath)) {
+            try {
+                Files.createFile(storagePath);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to create storage file " + storagePath, e);
+            }
+        }
+
+        replay();
+
+        if (compactionIntervalMillis > 0) {
+            storageExecutor.scheduleWithFixedDelay(() -> {
+                if (appendedActions > 0) {
+                    compact();
+                }
+            }, compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    protected void writeActions(List<StorageAction> actions) throws Exception {
+        try (FileChannel channel = FileChannel.open(storagePath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            for (StorageAction action : actions) {
+                StorageLogFile.writeRecord(out, JsonUtil.MAPPER.writeValueAsBytes(action));
+            }
+            out.flush();
+            if (fsync) {
+                channel.force(false);
+            }
+        }
+        appendedActions += actions.size();
+    }
+
+    /**
+     * Rewrites the log, so it contains a single save action per live record.
+     * Must be called from the storage executor, so it doesn't interleave with the writes.
+     */
+    public void compact() {
+        long start = System.nanoTime();
+        Path compactedPath = storagePath.resolveSibling(storagePath.getFileName() + ".compacting");
+        try {
+            Map<StorageModel, Map<Object, StorageRecord<?>>> records = new EnumMap<>(StorageModel.class);
+            StorageLogFile.ReadResult result = readLog(storagePath, records);
+
+            int liveRecords = 0;
+            try (FileChannel channel = FileChannel.open(compactedPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                for (Map<Object, StorageRecord<?>> modelRecords : records.values()) {
+                    for (StorageRecord<?> record : modelRecords.values()) {
+                        StorageLogFile.writeRecord(out, JsonUtil.MAPPER.writeValueAsBytes(new StorageAction.Save(record)));
+                        liveRecords++;
+                    }
+                }
+                out.flush();
+                channel.force(false);
+            }
+            Files.move(compactedPath, storagePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            appendedActions = 0;
+            log.info("Compacted {} storage records of {} into {} in {}ms",
+                    result.records(), storagePath, liveRecords, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            log.warn("Failed to compact the storage file {}", storagePath, e);
+            try {
+                Files.deleteIfExists(compactedPath);
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * Hands over the records of the model, which were replayed from the storage file on startup.
+     * Every model can be requested only once, the following calls return an empty map.
+     */
+    @Override
+    public <I, T extends StorageRecord<I>> Map<I, T> readAllRecords(StorageModel model) {
+        Map<Object, StorageRecord<?>> records;
+        synchronized (replayedRecords) {
+            records = replayedRecords.remove(model);
+        }
+
+        //noinspection unchecked
+        return records != null ? (Map<I, T>) records : new HashMap<>();
+    }
+
+    public int getCorruptedRecordsCount() {
+        return corruptedRecords;
+    }
+
+    private void replay() {
+        try {
+            StorageLogFile.ReadResult result = readLog(storagePath, replayedRecords);
+
+            this.corruptedRecords = result.corruptedRecords();
+            if (result.corruptedRecords() > 0 || result.truncatedBytes() > 0) {
+                log.warn("Replayed {} records from {}, skipped {} corrupted records, truncated {} bytes",
+                        result.records(), storagePath, result.corruptedRecords(), result.truncatedBytes());
+            } else {
+                log.info("Replayed {} records from {}", result.records(), storagePath);
+            }
+        } catch (Exception e) {
+            log.error("Failed to read the storage file.", e);
+        }
+    }
+
+    private static StorageLogFile.ReadResult readLog(Path storagePath,
+                                                     Map<StorageModel, Map<Object, StorageRecord<?>>> records)
+            throws IOException {
+        for (StorageModel model : StorageModel.values()) {
+            records.put(model, new HashMap<>());
+        }
+
+        return StorageLogFile.readRecords(storagePath, (buf, offset, length) -> {
+            StorageAction action = ACTION_READER.readValue(buf, offset, length);
+            applyAction(records, action);
+        });
+    }
+
+    private static void applyAction(Map<StorageModel, Map<Object, StorageRecord<?>>> records, StorageAction action) {
+        switch (action) {
+            case StorageAction.Save(StorageRecord<?> record) ->
+                    records.get(record.getModel()).put(record.getId(), record);
+
+            case StorageAction.Delete(StorageModel model, Object id) ->
+                    records.get(model).remove(id);
+
+            case StorageAction.Progress(String id, DownloadingFileStatus status,
+                                        long commitedDownloadedBytes, long updatedAt) ->
+                    records.get(StorageModel.DOWNLOADING_FILE).computeIfPresent(id, (fileId, record) ->
+                            ((DownloadingFile) record).withProgress(status, commitedDownloadedBytes, updatedAt));
+        }
+    }
+}
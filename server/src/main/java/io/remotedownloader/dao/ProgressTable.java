@@ -0,0 +1,225 @@
+package io.remotedownloader.dao;
+
+import io.remotedownloader.model.DownloadingFile;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Live progress of the files being downloaded, kept in primitive columns by a dense slot.
+ * Slots are taken while the file is downloading and reused afterward, so the table size follows the active downloads.
+ * Columns are split into pages, which are never moved, so the downloaders write without locks and allocations.
+ * Every slot is written by the single downloader of its file, readers might see the progress with a small delay.
+ */
+public class ProgressTable {
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle STRINGS = MethodHandles.arrayElementVarHandle(String[].class);
+
+    private final ConcurrentMap<String, Integer> slotsByFileId = new ConcurrentHashMap<>();
+    private volatile Page[] pages = new Page[0];
+    private int[] freeSlots = new int[16]; // guarded by this
+    private int freeSlotsCount; // guarded by this
+    private int nextSlot; // guarded by this
+
+    /**
+     * Takes the slot for the file, if it doesn't have one yet.
+     * The file keeps its slot, while it's downloading, so only a new file takes the lock of the table.
+     *
+     * @return slot of the file
+     */
+    public int acquire(String fileId, long downloadedBytes) {
+        Integer slot = slotsByFileId.get(fileId);
+        return slot != null ? slot : acquireSlot(fileId, downloadedBytes);
+    }
+
+    private synchronized int acquireSlot(String fileId, long downloadedBytes) {
+        Integer existingSlot = slotsByFileId.get(fileId);
+        if (existingSlot != null) {
+            return existingSlot;
+        }
+
+        int slot = freeSlotsCount > 0 ? freeSlots[--freeSlotsCount] : nextSlot++;
+        Page page = getOrCreatePage(slot);
+        int index = slot & PAGE_MASK;
+        LONGS.setRelease(page.downloadedBytes, index, downloadedBytes);
+        LONGS.setRelease(page.commitedDownloadedBytes, index, downloadedBytes);
+        LONGS.setRelease(page.speedBytesPerSecond, index, 0L);
+        STRINGS.setRelease(page.fileIds, index, fileId);
+        slotsByFileId.put(fileId, slot);
+        return slot;
+    }
+
+    public synchronized void release(String fileId) {
+        Integer slot = slotsByFileId.remove(fileId);
+        if (slot == null) {
+            return;
+        }
+
+        STRINGS.setRelease(pages[slot >>> PAGE_SHIFT].fileIds, slot & PAGE_MASK, null);
+        if (freeSlotsCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotsCount * 2);
+        }
+        freeSlots[freeSlotsCount++] = slot;
+    }
+
+    /**
+     * @return slot of the file or -1, if the file is not downloading
+     */
+    public int getSlot(String fileId) {
+        Integer slot = slotsByFileId.get(fileId);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Updates the downloaded bytes, unless the slot was released and taken by another file.
+     */
+    public void setDownloadedBytes(int slot, String fileId, long downloadedBytes) {
+        if (slot >= 0) {
+            Page page = pages[slot >>> PAGE_SHIFT];
+            int index = slot & PAGE_MASK;
+            if (fileId.equals(STRINGS.getAcquire(page.fileIds, index))) {
+                LONGS.setRelease(page.downloadedBytes, index, downloadedBytes);
+            }
+        }
+    }
+
+    /**
+     * Updates the bytes, which were persisted, unless the slot was released and taken by another file.
+     * The downloading file itself is rebuilt only once its status changes.
+     */
+    public void setCommitedDownloadedBytes(int slot, String fileId, long commitedDownloadedBytes) {
+        if (slot >= 0) {
+            Page page = pages[slot >>> PAGE_SHIFT];
+            int index = slot & PAGE_MASK;
+            if (fileId.equals(STRINGS.getAcquire(page.fileIds, index))) {
+                LONGS.setRelease(page.commitedDownloadedBytes, index, commitedDownloadedBytes);
+            }
+        }
+    }
+
+    /**
+     * Updates the speed, unless the slot was released and taken by another file.
+     */
+    public void setSpeedBytesPerSecond(int slot, String fileId, long speedBytesPerSecond) {
+        if (slot >= 0) {
+            Page page = pages[slot >>> PAGE_SHIFT];
+            int index = slot & PAGE_MASK;
+            if (fileId.equals(STRINGS.getAcquire(page.fileIds, index))) {
+                LONGS.setRelease(page.speedBytesPerSecond, index, speedBytesPerSecond);
+            }
+        }
+    }
+
+    /**
+     * @return live downloaded bytes of the file or its committed bytes, if the file is not downloading
+     */
+    public long getDownloadedBytes(DownloadingFile file) {
+        Integer slot = slotsByFileId.get(file.id);
+        if (slot != null) {
+            Page page = pages[slot >>> PAGE_SHIFT];
+            int index = slot & PAGE_MASK;
+            long downloadedBytes = (long) LONGS.getAcquire(page.downloadedBytes, index);
+            // the value belongs to the file only if the slot was not reused meanwhile
+            if (file.id.equals(STRINGS.getAcquire(page.fileIds, index))) {
+                return downloadedBytes;
+            }
+        }
+        return file.commitedDownloadedBytes;
+    }
+
+    /**
+     * @return persisted downloaded bytes of the file, which are ahead of the file itself while it's downloading
+     */
+    public long getCommitedDownloadedBytes(DownloadingFile file) {
+        Integer slot = slotsByFileId.get(file.id);
+        if (slot != null) {
+            Page page = pages[slot >>> PAGE_SHIFT];
+            int index = slot & PAGE_MASK;
+            long commitedDownloadedBytes = (long) LONGS.getAcquire(page.commitedDownloadedBytes, index);
+            if (file.id.equals(STRINGS.getAcquire(page.fileIds, index))) {
+                return commitedDownloadedBytes;
+            }
+        }
+        return file.commitedDownloadedBytes;
+    }
+
+    /**
+     * @return speed of the file or 0, if the file is not downloading
+     */
+    public long getSpeedBytesPerSecond(DownloadingFile file) {
+        Integer slot = slotsByFileId.get(file.id);
+        if (slot != null) {
+            Page page = pages[slot >>> PAGE_SHIFT];
+            int index = slot & PAGE_MASK;
+            long speedBytesPerSecond = (long) LONGS.getAcquire(page.speedBytesPerSecond, index);
+            if (file.id.equals(STRINGS.getAcquire(page.fileIds, index))) {
+                return speedBytesPerSecond;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return sum of the live downloaded bytes of all downloading files
+     */
+    public long getTotalDownloadedBytes() {
+        return sumColumn(false);
+    }
+
+    /**
+     * @return sum of the speeds of all downloading files
+     */
+    public long getTotalSpeedBytesPerSecond() {
+        return sumColumn(true);
+    }
+
+    private long sumColumn(boolean speed) {
+        long result = 0;
+        for (Page page : pages) {
+            long[] column = speed ? page.speedBytesPerSecond : page.downloadedBytes;
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                if (STRINGS.getAcquire(page.fileIds, i) != null) {
+                    result += (long) LONGS.getAcquire(column, i);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of the files being downloaded
+     */
+    public int size() {
+        return slotsByFileId.size();
+    }
+
+    public synchronized void clear() {
+        for (String fileId : slotsByFileId.keySet()) {
+            release(fileId);
+        }
+    }
+
+    private Page getOrCreatePage(int slot) {
+        int pageIndex = slot >>> PAGE_SHIFT;
+        Page[] pages = this.pages;
+        if (pageIndex == pages.length) {
+            pages = Arrays.copyOf(pages, pageIndex + 1);
+            pages[pageIndex] = new Page();
+            this.pages = pages;
+        }
+        return pages[pageIndex];
+    }
+
+    private static final class Page {
+        private final String[] fileIds = new String[PAGE_SIZE];
+        private final long[] downloadedBytes = new long[PAGE_SIZE];
+        private final long[] commitedDownloadedBytes = new long[PAGE_SIZE];
+        private final long[] speedBytesPerSecond = new long[PAGE_SIZE];
+    }
+}
@@ -2,25 +2,87 @@ package io.remotedownloader.dao;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.EventExecutor;
 import io.remotedownloader.model.DownloadingFilesReportSubscription;
+import io.remotedownloader.model.FilesReportState;
+import io.remotedownloader.model.FilesScope;
+import io.remotedownloader.model.ReportSchedule;
+import io.remotedownloader.model.SessionLag;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class SessionDao {
     public final Map<Channel, DownloadingFilesReportSubscription> filesSubscriptions = new ConcurrentHashMap<>();
+    // the same subscriptions by the event loop of the channel, so every loop reports its own channels
+    private final Map<EventExecutor, Map<Channel, DownloadingFilesReportSubscription>> subscriptionsByEventLoop =
+            new ConcurrentHashMap<>();
+    private final int defaultReportIntervalMillis;
 
-    public void addSubscription(ChannelHandlerContext ctx, String username) {
+    public SessionDao(int defaultReportIntervalMillis) {
+        this.defaultReportIntervalMillis = defaultReportIntervalMillis;
+    }
+
+    /**
+     * Subscribes the channel on the reports, replacing its previous subscription, but keeping the visible files.
+     *
+     * @param deltaReports         report only the changes of the progress after the first report of a file
+     * @param reportIntervalMillis interval between the reports or {@code 0} to use the default one
+     */
+    public void addSubscription(ChannelHandlerContext ctx,
+                                String username,
+                                boolean deltaReports,
+                                int reportIntervalMillis) {
         Channel channel = ctx.channel();
-        filesSubscriptions.put(channel, new DownloadingFilesReportSubscription(username, ctx));
+        FilesReportState reportState = deltaReports ? new FilesReportState() : null;
+        ReportSchedule schedule = new ReportSchedule(
+                reportIntervalMillis != 0 ? reportIntervalMillis : defaultReportIntervalMillis);
+        DownloadingFilesReportSubscription previous = filesSubscriptions.get(channel);
+        FilesScope scope = previous != null ? previous.scope() : new FilesScope();
+        DownloadingFilesReportSubscription subscription = new DownloadingFilesReportSubscription(
+                username, ctx, reportState, schedule, scope, SessionLag.of(channel), new LinkedHashMap<>());
+        filesSubscriptions.put(channel, subscription);
+        subscriptionsByEventLoop.computeIfAbsent(channel.eventLoop(), eventLoop -> new ConcurrentHashMap<>())
+                .put(channel, subscription);
     }
 
     public void removeSubscription(Channel channel) {
-        filesSubscriptions.remove(channel);
+        if (filesSubscriptions.remove(channel) != null) {
+            Map<Channel, DownloadingFilesReportSubscription> subscriptions =
+                    subscriptionsByEventLoop.get(channel.eventLoop());
+            if (subscriptions != null) {
+                subscriptions.remove(channel);
+            }
+        }
+    }
+
+    /**
+     * @return subscription of the channel or {@code null}, if it's not subscribed
+     */
+    public DownloadingFilesReportSubscription getSubscription(Channel channel) {
+        return filesSubscriptions.get(channel);
     }
 
     public Collection<DownloadingFilesReportSubscription> getDownloadingFilesReportSubscriptions() {
         return filesSubscriptions.values();
     }
+
+    /**
+     * @return event loops, which have or had the subscriptions
+     */
+    public Set<EventExecutor> getEventLoops() {
+        return subscriptionsByEventLoop.keySet();
+    }
+
+    /**
+     * @return subscriptions of the channels, which are registered on the event loop
+     */
+    public Collection<DownloadingFilesReportSubscription> getDownloadingFilesReportSubscriptions(EventExecutor eventLoop) {
+        Map<Channel, DownloadingFilesReportSubscription> subscriptions = subscriptionsByEventLoop.get(eventLoop);
+        return subscriptions != null ? subscriptions.values() : Collections.emptyList();
+    }
 }
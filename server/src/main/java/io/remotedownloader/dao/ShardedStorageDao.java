@@ -0,0 +1,133 @@
+package io.remotedownloader.dao;
+
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.StorageModel;
+import io.remotedownloader.model.StorageRecord;
+import io.remotedownloader.util.LatencyHistogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiFunction;
+
+/**
+ * Splits the records between several storages by the hash of the owner username,
+ * so every shard is written and replayed by its own storage thread.
+ */
+public class ShardedStorageDao implements StorageDao {
+    private static final Logger log = LogManager.getLogger(ShardedStorageDao.class);
+    private final StorageDao[] shards;
+
+    /**
+     * Creates the shards in parallel, each one on its own executor, as creating a shard replays its storage.
+     *
+     * @param shardFactory creates the shard by its number and executor
+     */
+    public ShardedStorageDao(ScheduledExecutorService[] storageExecutors,
+                             BiFunction<Integer, ScheduledExecutorService, StorageDao> shardFactory) {
+        long start = System.currentTimeMillis();
+
+        @SuppressWarnings("unchecked")
+        CompletableFuture<StorageDao>[] futures = new CompletableFuture[storageExecutors.length];
+        for (int i = 0; i < storageExecutors.length; i++) {
+            int shard = i;
+            ScheduledExecutorService executor = storageExecutors[i];
+            futures[i] = CompletableFuture.supplyAsync(() -> shardFactory.apply(shard, executor), executor);
+        }
+
+        this.shards = new StorageDao[storageExecutors.length];
+        for (int i = 0; i < futures.length; i++) {
+            shards[i] = futures[i].join();
+        }
+
+        log.info("Loaded {} storage shards in {}ms", shards.length, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveRecord(StorageRecord<?> record) {
+        return getShard(record.getOwner()).saveRecord(record);
+    }
+
+    @Override
+    public CompletableFuture<Void> saveProgress(DownloadingFile file, long commitedDownloadedBytes, long updatedAt) {
+        return getShard(file.ownerUsername).saveProgress(file, commitedDownloadedBytes, updatedAt);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteRecord(StorageRecord<?> record) {
+        return getShard(record.getOwner()).deleteRecord(record);
+    }
+
+    /**
+     * Merges the records of all shards. Records, which are found in a shard different from the one
+     * their owner is routed to (e.g. after changing the number of shards), are moved to the right shard.
+     * Returns once the moves are persisted.
+     */
+    @Override
+    public <I, T extends StorageRecord<I>> Map<I, T> readAllRecords(StorageModel model) {
+        Map<I, T> result = new HashMap<>();
+        List<CompletableFuture<Void>> moves = new ArrayList<>();
+        for (StorageDao shard : shards) {
+            Map<I, T> records = shard.readAllRecords(model);
+            for (T record : records.values()) {
+                StorageDao expectedShard = getShard(record.getOwner());
+                if (expectedShard != shard) {
+                    // deleting only once the record is durably saved to the new shard,
+                    // so a crash in between leaves the record in both shards rather than in none
+                    moves.add(expectedShard.saveRecord(record).thenCompose(ignored -> shard.deleteRecord(record)));
+                }
+            }
+            result.putAll(records);
+        }
+
+        if (!moves.isEmpty()) {
+            int failedMoves = 0;
+            for (CompletableFuture<Void> move : moves) {
+                try {
+                    move.join();
+                } catch (Exception e) {
+                    if (failedMoves++ == 0) {
+                        log.error("Failed to move a {} record to the other storage shard", model, e);
+                    }
+                }
+            }
+
+            if (failedMoves > 0) {
+                log.error("Failed to move {} of {} {} records to the other storage shards, they are kept in the previous ones",
+                        failedMoves, moves.size(), model);
+            } else {
+                log.info("Moved {} {} records to the other storage shards", moves.size(), model);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public LatencyHistogram getAcknowledgementLatency() {
+        LatencyHistogram result = new LatencyHistogram();
+        for (StorageDao shard : shards) {
+            result.addAll(shard.getAcknowledgementLatency());
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        for (StorageDao shard : shards) {
+            shard.close();
+        }
+    }
+
+    public int getShardsCount() {
+        return shards.length;
+    }
+
+    StorageDao getShard(String ownerUsername) {
+        return shards[Math.floorMod(ownerUsername.hashCode(), shards.length)];
+    }
+}
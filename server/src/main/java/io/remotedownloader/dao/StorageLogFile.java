@@ -0,0 +1,171 @@
+package io.remotedownloader.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.zip.CRC32;
+
+/**
+ * Line based storage log format: every record is written as {@code <crc32 hex> <payload>\n}.
+ * Lines, which start with '{', are records written before the checksum was introduced and are read as is.
+ */
+public final class StorageLogFile {
+    private static final Logger log = LogManager.getLogger(StorageLogFile.class);
+    private static final int CHECKSUM_LENGTH = 8;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+    private StorageLogFile() {
+    }
+
+    /**
+     * @return number of the written bytes
+     */
+    public static int writeRecord(OutputStream out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        out.write(HEX_FORMAT.toHexDigits((int) crc.getValue()).getBytes());
+        out.write(' ');
+        out.write(payload);
+        out.write('\n');
+        return CHECKSUM_LENGTH + payload.length + 2;
+    }
+
+    /**
+     * Reads all records of the file in a single pass. Records with mismatching checksum are skipped,
+     * and a torn record at the end of the file (the one without a trailing new line) is truncated.
+     */
+    public static ReadResult readRecords(Path path, RecordConsumer consumer) throws IOException {
+        return readRecords(path, (recordOffset, recordLength, buf, offset, length) -> consumer.accept(buf, offset, length));
+    }
+
+    /**
+     * Same as {@link #readRecords(Path, RecordConsumer)}, but also passes the position of every record in the file,
+     * so the record can be read later on its own with {@link #readRecord(FileChannel, long, int, RecordConsumer)}.
+     */
+    public static ReadResult readRecords(Path path, PositionedRecordConsumer consumer) throws IOException {
+        int records = 0;
+        int corruptedRecords = 0;
+        long truncatedBytes = 0;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            byte[] buf = new byte[READ_BUFFER_SIZE];
+            int length = 0; // bytes of the buffer, that are not consumed yet
+            long lineOffset = 0; // file offset of the first not consumed byte
+
+            int read;
+            while ((read = channel.read(ByteBuffer.wrap(buf, length, buf.length - length))) != -1) {
+                length += read;
+
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (buf[i] == '\n') {
+                        if (i > lineStart) {
+                            long recordOffset = lineOffset;
+                            int recordLength = i + 1 - lineStart;
+                            RecordConsumer recordConsumer = (recordBuf, payloadOffset, payloadLength) ->
+                                    consumer.accept(recordOffset, recordLength, recordBuf, payloadOffset, payloadLength);
+                            if (readRecord(buf, lineStart, i - lineStart, recordConsumer)) {
+                                records++;
+                            } else {
+                                log.warn("Skipping corrupted storage record at offset {} of {}", lineOffset, path);
+                                corruptedRecords++;
+                            }
+                        }
+                        lineOffset += i + 1 - lineStart;
+                        lineStart = i + 1;
+                    }
+                }
+
+                length -= lineStart;
+                if (lineStart > 0) {
+                    System.arraycopy(buf, lineStart, buf, 0, length);
+                } else if (length == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+            }
+
+            if (length > 0) {
+                log.warn("Truncating torn storage record of {} bytes at the end of {}", length, path);
+                channel.truncate(lineOffset);
+                truncatedBytes = length;
+            }
+        }
+
+        return new ReadResult(records, corruptedRecords, truncatedBytes);
+    }
+
+    /**
+     * Reads a single record at the position, which was reported by {@link #readRecords(Path, PositionedRecordConsumer)}.
+     *
+     * @return {@code false}, if the record is corrupted
+     */
+    public static boolean readRecord(FileChannel channel, long recordOffset, int recordLength, RecordConsumer consumer)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(recordLength);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, recordOffset + buffer.position()) == -1) {
+                return false;
+            }
+        }
+        // the trailing new line is not a part of the record
+        return recordLength > 1 && readRecord(buffer.array(), 0, recordLength - 1, consumer);
+    }
+
+    private static boolean readRecord(byte[] buf, int offset, int length, RecordConsumer consumer) {
+        int payloadOffset = offset;
+        if (buf[offset] != '{') {
+            if (length <= CHECKSUM_LENGTH + 1 || buf[offset + CHECKSUM_LENGTH] != ' ') {
+                return false;
+            }
+
+            payloadOffset = offset + CHECKSUM_LENGTH + 1;
+            CRC32 crc = new CRC32();
+            crc.update(buf, payloadOffset, length - CHECKSUM_LENGTH - 1);
+            try {
+                int expectedChecksum = HEX_FORMAT.fromHexDigits(new String(buf, offset, CHECKSUM_LENGTH));
+                if (expectedChecksum != (int) crc.getValue()) {
+                    return false;
+                }
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+
+        try {
+            consumer.accept(buf, payloadOffset, length - (payloadOffset - offset));
+            return true;
+        } catch (Exception e) {
+            log.debug("Failed to parse the storage record", e);
+            return false;
+        }
+    }
+
+    public interface RecordConsumer {
+        void accept(byte[] buf, int offset, int length) throws IOException;
+    }
+
+    public interface PositionedRecordConsumer {
+        /**
+         * @param recordOffset offset of the record in the file
+         * @param recordLength length of the record in the file, including the checksum and the new line
+         */
+        void accept(long recordOffset, int recordLength, byte[] buf, int offset, int length) throws IOException;
+    }
+
+    public record ReadResult(
+            int records,
+            int corruptedRecords,
+            long truncatedBytes
+    ) {
+    }
+}
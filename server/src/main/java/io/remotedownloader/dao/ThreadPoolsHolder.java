@@ -15,18 +15,36 @@ public class ThreadPoolsHolder {
     public final ScheduledExecutorService scheduledThreadPoolExecutor =
             Executors.newSingleThreadScheduledExecutor(threadFactory("Scheduled-Jobs"));
 
-    public final ScheduledExecutorService storageThreadPoolExecutor =
-            Executors.newSingleThreadScheduledExecutor(threadFactory("Storage"));
+    // writer thread per storage shard
+    public final ScheduledExecutorService[] storageThreadPoolExecutors;
+    public final ScheduledExecutorService storageThreadPoolExecutor;
 
     public final ExecutorService blockingTasksExecutor =
             Executors.newSingleThreadExecutor(threadFactory("Blocking-Task-Executor"));
 
+    public ThreadPoolsHolder() {
+        this(1);
+    }
+
+    public ThreadPoolsHolder(int storageThreads) {
+        ThreadFactory storageThreadFactory = threadFactory("Storage");
+        this.storageThreadPoolExecutors = new ScheduledExecutorService[storageThreads];
+        for (int i = 0; i < storageThreads; i++) {
+            storageThreadPoolExecutors[i] = Executors.newSingleThreadScheduledExecutor(storageThreadFactory);
+        }
+        this.storageThreadPoolExecutor = storageThreadPoolExecutors[0];
+    }
+
     public void close() {
         scheduledThreadPoolExecutor.shutdown();
         blockingTasksExecutor.shutdown();
+        for (ScheduledExecutorService executor : storageThreadPoolExecutors) {
+            executor.shutdown();
+        }
         try {
-            storageThreadPoolExecutor.shutdown();
-            storageThreadPoolExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            for (ScheduledExecutorService executor : storageThreadPoolExecutors) {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            }
         } catch (Exception e) {
             log.warn("Failed to gracefully shutdown storage thread pool", e);
         }
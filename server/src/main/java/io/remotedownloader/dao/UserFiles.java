@@ -0,0 +1,344 @@
+package io.remotedownloader.dao;
+
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.model.FileChangeType;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Files of a single user, stored in a dense array with the slot index by id,
+ * plus an index ordered by creation time from the newest, the index by status,
+ * the search index and the statistics.
+ * Every change increments the version, so the unchanged history can be recognized without comparing the files,
+ * and is appended to the change feed. Changes of the status are published to the event bus.
+ * Updates are serialized per user and replace the file in its slot, removal moves the last file
+ * into the freed slot. Reads don't take any locks and scan the array without copying it.
+ */
+public class UserFiles {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final Comparator<DownloadingFile> NEWEST_FIRST = Comparator
+            .comparingLong((DownloadingFile file) -> -file.createdAt)
+            .thenComparing(file -> file.id);
+
+    private final Map<String, Integer> slotsById = new HashMap<>(); // guarded by this
+    private volatile DownloadingFile[] files = new DownloadingFile[INITIAL_CAPACITY];
+    private volatile int size;
+    private final ConcurrentNavigableMap<CreatedAtKey, DownloadingFile> filesByCreatedAt = new ConcurrentSkipListMap<>();
+    private final Map<DownloadingFileStatus, ConcurrentMap<String, DownloadingFile>> filesByStatus =
+            new EnumMap<>(DownloadingFileStatus.class);
+    private final FilesSearchIndex searchIndex = new FilesSearchIndex(); // guarded by this
+    private final FilesStatistics statistics;
+    private volatile long version; // written under this
+    private final ChangeFeed changeFeed;
+    private final FilesEventBus eventBus;
+
+    private final Collection<DownloadingFile> filesView = new AbstractCollection<>() {
+        @Override
+        public Iterator<DownloadingFile> iterator() {
+            return new FilesIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    /**
+     * @param initialVersion the first version of the files and the first sequence of their change feed
+     */
+    UserFiles(FilesStatistics serverStatistics, FilesEventBus eventBus, int changeFeedCapacity, long initialVersion) {
+        this.statistics = new FilesStatistics(serverStatistics);
+        this.changeFeed = new ChangeFeed(changeFeedCapacity, initialVersion);
+        this.eventBus = eventBus;
+        this.version = initialVersion;
+        for (DownloadingFileStatus status : DownloadingFileStatus.values()) {
+            filesByStatus.put(status, new ConcurrentHashMap<>());
+        }
+    }
+
+    synchronized DownloadingFile put(DownloadingFile file) {
+        int size = this.size;
+        DownloadingFile[] files = this.files;
+
+        Integer slot = slotsById.get(file.id);
+        if (slot != null) {
+            DownloadingFile previousFile = files[slot];
+            files[slot] = file;
+            if (previousFile.createdAt != file.createdAt) {
+                filesByCreatedAt.remove(new CreatedAtKey(previousFile));
+            }
+            filesByCreatedAt.put(new CreatedAtKey(file), file);
+            if (previousFile.status != file.status) {
+                filesByStatus.get(previousFile.status).remove(file.id);
+            }
+            filesByStatus.get(file.status).put(file.id, file);
+            searchIndex.put(file);
+            statistics.remove(previousFile);
+            statistics.add(file);
+            changeFeed.append(FileChangeType.UPDATED, file);
+            // volatile write publishes the updated slot to the readers
+            this.size = size;
+            this.version = version + 1;
+            if (previousFile.status != file.status) {
+                eventBus.publish(file);
+            }
+            return previousFile;
+        }
+
+        if (size == files.length) {
+            files = Arrays.copyOf(files, size * 2);
+            this.files = files;
+        }
+        files[size] = file;
+        slotsById.put(file.id, size);
+        filesByCreatedAt.put(new CreatedAtKey(file), file);
+        filesByStatus.get(file.status).put(file.id, file);
+        searchIndex.put(file);
+        statistics.add(file);
+        changeFeed.append(FileChangeType.CREATED, file);
+        this.size = size + 1;
+        this.version = version + 1;
+        eventBus.publish(file);
+        return null;
+    }
+
+    /**
+     * @param archived the file is moved to the archive, so it's removed only if it was not updated concurrently,
+     *                 and it's not reported as deleted, as it stays in the history
+     */
+    synchronized boolean remove(DownloadingFile file, boolean archived) {
+        Integer slot = slotsById.get(file.id);
+        if (slot == null) {
+            return false;
+        }
+
+        DownloadingFile[] files = this.files;
+        if (archived && files[slot] != file) {
+            return false;
+        }
+
+        int lastSlot = size - 1;
+        slotsById.remove(file.id);
+        filesByCreatedAt.remove(new CreatedAtKey(files[slot]));
+        filesByStatus.get(files[slot].status).remove(file.id);
+        searchIndex.remove(file.id);
+        statistics.remove(files[slot]);
+        if (!archived) {
+            changeFeed.append(FileChangeType.DELETED, files[slot]);
+        }
+        if (slot != lastSlot) {
+            DownloadingFile lastFile = files[lastSlot];
+            files[slot] = lastFile;
+            slotsById.put(lastFile.id, slot);
+        }
+        files[lastSlot] = null;
+        this.size = lastSlot;
+        this.version = version + 1;
+        return true;
+    }
+
+    /**
+     * Reports the deletion of the file, which is not kept here, as it was archived.
+     */
+    synchronized void archivedFileDeleted(DownloadingFile file) {
+        changeFeed.append(FileChangeType.DELETED, file);
+        this.version = version + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return version of the files, which is incremented once the change is visible
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return weakly consistent view of the files: a concurrently moved file might be skipped or seen twice
+     */
+    public Collection<DownloadingFile> getFiles() {
+        return filesView;
+    }
+
+    /**
+     * @param after key of the last file of the previous page or {@code null} to start from the newest file
+     * @return weakly consistent view of the files, ordered by creation time from the newest
+     */
+    public Collection<DownloadingFile> getNewestFirst(CreatedAtKey after) {
+        return after != null ? filesByCreatedAt.tailMap(after, false).values() : filesByCreatedAt.values();
+    }
+
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    public FilesStatistics getStatistics() {
+        return statistics;
+    }
+
+    public Collection<DownloadingFile> getFilesByStatus(DownloadingFileStatus status) {
+        return filesByStatus.get(status).values();
+    }
+
+    /**
+     * Finds the page of the matching files without holding the lock of the files, except for the lookup of the
+     * trigrams. Queries, which are too short for the trigrams, walk the files from the newest and stop at the end
+     * of the page. The matches of the trigrams are selected for the page without sorting all of them.
+     *
+     * @param query  text, which should be contained in the file name or URL, ignoring case; {@code null} matches any
+     * @param status status of the files or {@code null} to match any
+     * @return the page of the matching files, ordered by creation time from the newest
+     */
+    public SearchResult search(String query, DownloadingFileStatus status, int offset, int limit) {
+        String normalizedQuery = query == null ? "" : FilesSearchIndex.normalize(query);
+        if (normalizedQuery.length() >= FilesSearchIndex.MIN_QUERY_LENGTH) {
+            List<DownloadingFile> candidates;
+            synchronized (this) {
+                candidates = searchIndex.findCandidates(normalizedQuery, status);
+            }
+            return selectPage(candidates, normalizedQuery, offset, limit);
+        }
+
+        Collection<DownloadingFile> statusFiles = status != null ? filesByStatus.get(status).values() : null;
+        int statusFilesCount = statusFiles != null ? statusFiles.size() : size;
+        // the walk from the newest visits about (offset + limit) * size / statusFilesCount files to fill the page,
+        // so the files of a rare status are cheaper to select from their own index
+        if (statusFiles != null && (long) statusFilesCount * statusFilesCount < ((long) offset + limit) * size) {
+            return selectPage(statusFiles, normalizedQuery, offset, limit);
+        }
+
+        List<DownloadingFile> page = new ArrayList<>(limit);
+        int matches = 0;
+        for (DownloadingFile file : filesByCreatedAt.values()) {
+            if ((status == null || file.status == status) && FilesSearchIndex.matches(file, normalizedQuery)) {
+                if (matches++ >= offset) {
+                    if (page.size() == limit) {
+                        break;
+                    }
+                    page.add(file);
+                }
+            }
+        }
+
+        // without the text to match, all the files of the status are counted, otherwise the walk stops after
+        // the page and only tells, whether there are more matches
+        int totalMatches = normalizedQuery.isEmpty() ? Math.max(statusFilesCount, matches) : matches;
+        return new SearchResult(page, totalMatches);
+    }
+
+    /**
+     * Checks the text of the files and keeps only the newest files up to the end of the page.
+     */
+    private static SearchResult selectPage(Collection<DownloadingFile> files,
+                                           String normalizedQuery,
+                                           int offset,
+                                           int limit) {
+        long pageEnd = (long) offset + limit;
+        // the oldest of the kept files is on top, so it's replaced by a newer one
+        PriorityQueue<DownloadingFile> newestFiles = new PriorityQueue<>(NEWEST_FIRST.reversed());
+        int matches = 0;
+        for (DownloadingFile file : files) {
+            if (!FilesSearchIndex.matches(file, normalizedQuery)) {
+                continue;
+            }
+            matches++;
+            if (newestFiles.size() < pageEnd) {
+                newestFiles.add(file);
+            } else if (NEWEST_FIRST.compare(file, newestFiles.peek()) < 0) {
+                newestFiles.poll();
+                newestFiles.add(file);
+            }
+        }
+
+        DownloadingFile[] page = new DownloadingFile[Math.max(newestFiles.size() - offset, 0)];
+        for (int i = newestFiles.size() - 1; i >= 0; i--) {
+            DownloadingFile file = newestFiles.poll();
+            if (i >= offset) {
+                page[i - offset] = file;
+            }
+        }
+        return new SearchResult(Arrays.asList(page), matches);
+    }
+
+    /**
+     * @param files        the page of the matching files
+     * @param totalMatches number of the matching files; if the query is too short for the trigrams,
+     *                     the matches are counted only up to the first one after the page
+     */
+    public record SearchResult(
+            List<DownloadingFile> files,
+            int totalMatches
+    ) {
+    }
+
+    /**
+     * Position of the file in the history, which is ordered by creation time from the newest.
+     */
+    public record CreatedAtKey(
+            long createdAt,
+            String id
+    ) implements Comparable<CreatedAtKey> {
+        public CreatedAtKey(DownloadingFile file) {
+            this(file.createdAt, file.id);
+        }
+
+        @Override
+        public int compareTo(CreatedAtKey that) {
+            int result = Long.compare(that.createdAt, this.createdAt);
+            return result != 0 ? result : this.id.compareTo(that.id);
+        }
+    }
+
+    private class FilesIterator implements Iterator<DownloadingFile> {
+        private final DownloadingFile[] files;
+        private final int limit;
+        private int slot;
+        private DownloadingFile next;
+
+        private FilesIterator() {
+            // reading size before the array, so the slots below it are visible
+            int size = UserFiles.this.size;
+            this.files = UserFiles.this.files;
+            this.limit = Math.min(size, files.length);
+        }
+
+        @Override
+        public boolean hasNext() {
+            // slot might be freed by a concurrent removal
+            while (next == null && slot < limit) {
+                next = files[slot++];
+            }
+            return next != null;
+        }
+
+        @Override
+        public DownloadingFile next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DownloadingFile file = next;
+            next = null;
+            return file;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import io.netty.handler.codec.http.EmptyHttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.remotedownloader.ServerProperties;
 import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.ProgressTable;
 import io.remotedownloader.model.DownloadingFile;
 import io.remotedownloader.model.DownloadingFileStatus;
 import org.apache.logging.log4j.LogManager;
@@ -25,10 +26,14 @@ public abstract class BaseFileDownloader implements AsyncHandler<Object> {
     private final String url;
     protected final Path filePath;
     protected final FilesStorageDao filesStorageDao;
+    private final ProgressTable progressTable;
     private final long mapSize;
     private final int commitSize;
 
     protected DownloadingFile file;
+    // written only from the downloading thread, the live value is published via the progress table
+    protected long downloadedBytes;
+    private int progressSlot = -1;
     protected RandomAccessFile randomAccessFile;
     protected FileChannel fileChannel;
     private MappedByteBuffer buffer;
@@ -46,6 +51,7 @@ public abstract class BaseFileDownloader implements AsyncHandler<Object> {
         this.url = url;
         this.filePath = filePath;
         this.filesStorageDao = filesStorageDao;
+        this.progressTable = filesStorageDao.getProgressTable();
         this.mapSize = serverProperties.getFileMapSize();
         this.commitSize = serverProperties.getFileCommitSize();
     }
@@ -86,14 +92,18 @@ public abstract class BaseFileDownloader implements AsyncHandler<Object> {
                     return State.ABORT;
                 }
 
-                this.buffer = allocateBuffer(file.downloadedBytes);
+                this.progressSlot = progressTable.getSlot(file.id);
+                progressTable.setDownloadedBytes(progressSlot, file.id, downloadedBytes);
+                progressTable.setSpeedBytesPerSecond(progressSlot, file.id, 0);
+
+                this.buffer = allocateBuffer(downloadedBytes);
                 return onBodyPartReceived(bodyPart); // ResumeFileDownloader may actually skip some bytes
             }
 
             ByteBuffer chunk = bodyPart.getBodyByteBuffer();
             int size = chunk.remaining();
 
-            long previouslyDownloadedBytes = file.downloadedBytes;
+            long previouslyDownloadedBytes = this.downloadedBytes;
             long fileOffset = previouslyDownloadedBytes;
             while (chunk.hasRemaining()) {
                 int remaining = this.buffer.remaining();
@@ -117,23 +127,21 @@ public abstract class BaseFileDownloader implements AsyncHandler<Object> {
             }
 
             long downloadedBytes = previouslyDownloadedBytes + size;
+            this.downloadedBytes = downloadedBytes;
+            progressTable.setDownloadedBytes(progressSlot, file.id, downloadedBytes);
             if ((previouslyDownloadedBytes / commitSize) != (downloadedBytes / commitSize)) {
                 if (log.isTraceEnabled()) {
                     log.trace("Commiting file {}, downloaded bytes = {}", filePath, downloadedBytes);
                 }
-                this.file = file.commitBytes(DownloadingFileStatus.DOWNLOADING, downloadedBytes);
-                filesStorageDao.updateFile(file);
+                filesStorageDao.commitProgress(file, progressSlot, downloadedBytes);
                 fileChannel.force(false);
-            } else {
-                // as long, as we are writing to this field only from a single thread - this is fine
-                file.downloadedBytes = downloadedBytes;
             }
 
             long now = System.nanoTime();
             if (secondStart == 0) {
                 this.secondStart = now;
             } else if (now - secondStart >= 1000000000) {
-                file.speedBytesPerSecond = secondDownloadedBytes;
+                progressTable.setSpeedBytesPerSecond(progressSlot, file.id, secondDownloadedBytes);
                 secondDownloadedBytes = 0;
                 secondStart = now;
             } else {
@@ -205,7 +213,10 @@ public abstract class BaseFileDownloader implements AsyncHandler<Object> {
     }
 
     protected void markFile(DownloadingFileStatus status) {
-        this.file = file.commitBytes(status, file.downloadedBytes);
-        filesStorageDao.updateFile(file);
+        this.file = file.commitBytes(status, downloadedBytes);
+        filesStorageDao.updateFile(file).exceptionally(e -> {
+            log.warn("Failed to persist the {} status of the file '{}'", status, filePath, e);
+            return null;
+        });
     }
 }
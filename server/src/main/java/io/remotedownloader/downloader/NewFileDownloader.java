@@ -91,6 +91,8 @@ public class NewFileDownloader extends BaseFileDownloader {
         );
         this.file = file;
 
+        // the start is acknowledged right away, as the body is already streaming and waiting for the storage
+        // would delay the response by the coalesce window, the file is rolled back if it fails to be persisted
         filesStorageDao.addFile(file);
         ctx.writeAndFlush(StringMessage.json(msg, new DownloadFileDTO(file)));
         return true;
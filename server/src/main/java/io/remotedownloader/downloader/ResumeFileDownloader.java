@@ -33,8 +33,9 @@ public class ResumeFileDownloader extends BaseFileDownloader {
                                 Path filePath,
                                 FilesStorageDao filesStorageDao,
                                 ServerProperties serverProperties) {
-        super(file.url, filePath, filesStorageDao, serverProperties);
+        super(file.getUrl(), filePath, filesStorageDao, serverProperties);
         this.file = file;
+        this.downloadedBytes = file.commitedDownloadedBytes;
         this.ctx = ctx;
         this.msg = msg;
     }
@@ -77,21 +78,18 @@ public class ResumeFileDownloader extends BaseFileDownloader {
         this.skipBytesLeft = status.getStatusCode() == PARTIAL_CONTENT.code() ? 0 : file.commitedDownloadedBytes;
 
         if (file.status != DownloadingFileStatus.DOWNLOADING
-            || file.speedBytesPerSecond != 0
             || (fileLength > 0 && file.totalBytes != fileLength)) {
             this.file = new DownloadingFile(
                     file.id,
                     file.name,
                     file.path,
-                    file.url,
+                    file.getUrl(),
                     file.ownerUsername,
                     DownloadingFileStatus.DOWNLOADING,
                     fileLength > 0 ? fileLength : file.totalBytes,
                     file.commitedDownloadedBytes,
                     file.createdAt,
-                    System.currentTimeMillis(),
-                    file.downloadedBytes,
-                    0
+                    System.currentTimeMillis()
             );
 
             filesStorageDao.updateFile(file);
@@ -3,9 +3,14 @@ package io.remotedownloader.model;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.remotedownloader.util.StringPool;
 
 import java.util.Objects;
 
+/**
+ * Owner and path are pooled, and the URL is kept as the pooled prefix up to the last path segment plus the suffix,
+ * as these strings repeat across the history and would be duplicated by every record read from the storage.
+ */
 public final class DownloadingFile implements StorageRecord<String> {
     public static final DownloadingFile[] EMPTY_ARRAY = new DownloadingFile[0];
 
@@ -13,7 +18,8 @@ public final class DownloadingFile implements StorageRecord<String> {
     public final String id;
     public final String name;
     public final String path;
-    public final String url;
+    private final String urlPrefix;
+    private final String urlSuffix;
     public final String ownerUsername;
     public final DownloadingFileStatus status;
     public final long totalBytes;
@@ -21,12 +27,6 @@ public final class DownloadingFile implements StorageRecord<String> {
     public final long createdAt;
     public final long updatedAt;
 
-    // should be used just on the UI
-    @JsonIgnore
-    public volatile long downloadedBytes;
-    @JsonIgnore
-    public volatile long speedBytesPerSecond;
-
     @JsonCreator
     public DownloadingFile(
             @JsonProperty("id") String id,
@@ -43,45 +43,42 @@ public final class DownloadingFile implements StorageRecord<String> {
         this(
                 id,
                 name,
-                path,
-                url,
-                ownerUsername,
+                StringPool.canonical(path),
+                StringPool.canonical(url.substring(0, getUrlPrefixLength(url))),
+                url.substring(getUrlPrefixLength(url)),
+                StringPool.canonical(ownerUsername),
                 status,
                 totalBytes,
                 commitedDownloadedBytes,
                 createdAt,
-                updatedAt,
-                0,
-                0
+                updatedAt
         );
     }
 
-    public DownloadingFile(
+    private DownloadingFile(
             String id,
             String name,
             String path,
-            String url,
+            String urlPrefix,
+            String urlSuffix,
             String ownerUsername,
             DownloadingFileStatus status,
             long totalBytes,
             long commitedDownloadedBytes,
             long createdAt,
-            long updatedAt,
-            long downloadedBytes,
-            long speedBytesPerSecond
+            long updatedAt
     ) {
         this.id = id;
         this.name = name;
         this.path = path;
         this.ownerUsername = ownerUsername;
-        this.url = url;
+        this.urlPrefix = urlPrefix;
+        this.urlSuffix = urlSuffix;
         this.status = status;
         this.totalBytes = totalBytes;
         this.commitedDownloadedBytes = commitedDownloadedBytes;
         this.createdAt = createdAt;
         this.updatedAt = updatedAt;
-        this.downloadedBytes = downloadedBytes;
-        this.speedBytesPerSecond = speedBytesPerSecond;
     }
 
     public DownloadingFile commitBytes(DownloadingFileStatus status, long downloadedBytes) {
@@ -89,18 +86,85 @@ public final class DownloadingFile implements StorageRecord<String> {
                 id,
                 name,
                 path,
-                url,
+                urlPrefix,
+                urlSuffix,
                 ownerUsername,
                 status,
                 totalBytes,
                 downloadedBytes,
                 createdAt,
-                System.currentTimeMillis(),
-                downloadedBytes,
-                speedBytesPerSecond
+                System.currentTimeMillis()
         );
     }
 
+    public DownloadingFile withProgress(DownloadingFileStatus status, long commitedDownloadedBytes, long updatedAt) {
+        return new DownloadingFile(
+                id,
+                name,
+                path,
+                urlPrefix,
+                urlSuffix,
+                ownerUsername,
+                status,
+                totalBytes,
+                commitedDownloadedBytes,
+                createdAt,
+                updatedAt
+        );
+    }
+
+    /**
+     * Joins the URL on every call, so the hot paths, like the search, use the prefix and the suffix instead.
+     */
+    public String getUrl() {
+        return urlPrefix.concat(urlSuffix);
+    }
+
+    /**
+     * @return URL up to the last path segment, the instance is shared by the files with the same prefix
+     */
+    @JsonIgnore
+    public String getUrlPrefix() {
+        return urlPrefix;
+    }
+
+    @JsonIgnore
+    public String getUrlSuffix() {
+        return urlSuffix;
+    }
+
+    public boolean hasSameUrl(DownloadingFile that) {
+        return urlSuffix.equals(that.urlSuffix) && urlPrefix.equals(that.urlPrefix);
+    }
+
+    /**
+     * @return length of the URL up to the last path segment, ignoring the query and the fragment
+     */
+    private static int getUrlPrefixLength(String url) {
+        int end = url.length();
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        return end > 0 ? url.lastIndexOf('/', end - 1) + 1 : 0;
+    }
+
+    /**
+     * @return true, if the files differ only by the progress fields: status, committed bytes and update time.
+     */
+    public boolean hasSameMetadata(DownloadingFile that) {
+        return totalBytes == that.totalBytes
+               && createdAt == that.createdAt
+               && id.equals(that.id)
+               && name.equals(that.name)
+               && Objects.equals(path, that.path)
+               && hasSameUrl(that)
+               && ownerUsername.equals(that.ownerUsername);
+    }
+
     @Override
     public String getId() {
         return id;
@@ -111,6 +175,11 @@ public final class DownloadingFile implements StorageRecord<String> {
         return StorageModel.DOWNLOADING_FILE;
     }
 
+    @Override
+    public String getOwner() {
+        return ownerUsername;
+    }
+
     @Override
     public boolean equals(Object object) {
         if (!(object instanceof DownloadingFile that)) {
@@ -121,7 +190,7 @@ public final class DownloadingFile implements StorageRecord<String> {
                && id.equals(that.id)
                && name.equals(that.name)
                && Objects.equals(path, that.path)
-               && url.equals(that.url)
+               && hasSameUrl(that)
                && ownerUsername.equals(that.ownerUsername)
                && status == that.status;
     }
@@ -131,7 +200,8 @@ public final class DownloadingFile implements StorageRecord<String> {
         int result = id.hashCode();
         result = 31 * result + name.hashCode();
         result = 31 * result + Objects.hashCode(path);
-        result = 31 * result + url.hashCode();
+        result = 31 * result + urlPrefix.hashCode();
+        result = 31 * result + urlSuffix.hashCode();
         result = 31 * result + ownerUsername.hashCode();
         result = 31 * result + status.hashCode();
         result = 31 * result + Long.hashCode(totalBytes);
@@ -144,7 +214,7 @@ public final class DownloadingFile implements StorageRecord<String> {
                "id='" + id + '\'' +
                ", name='" + name + '\'' +
                ", path='" + path + '\'' +
-               ", url='" + url + '\'' +
+               ", url='" + getUrl() + '\'' +
                ", ownerUsername='" + ownerUsername + '\'' +
                ", status=" + status +
                ", totalBytes=" + totalBytes +
@@ -2,8 +2,21 @@ package io.remotedownloader.model;
 
 import io.netty.channel.ChannelHandlerContext;
 
+import java.util.Map;
+
+/**
+ * @param reportState        state of the delta reports or {@code null}, if the full files are reported
+ * @param scope              files, which are visible to the session, kept when the session subscribes again
+ * @param pendingTransitions latest transitions of the files by id, which wait for the channel to become writable,
+ *                           accessed only by the event loop of the channel
+ */
 public record DownloadingFilesReportSubscription(
         String username,
-        ChannelHandlerContext ctx
+        ChannelHandlerContext ctx,
+        FilesReportState reportState,
+        ReportSchedule schedule,
+        FilesScope scope,
+        SessionLag lag,
+        Map<String, DownloadingFile> pendingTransitions
 ) {
 }
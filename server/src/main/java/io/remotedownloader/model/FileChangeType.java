@@ -0,0 +1,5 @@
+package io.remotedownloader.model;
+
+public enum FileChangeType {
+    CREATED, UPDATED, DELETED
+}
@@ -0,0 +1,99 @@
+package io.remotedownloader.model;
+
+import io.remotedownloader.model.dto.FilesAggregateDTO;
+import io.remotedownloader.model.dto.FilesStatisticsDTO;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Files reported to a single subscription in the delta mode, by their handles, with the last reported progress.
+ * Handles are not reused within the session. Accessed only by the event loop of the channel.
+ */
+public class FilesReportState {
+    private final Map<String, ReportedFile> filesById = new HashMap<>();
+    private int nextHandle = 1;
+    private int run;
+    private FilesStatisticsDTO lastStatistics;
+    private FilesAggregateDTO lastOthers;
+
+    /**
+     * Starts the next report, files, which are not marked as seen till its end, are forgotten.
+     */
+    public void startReport() {
+        run++;
+    }
+
+    /**
+     * @return reported file or {@code null}, if the file was not reported yet
+     */
+    public ReportedFile get(String fileId) {
+        ReportedFile file = filesById.get(fileId);
+        if (file != null) {
+            file.run = run;
+        }
+        return file;
+    }
+
+    /**
+     * Assigns a new handle to the file, the following reports refer the file by it.
+     */
+    public ReportedFile add(String fileId) {
+        ReportedFile file = new ReportedFile(nextHandle++);
+        file.run = run;
+        filesById.put(fileId, file);
+        return file;
+    }
+
+    public ReportedFile remove(String fileId) {
+        return filesById.remove(fileId);
+    }
+
+    /**
+     * Forgets the files, which were not seen in the current report, e.g. deleted.
+     */
+    public void finishReport() {
+        Iterator<ReportedFile> iterator = filesById.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().run != run) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return whether the statistics differ from the reported ones
+     */
+    public boolean updateStatistics(FilesStatisticsDTO statistics) {
+        if (statistics.equals(lastStatistics)) {
+            return false;
+        }
+        lastStatistics = statistics;
+        return true;
+    }
+
+    /**
+     * @param others aggregate of the files, which are not visible, or {@code null}, if all files are
+     * @return whether the aggregate differs from the reported one
+     */
+    public boolean updateOthers(FilesAggregateDTO others) {
+        if (Objects.equals(others, lastOthers)) {
+            return false;
+        }
+        lastOthers = others;
+        return true;
+    }
+
+    public static class ReportedFile {
+        public final int handle;
+        public long downloadedBytes;
+        public long speedBytesPerSecond;
+        private int run;
+
+        private ReportedFile(int handle) {
+            this.handle = handle;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.remotedownloader.model;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Files, which are visible to a single subscription, e.g. the rows shown by the client:
+ * the files by id plus a page of the history, which is resolved on every report, as new files are added to its top.
+ * The empty scope covers all files of the user. Accessed only by the event loop of the channel.
+ */
+public class FilesScope {
+    public static final int MAX_FILE_IDS = 1000;
+
+    private final Set<String> fileIds = new HashSet<>();
+    private int pageOffset;
+    private int pageSize;
+
+    public boolean isEmpty() {
+        return fileIds.isEmpty() && pageSize == 0;
+    }
+
+    /**
+     * @return whether the files were added without exceeding {@link #MAX_FILE_IDS}
+     */
+    public boolean addFiles(Collection<String> fileIds) {
+        Set<String> result = new HashSet<>(this.fileIds);
+        result.addAll(fileIds);
+        if (result.size() > MAX_FILE_IDS) {
+            return false;
+        }
+        this.fileIds.addAll(fileIds);
+        return true;
+    }
+
+    public void removeFiles(Collection<String> fileIds) {
+        this.fileIds.removeAll(fileIds);
+    }
+
+    public void setPage(int pageOffset, int pageSize) {
+        this.pageOffset = pageOffset;
+        this.pageSize = pageSize;
+    }
+
+    public void removePage() {
+        setPage(0, 0);
+    }
+
+    public Set<String> getFileIds() {
+        return fileIds;
+    }
+
+    public int getPageOffset() {
+        return pageOffset;
+    }
+
+    /**
+     * @return size of the history page or {@code 0}, if no page is visible
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+}
@@ -0,0 +1,38 @@
+package io.remotedownloader.model;
+
+/**
+ * When the progress is reported to a single subscription.
+ * The first report is sent right away, the following ones after the interval,
+ * which is doubled every time the channel is not writable, until a report is sent.
+ * Accessed only by the event loop of the channel.
+ */
+public class ReportSchedule {
+    private static final int MAX_BACKOFF_SHIFT = 5;
+
+    public final long intervalMillis;
+    private long nextReportAt;
+    private int backoffShift;
+
+    public ReportSchedule(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public boolean isDue(long now) {
+        return nextReportAt <= now;
+    }
+
+    public void reported(long now) {
+        this.backoffShift = 0;
+        // keeps the rate, unless the report is late for more than the interval
+        long nextReportAt = this.nextReportAt + intervalMillis;
+        this.nextReportAt = nextReportAt > now ? nextReportAt : now + intervalMillis;
+    }
+
+    /**
+     * Postpones the report, as the client doesn't keep up with the previous ones.
+     */
+    public void backOff(long now) {
+        this.backoffShift = Math.min(backoffShift + 1, MAX_BACKOFF_SHIFT);
+        this.nextReportAt = now + (intervalMillis << backoffShift);
+    }
+}
@@ -0,0 +1,100 @@
+package io.remotedownloader.model;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+/**
+ * How far a session falls behind the messages written to it. Attached to the channel,
+ * updated only by the event loop of the channel and read by any thread.
+ */
+public class SessionLag {
+    private static final AttributeKey<SessionLag> KEY = AttributeKey.valueOf("SessionLag");
+    private static final long NOT_OVER_BUDGET = Long.MIN_VALUE;
+
+    private final Channel channel;
+    private volatile long maxPendingBytes;
+    private volatile long overBudgetSince = NOT_OVER_BUDGET; // nanos of the event loop ticker
+    private volatile long skippedReports;
+    private volatile long mergedTransitions;
+
+    private SessionLag(Channel channel) {
+        this.channel = channel;
+    }
+
+    public static SessionLag of(Channel channel) {
+        Attribute<SessionLag> attribute = channel.attr(KEY);
+        SessionLag lag = attribute.get();
+        if (lag == null) {
+            SessionLag newLag = new SessionLag(channel);
+            lag = attribute.setIfAbsent(newLag);
+            if (lag == null) {
+                lag = newLag;
+            }
+        }
+        return lag;
+    }
+
+    /**
+     * @return bytes written to the channel, which are not sent yet
+     */
+    public long getPendingBytes() {
+        ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+        return outboundBuffer != null ? outboundBuffer.totalPendingWriteBytes() : 0;
+    }
+
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    /**
+     * @return for how long the pending bytes are over the budget or 0
+     */
+    public long getOverBudgetMillis() {
+        long overBudgetSince = this.overBudgetSince;
+        return overBudgetSince != NOT_OVER_BUDGET
+                ? (channel.eventLoop().ticker().nanoTime() - overBudgetSince) / 1_000_000
+                : 0;
+    }
+
+    /**
+     * @return number of the progress reports, which were skipped, as the channel was not writable
+     */
+    public long getSkippedReports() {
+        return skippedReports;
+    }
+
+    /**
+     * @return number of the pending transitions, which were replaced by a newer state of the file
+     */
+    public long getMergedTransitions() {
+        return mergedTransitions;
+    }
+
+    /**
+     * @return whether the pending bytes just went over the budget
+     */
+    public boolean updatePendingBytes(long pendingBytes, long budgetBytes) {
+        if (pendingBytes > maxPendingBytes) {
+            this.maxPendingBytes = pendingBytes;
+        }
+        if (pendingBytes <= budgetBytes) {
+            this.overBudgetSince = NOT_OVER_BUDGET;
+            return false;
+        }
+        if (overBudgetSince == NOT_OVER_BUDGET) {
+            this.overBudgetSince = channel.eventLoop().ticker().nanoTime();
+            return true;
+        }
+        return false;
+    }
+
+    public void reportSkipped() {
+        this.skippedReports = skippedReports + 1;
+    }
+
+    public void transitionMerged() {
+        this.mergedTransitions = mergedTransitions + 1;
+    }
+}
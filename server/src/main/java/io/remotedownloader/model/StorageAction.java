@@ -10,7 +10,8 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 )
 @JsonSubTypes({
         @JsonSubTypes.Type(value = StorageAction.Save.class, name = "save"),
-        @JsonSubTypes.Type(value = StorageAction.Delete.class, name = "delete")
+        @JsonSubTypes.Type(value = StorageAction.Delete.class, name = "delete"),
+        @JsonSubTypes.Type(value = StorageAction.Progress.class, name = "progress")
 })
 public sealed interface StorageAction {
     record Save(StorageRecord<?> record) implements StorageAction {
@@ -18,4 +19,16 @@ public sealed interface StorageAction {
 
     record Delete(StorageModel model, Object id) implements StorageAction {
     }
+
+    // changes of a DownloadingFile, which are folded onto the latest saved record during the replay
+    record Progress(
+            String id,
+            DownloadingFileStatus status,
+            long commitedDownloadedBytes,
+            long updatedAt
+    ) implements StorageAction {
+        public Progress(DownloadingFile file) {
+            this(file.id, file.status, file.commitedDownloadedBytes, file.updatedAt);
+        }
+    }
 }
@@ -20,4 +20,10 @@ public sealed interface StorageRecord<T> permits DownloadingFile, User {
 
     @JsonIgnore
     StorageModel getModel();
+
+    /**
+     * @return username of the user, the record belongs to
+     */
+    @JsonIgnore
+    String getOwner();
 }
@@ -15,4 +15,9 @@ public record User(
     public StorageModel getModel() {
         return StorageModel.USER;
     }
+
+    @Override
+    public String getOwner() {
+        return username;
+    }
 }
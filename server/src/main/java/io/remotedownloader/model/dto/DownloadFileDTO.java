@@ -1,5 +1,6 @@
 package io.remotedownloader.model.dto;
 
+import io.remotedownloader.dao.ProgressTable;
 import io.remotedownloader.model.DownloadingFile;
 import io.remotedownloader.model.DownloadingFileStatus;
 
@@ -11,14 +12,31 @@ public record DownloadFileDTO(
         long downloadedBytes,
         long speedBytesPerSecond
 ) {
+    /**
+     * Creates the DTO with the committed progress of the file.
+     */
     public DownloadFileDTO(DownloadingFile file) {
         this(
                 file.id,
                 file.name,
                 file.status,
                 file.totalBytes,
-                file.downloadedBytes,
-                file.speedBytesPerSecond
+                file.commitedDownloadedBytes,
+                0
+        );
+    }
+
+    /**
+     * Creates the DTO with the live progress of the file, if it is downloading.
+     */
+    public DownloadFileDTO(DownloadingFile file, ProgressTable progressTable) {
+        this(
+                file.id,
+                file.name,
+                file.status,
+                file.totalBytes,
+                progressTable.getDownloadedBytes(file),
+                progressTable.getSpeedBytesPerSecond(file)
         );
     }
 }
@@ -0,0 +1,14 @@
+package io.remotedownloader.model.dto;
+
+import io.remotedownloader.model.FileChangeType;
+
+/**
+ * @param file file after the change, {@code null} for the deleted file
+ */
+public record FileChangeDTO(
+        long sequence,
+        FileChangeType type,
+        String fileId,
+        DownloadFileDTO file
+) {
+}
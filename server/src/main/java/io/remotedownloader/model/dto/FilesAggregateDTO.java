@@ -0,0 +1,12 @@
+package io.remotedownloader.model.dto;
+
+/**
+ * Downloading files, which are not visible to the subscription, summed up.
+ */
+public record FilesAggregateDTO(
+        int filesCount,
+        long totalBytes,
+        long downloadedBytes,
+        long speedBytesPerSecond
+) {
+}
@@ -0,0 +1,18 @@
+package io.remotedownloader.model.dto;
+
+import java.util.List;
+
+/**
+ * @param files      files reported for the first time or with the changed status
+ * @param progress   handle, downloaded bytes and speed of every file, which progress is changed, one after another
+ * @param statistics statistics of the user, {@code null}, if they are not changed since the previous report
+ * @param others     downloading files, which are not visible to the subscription,
+ *                   {@code null}, if they are not changed since the previous report or all files are visible
+ */
+public record FilesDeltaReportDTO(
+        List<ReportedFileDTO> files,
+        long[] progress,
+        FilesStatisticsDTO statistics,
+        FilesAggregateDTO others
+) {
+}
@@ -2,7 +2,13 @@ package io.remotedownloader.model.dto;
 
 import java.util.List;
 
+/**
+ * @param statistics statistics of the user at the time of the report
+ * @param others     downloading files, which are not visible to the subscription, or {@code null}, if all files are
+ */
 public record FilesHistoryReportDTO(
-        List<DownloadFileDTO> files
+        List<DownloadFileDTO> files,
+        FilesStatisticsDTO statistics,
+        FilesAggregateDTO others
 ) {
 }
@@ -0,0 +1,16 @@
+package io.remotedownloader.model.dto;
+
+import io.remotedownloader.model.DownloadingFileStatus;
+
+import java.util.Map;
+
+/**
+ * @param downloadedBytes     bytes downloaded by all files, including the live progress of the downloading files
+ * @param speedBytesPerSecond sum of the speeds of the downloading files
+ */
+public record FilesStatisticsDTO(
+        Map<DownloadingFileStatus, Long> filesCountByStatus,
+        long downloadedBytes,
+        long speedBytesPerSecond
+) {
+}
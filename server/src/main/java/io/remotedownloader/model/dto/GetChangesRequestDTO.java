@@ -0,0 +1,18 @@
+package io.remotedownloader.model.dto;
+
+import io.remotedownloader.util.ValidationUtil;
+
+/**
+ * @param afterSequence {@code lastSequence} of the previous response or {@code null} to get the current position only
+ * @param size          max number of the changes to read
+ */
+public record GetChangesRequestDTO(
+        Long afterSequence,
+        int size
+) implements Validatable {
+    @Override
+    public void validate() {
+        ValidationUtil.min(size, 1, "Size");
+        ValidationUtil.max(size, 1000, "Size");
+    }
+}
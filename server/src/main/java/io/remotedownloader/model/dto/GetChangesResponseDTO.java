@@ -0,0 +1,18 @@
+package io.remotedownloader.model.dto;
+
+import java.util.List;
+
+/**
+ * @param lastSequence sequence to request the following changes after
+ * @param hasMore      whether the following changes can be requested right away
+ * @param reset        whether the changes after the requested sequence are not kept anymore,
+ *                     so the history should be requested again; the changes made since are returned
+ *                     by the next request after the {@code lastSequence}
+ */
+public record GetChangesResponseDTO(
+        List<FileChangeDTO> changes,
+        long lastSequence,
+        boolean hasMore,
+        boolean reset
+) {
+}
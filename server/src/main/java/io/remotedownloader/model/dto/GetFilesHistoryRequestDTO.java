@@ -2,13 +2,30 @@ package io.remotedownloader.model.dto;
 
 import io.remotedownloader.util.ValidationUtil;
 
+/**
+ * @param cursor  {@code nextCursor} of the previous page; when present, the offset is ignored
+ * @param version {@code version} of the page, the client has already seen; when the files are not changed since,
+ *                {@link io.remotedownloader.protocol.ProtocolCommands#NOT_MODIFIED} is returned instead of the page
+ */
 public record GetFilesHistoryRequestDTO(
         int offset,
-        int size
+        int size,
+        String cursor,
+        Long version
 ) implements Validatable {
+    public GetFilesHistoryRequestDTO(int offset, int size) {
+        this(offset, size, null, null);
+    }
+
+    public GetFilesHistoryRequestDTO(int offset, int size, String cursor) {
+        this(offset, size, cursor, null);
+    }
+
     @Override
     public void validate() {
+        ValidationUtil.min(offset, 0, "Offset");
         ValidationUtil.min(size, 1, "Size");
         ValidationUtil.max(size, 100, "Size");
+        ValidationUtil.maxLength(cursor, 1024, "Cursor");
     }
 }
@@ -1,12 +1,36 @@
 package io.remotedownloader.model.dto;
 
+import io.remotedownloader.protocol.PayloadFormat;
 import io.remotedownloader.util.ValidationUtil;
 
+/**
+ * @param deltaReports         report the metadata of a downloading file once, and then only the changes of its progress
+ * @param reportIntervalMillis interval between the reports, from 100 ms to 1 minute, or {@code 0} to use the default one
+ * @param payloadFormat        format of the payloads written by the server after the login or {@code null} for JSON
+ */
 public record LoginRequestDTO(
         String username,
         String password,
-        boolean subscribeOnDownloadingFilesReport
+        boolean subscribeOnDownloadingFilesReport,
+        boolean deltaReports,
+        int reportIntervalMillis,
+        PayloadFormat payloadFormat
 ) implements Validatable {
+    public static final int MIN_REPORT_INTERVAL_MILLIS = 100;
+    public static final int MAX_REPORT_INTERVAL_MILLIS = 60_000;
+
+    public LoginRequestDTO(String username, String password, boolean subscribeOnDownloadingFilesReport) {
+        this(username, password, subscribeOnDownloadingFilesReport, false, 0, null);
+    }
+
+    public LoginRequestDTO(String username,
+                           String password,
+                           boolean subscribeOnDownloadingFilesReport,
+                           boolean deltaReports,
+                           int reportIntervalMillis) {
+        this(username, password, subscribeOnDownloadingFilesReport, deltaReports, reportIntervalMillis, null);
+    }
+
     @Override
     public void validate() {
         ValidationUtil.nonNull(username, "Username");
@@ -17,5 +41,14 @@ public record LoginRequestDTO(
         ValidationUtil.nonNull(password, "Password");
         ValidationUtil.notEmpty(username, "Password");
         ValidationUtil.maxLength(username, 1_000, "Password");
+
+        validateReportInterval(reportIntervalMillis);
+    }
+
+    static void validateReportInterval(int reportIntervalMillis) {
+        if (reportIntervalMillis != 0) {
+            ValidationUtil.min(reportIntervalMillis, MIN_REPORT_INTERVAL_MILLIS, "Report interval");
+            ValidationUtil.max(reportIntervalMillis, MAX_REPORT_INTERVAL_MILLIS, "Report interval");
+        }
     }
 }
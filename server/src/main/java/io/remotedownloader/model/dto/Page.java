@@ -1,7 +1,15 @@
 package io.remotedownloader.model.dto;
 
+/**
+ * @param version version of the files, the page was built from, if the page can be requested only when modified
+ */
 public record Page<T>(
         T[] content,
-        int totalElements
+        int totalElements,
+        String nextCursor,
+        Long version
 ) {
+    public Page(T[] content, int totalElements, String nextCursor) {
+        this(content, totalElements, nextCursor, null);
+    }
 }
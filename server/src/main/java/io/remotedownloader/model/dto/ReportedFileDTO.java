@@ -0,0 +1,10 @@
+package io.remotedownloader.model.dto;
+
+/**
+ * @param handle number, the progress of the file is reported by; {@code 0}, if the file is not downloading anymore
+ */
+public record ReportedFileDTO(
+        int handle,
+        DownloadFileDTO file
+) {
+}
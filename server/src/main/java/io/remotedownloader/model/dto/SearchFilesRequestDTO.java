@@ -0,0 +1,26 @@
+package io.remotedownloader.model.dto;
+
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.util.ValidationUtil;
+
+/**
+ * Total elements of the page for a query of 1 or 2 characters count the matches only up to the first one
+ * after the page, as such queries are not indexed and finding all their matches would scan the whole history.
+ *
+ * @param query  text to find in the file name or URL, ignoring case; empty or {@code null} matches any file
+ * @param status status of the files or {@code null} to match any
+ */
+public record SearchFilesRequestDTO(
+        String query,
+        DownloadingFileStatus status,
+        int offset,
+        int size
+) implements Validatable {
+    @Override
+    public void validate() {
+        ValidationUtil.maxLength(query, 1024, "Query");
+        ValidationUtil.min(offset, 0, "Offset");
+        ValidationUtil.min(size, 1, "Size");
+        ValidationUtil.max(size, 100, "Size");
+    }
+}
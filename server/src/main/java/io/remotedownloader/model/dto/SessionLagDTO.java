@@ -0,0 +1,34 @@
+package io.remotedownloader.model.dto;
+
+import io.remotedownloader.model.DownloadingFilesReportSubscription;
+import io.remotedownloader.model.SessionLag;
+
+/**
+ * @param pendingBytes      bytes written to the session, which are not sent yet
+ * @param overBudgetMillis  for how long the pending bytes are over the outbound budget
+ * @param skippedReports    progress reports skipped, as the session was not writable
+ * @param mergedTransitions pending transitions replaced by a newer state of the file
+ */
+public record SessionLagDTO(
+        String username,
+        long pendingBytes,
+        long maxPendingBytes,
+        long overBudgetMillis,
+        long skippedReports,
+        long mergedTransitions
+) {
+    public SessionLagDTO(DownloadingFilesReportSubscription subscription) {
+        this(subscription.username(), subscription.lag());
+    }
+
+    private SessionLagDTO(String username, SessionLag lag) {
+        this(
+                username,
+                lag.getPendingBytes(),
+                lag.getMaxPendingBytes(),
+                lag.getOverBudgetMillis(),
+                lag.getSkippedReports(),
+                lag.getMergedTransitions()
+        );
+    }
+}
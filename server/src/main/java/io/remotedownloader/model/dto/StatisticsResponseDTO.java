@@ -0,0 +1,14 @@
+package io.remotedownloader.model.dto;
+
+import java.util.List;
+
+/**
+ * @param server   statistics of all users, present only for the admins
+ * @param sessions lag of the sessions subscribed to the reports, present only for the admins
+ */
+public record StatisticsResponseDTO(
+        FilesStatisticsDTO user,
+        FilesStatisticsDTO server,
+        List<SessionLagDTO> sessions
+) {
+}
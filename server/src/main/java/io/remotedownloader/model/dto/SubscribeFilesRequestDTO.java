@@ -0,0 +1,29 @@
+package io.remotedownloader.model.dto;
+
+import io.remotedownloader.util.ValidationUtil;
+
+import java.util.List;
+
+/**
+ * @param fileIds    files to add to the visible ones or {@code null}
+ * @param pageOffset offset of the visible page of the history
+ * @param pageSize   size of the visible page of the history, replacing the previous one, or {@code 0} to keep it
+ */
+public record SubscribeFilesRequestDTO(
+        List<String> fileIds,
+        int pageOffset,
+        int pageSize
+) implements Validatable {
+    @Override
+    public void validate() {
+        if (fileIds != null) {
+            ValidationUtil.max(fileIds.size(), 100, "File IDs count");
+            for (String fileId : fileIds) {
+                ValidationUtil.nonNull(fileId, "File ID");
+            }
+        }
+        ValidationUtil.min(pageOffset, 0, "Page offset");
+        ValidationUtil.min(pageSize, 0, "Page size");
+        ValidationUtil.max(pageSize, 100, "Page size");
+    }
+}
@@ -0,0 +1,15 @@
+package io.remotedownloader.model.dto;
+
+/**
+ * @param deltaReports         report the metadata of a downloading file once, and then only the changes of its progress
+ * @param reportIntervalMillis interval between the reports, from 100 ms to 1 minute, or {@code 0} to use the default one
+ */
+public record SubscribeReportsRequestDTO(
+        boolean deltaReports,
+        int reportIntervalMillis
+) implements Validatable {
+    @Override
+    public void validate() {
+        LoginRequestDTO.validateReportInterval(reportIntervalMillis);
+    }
+}
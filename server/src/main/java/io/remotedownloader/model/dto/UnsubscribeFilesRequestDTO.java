@@ -0,0 +1,21 @@
+package io.remotedownloader.model.dto;
+
+import io.remotedownloader.util.ValidationUtil;
+
+import java.util.List;
+
+/**
+ * @param fileIds files to remove from the visible ones or {@code null}
+ * @param page    remove the visible page of the history
+ */
+public record UnsubscribeFilesRequestDTO(
+        List<String> fileIds,
+        boolean page
+) implements Validatable {
+    @Override
+    public void validate() {
+        if (fileIds != null) {
+            ValidationUtil.max(fileIds.size(), 100, "File IDs count");
+        }
+    }
+}
@@ -20,11 +20,17 @@ public class MessageHandler extends BaseMessageHandler {
     StringMessage handleRequest(ChannelHandlerContext ctx, StringMessage msg) {
         return switch (msg.command()) {
             case ProtocolCommands.DOWNLOAD_URL -> logicHolder.downloadFileLogic.handleRequest(ctx, msg, username);
-            case ProtocolCommands.GET_FILES_HISTORY -> logicHolder.getFilesHistoryLogic.handleRequest(msg, username);
-            case ProtocolCommands.STOP_DOWNLOADING -> logicHolder.stopDownloadingLogic.handleRequest(msg, username);
-            case ProtocolCommands.DELETE_FILE -> logicHolder.deleteFileLogic.handleRequest(msg, username);
+            case ProtocolCommands.GET_FILES_HISTORY -> logicHolder.getFilesHistoryLogic.handleRequest(ctx, msg, username);
+            case ProtocolCommands.STOP_DOWNLOADING -> logicHolder.stopDownloadingLogic.handleRequest(ctx, msg, username);
+            case ProtocolCommands.DELETE_FILE -> logicHolder.deleteFileLogic.handleRequest(ctx, msg, username);
             case ProtocolCommands.RESUME_DOWNLOADING -> logicHolder.resumeDownloadLogic.handleRequest(ctx, msg, username);
             case ProtocolCommands.LIST_FOLDERS -> logicHolder.listFoldersLogic.handleRequest(ctx, msg);
+            case ProtocolCommands.SEARCH_FILES -> logicHolder.searchFilesLogic.handleRequest(msg, username);
+            case ProtocolCommands.GET_STATISTICS -> logicHolder.getStatisticsLogic.handleRequest(msg, username);
+            case ProtocolCommands.GET_CHANGES -> logicHolder.getChangesLogic.handleRequest(msg, username);
+            case ProtocolCommands.SUBSCRIBE_REPORTS -> logicHolder.subscribeReportsLogic.handleRequest(ctx, msg, username);
+            case ProtocolCommands.SUBSCRIBE_FILES -> logicHolder.subscribeFilesLogic.handleRequest(ctx, msg);
+            case ProtocolCommands.UNSUBSCRIBE_FILES -> logicHolder.unsubscribeFilesLogic.handleRequest(ctx, msg);
 
             case ProtocolCommands.LOGIN -> StringMessage.error(
                     msg, ErrorTypes.ALREADY_AUTHENTICATED, "You are already authenticated.");
@@ -38,9 +38,10 @@ public class NoAuthMessageHandler extends BaseMessageHandler {
         if (user != null && user.encryptedPassword().equals(req.password())) {
             MessageHandler newHandler = new MessageHandler(logicHolder, sessionDao, username);
             ctx.pipeline().replace(this, "MessageHandler", newHandler);
+            PayloadFormat.set(ctx.channel(), req.payloadFormat());
 
             if (req.subscribeOnDownloadingFilesReport()) {
-                sessionDao.addSubscription(ctx, username);
+                sessionDao.addSubscription(ctx, username, req.deltaReports(), req.reportIntervalMillis());
             }
 
             return StringMessage.ok(msg);
@@ -0,0 +1,52 @@
+package io.remotedownloader.protocol;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.remotedownloader.util.JsonUtil;
+
+/**
+ * Encoding of the payloads, which the server writes to a connection, chosen by the client at login.
+ * Payloads of the requests are recognized by their content, so the client can switch without waiting for the response.
+ */
+public enum PayloadFormat {
+    JSON(JsonUtil.MAPPER),
+    SMILE(JsonUtil.SMILE_MAPPER);
+
+    private static final AttributeKey<PayloadFormat> KEY = AttributeKey.valueOf("PayloadFormat");
+    private static final byte[] SMILE_HEADER = {':', ')', '\n'};
+
+    public final ObjectMapper mapper;
+
+    PayloadFormat(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public static PayloadFormat of(Channel channel) {
+        PayloadFormat format = channel.attr(KEY).get();
+        return format != null ? format : JSON;
+    }
+
+    /**
+     * @param format format of the following payloads or {@code null} to use JSON
+     */
+    public static void set(Channel channel, PayloadFormat format) {
+        channel.attr(KEY).set(format);
+    }
+
+    /**
+     * @return whether the payload starts with the header of Smile, which JSON can't start with
+     */
+    public static boolean isSmile(ByteBuf payload) {
+        if (payload.readableBytes() < SMILE_HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < SMILE_HEADER.length; i++) {
+            if (payload.getByte(payload.readerIndex() + i) != SMILE_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -10,4 +10,12 @@ public class ProtocolCommands {
     public static final short STOP_DOWNLOADING = 7;
     public static final short RESUME_DOWNLOADING = 8;
     public static final short LIST_FOLDERS = 9;
+    public static final short SEARCH_FILES = 10;
+    public static final short GET_STATISTICS = 11;
+    public static final short NOT_MODIFIED = 12;
+    public static final short GET_CHANGES = 13;
+    public static final short FILES_DELTA_REPORT = 14;
+    public static final short SUBSCRIBE_REPORTS = 15;
+    public static final short SUBSCRIBE_FILES = 16;
+    public static final short UNSUBSCRIBE_FILES = 17;
 }
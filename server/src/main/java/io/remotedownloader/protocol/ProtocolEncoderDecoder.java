@@ -1,17 +1,28 @@
 package io.remotedownloader.protocol;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.remotedownloader.util.JsonUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.OutputStream;
 
+/**
+ * Frames the messages as the id and the command followed by the payload,
+ * which is written in the {@link PayloadFormat} of the connection.
+ */
 public class ProtocolEncoderDecoder extends ChannelDuplexHandler {
     private static final Logger log = LogManager.getLogger(ProtocolEncoderDecoder.class);
+    private static final int HEADER_LENGTH = 4 + 2;
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
@@ -29,35 +40,67 @@ public class ProtocolEncoderDecoder extends ChannelDuplexHandler {
         }
     }
 
-    private StringMessage decode(BinaryWebSocketFrame msg) {
+    private StringMessage decode(BinaryWebSocketFrame msg) throws IOException {
         ByteBuf in = msg.content();
 
         int id = in.readInt();
         short command = in.readShort();
-        String data = in.isReadable() ? in.toString(StandardCharsets.UTF_8) : null;
-        return new StringMessage(id, command, data);
+        if (!in.isReadable()) {
+            return new StringMessage(id, command, null);
+        }
+
+        if (PayloadFormat.isSmile(in)) {
+            return new StringMessage(id, command, null, JsonUtil.SMILE_MAPPER.readTree(new ByteBufInputStream(in)));
+        }
+        // copied, as the frame is released once it's read, while the request might be parsed later
+        return new StringMessage(id, command, ByteBufUtil.getBytes(in));
     }
 
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
         if (msg instanceof StringMessage stringMessage) {
-            BinaryWebSocketFrame frame = encode(ctx, stringMessage);
-            ctx.write(frame, promise);
+            ByteBuf buf;
+            try {
+                buf = encode(ctx.alloc(), stringMessage, PayloadFormat.of(ctx.channel()));
+            } catch (Exception e) {
+                log.error("Failed to encode the message", e);
+                promise.setFailure(e);
+                return;
+            }
+            ctx.write(new BinaryWebSocketFrame(buf), promise);
         } else {
             ctx.write(msg, promise);
         }
     }
 
-    private BinaryWebSocketFrame encode(ChannelHandlerContext ctx, StringMessage msg) {
-        String data = msg.data();
-        byte[] dataBytes = data != null && !data.isEmpty() ? data.getBytes(StandardCharsets.UTF_8) : new byte[0];
-
-        ByteBuf buf = ctx.alloc().ioBuffer(4 + 2 + dataBytes.length);
-        buf.writeInt(msg.id());
-        buf.writeShort(msg.command());
-        buf.writeBytes(dataBytes);
+    /**
+     * Encodes the message into a buffer, which can be written to the channels as the content of a binary frame.
+     * The payload is serialized straight into the buffer, without an intermediate string or array.
+     * JSON, which is already serialized, e.g. cached, is converted, if the format is binary.
+     */
+    public static ByteBuf encode(ByteBufAllocator alloc, StringMessage msg, PayloadFormat format) throws IOException {
+        byte[] data = msg.data();
+        if (msg.body() == null && (data == null || format == PayloadFormat.JSON)) {
+            ByteBuf buf = alloc.ioBuffer(HEADER_LENGTH + (data != null ? data.length : 0));
+            buf.writeInt(msg.id());
+            buf.writeShort(msg.command());
+            if (data != null) {
+                buf.writeBytes(data);
+            }
+            return buf;
+        }
 
-        return new BinaryWebSocketFrame(buf);
+        Object payload = msg.body() != null ? msg.body() : JsonUtil.MAPPER.readTree(data);
+        ByteBuf buf = alloc.ioBuffer();
+        try {
+            buf.writeInt(msg.id());
+            buf.writeShort(msg.command());
+            format.mapper.writeValue((OutputStream) new ByteBufOutputStream(buf), payload);
+            return buf;
+        } catch (IOException | RuntimeException e) {
+            buf.release();
+            throw e;
+        }
     }
 
     @Override
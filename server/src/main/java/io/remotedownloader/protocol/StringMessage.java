@@ -1,38 +1,47 @@
 package io.remotedownloader.protocol;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import io.remotedownloader.model.dto.Error;
 import io.remotedownloader.model.dto.Validatable;
 import io.remotedownloader.util.JsonUtil;
 
+import java.io.IOException;
+
+/**
+ * @param data UTF-8 JSON of the payload, e.g. received or cached, or {@code null}
+ * @param body payload, which is serialized by the encoder in the format of the connection,
+ *             or the tree of a received binary payload, or {@code null}
+ */
 public record StringMessage(
         int id,
         short command,
-        String data
+        byte[] data,
+        Object body
 ) {
+    public StringMessage(int id, short command, byte[] data) {
+        this(id, command, data, null);
+    }
+
     public <T extends Validatable> T parseJsonAndValidate(Class<T> clazz) {
-        try {
-            T t = JsonUtil.MAPPER.readValue(data, clazz);
-            t.validate();
-            return t;
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        T t = parseJson(clazz);
+        t.validate();
+        return t;
     }
 
     public <T> T parseJson(Class<T> clazz) {
         try {
-            return JsonUtil.MAPPER.readValue(data, clazz);
-        } catch (JsonProcessingException e) {
+            return body != null ? JsonUtil.MAPPER.convertValue(body, clazz) : JsonUtil.MAPPER.readValue(data, clazz);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     public <T> T parseJson(TypeReference<T> typeReference) {
         try {
-            return JsonUtil.MAPPER.readValue(data, typeReference);
-        } catch (JsonProcessingException e) {
+            return body != null
+                    ? JsonUtil.MAPPER.convertValue(body, typeReference)
+                    : JsonUtil.MAPPER.readValue(data, typeReference);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
@@ -49,8 +58,10 @@ public record StringMessage(
         return json(req.id, req.command, response);
     }
 
+    /**
+     * @param response payload, which is serialized, once the message is written to a connection
+     */
     public static StringMessage json(int id, short responseCommand, Object response) {
-        String json = response != null ? JsonUtil.writeValueAsString(response) : null;
-        return new StringMessage(id, responseCommand, json);
+        return new StringMessage(id, responseCommand, null, response);
     }
 }
@@ -1,34 +1,76 @@
 package io.remotedownloader.protocol.logic;
 
+import io.netty.channel.ChannelHandlerContext;
 import io.remotedownloader.Holder;
 import io.remotedownloader.dao.DownloadManagerDao;
 import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.HistoryArchiveDao;
 import io.remotedownloader.model.DownloadingFile;
 import io.remotedownloader.model.dto.Error;
 import io.remotedownloader.model.dto.FileIdRequestDTO;
+import io.remotedownloader.protocol.BaseMessageHandler;
+import io.remotedownloader.protocol.ErrorException;
 import io.remotedownloader.protocol.StringMessage;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
 public class DeleteFileLogic {
     private final FilesStorageDao filesStorageDao;
     private final DownloadManagerDao downloadManagerDao;
+    private final HistoryArchiveDao historyArchiveDao;
+    private final ExecutorService blockingTasksExecutor;
+    private final boolean durableAcknowledgements;
 
     public DeleteFileLogic(Holder holder) {
         this.filesStorageDao = holder.filesStorageDao;
         this.downloadManagerDao = holder.downloadManagerDao;
+        this.historyArchiveDao = holder.historyArchiveDao;
+        this.blockingTasksExecutor = holder.threadPoolsHolder.blockingTasksExecutor;
+        this.durableAcknowledgements = holder.serverProperties.getDurableAcknowledgements();
     }
 
-    public StringMessage handleRequest(StringMessage req, String username) {
+    public StringMessage handleRequest(ChannelHandlerContext ctx, StringMessage req, String username) {
         String fileId = req.parseJsonAndValidate(FileIdRequestDTO.class).fileId();
 
         DownloadingFile file = filesStorageDao.getById(fileId);
+        if (file == null && historyArchiveDao.hasArchivedFiles(username)) {
+            return deleteArchivedFile(ctx, req, username, fileId);
+        }
         if (file == null || !username.equals(file.ownerUsername)) {
             return StringMessage.error(req, Error.ErrorTypes.NOT_FOUND, "File is not found.");
         }
 
         downloadManagerDao.stopDownloading(file.id);
-        filesStorageDao.deleteById(file);
-        downloadManagerDao.deleteFile(file);
+        // the file stays on the disk, if its record is restored after failing to be deleted
+        CompletableFuture<Void> future = filesStorageDao.deleteById(file)
+                .thenRun(() -> downloadManagerDao.deleteFile(file));
 
+        if (durableAcknowledgements) {
+            CompletableFuture<Void> response = future.thenRun(() -> ctx.writeAndFlush(StringMessage.ok(req)));
+            BaseMessageHandler.handleException(response, ctx, req);
+            return null;
+        }
         return StringMessage.ok(req);
     }
+
+    private StringMessage deleteArchivedFile(ChannelHandlerContext ctx, StringMessage req, String username, String fileId) {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            DownloadingFile file;
+            try {
+                file = filesStorageDao.deleteArchivedFile(username, fileId);
+            } catch (IOException e) {
+                throw new ErrorException(Error.ErrorTypes.UNKNOWN, "Failed to delete the file.", e);
+            }
+            if (file == null) {
+                throw new ErrorException(Error.ErrorTypes.NOT_FOUND, "File is not found.");
+            }
+
+            downloadManagerDao.deleteFile(file);
+            ctx.writeAndFlush(StringMessage.ok(req));
+        }, blockingTasksExecutor);
+        BaseMessageHandler.handleException(future, ctx, req);
+        return null;
+    }
 }
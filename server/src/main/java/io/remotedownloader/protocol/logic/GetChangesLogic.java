@@ -0,0 +1,44 @@
+package io.remotedownloader.protocol.logic;
+
+import io.remotedownloader.Holder;
+import io.remotedownloader.dao.ChangeFeed;
+import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.model.dto.DownloadFileDTO;
+import io.remotedownloader.model.dto.FileChangeDTO;
+import io.remotedownloader.model.dto.GetChangesRequestDTO;
+import io.remotedownloader.model.dto.GetChangesResponseDTO;
+import io.remotedownloader.protocol.StringMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GetChangesLogic {
+    private final FilesStorageDao filesStorageDao;
+
+    public GetChangesLogic(Holder holder) {
+        this.filesStorageDao = holder.filesStorageDao;
+    }
+
+    public StringMessage handleRequest(StringMessage msg, String username) {
+        GetChangesRequestDTO req = msg.parseJsonAndValidate(GetChangesRequestDTO.class);
+
+        // the position is taken before the client reads the history, so no change is missed
+        long lastSequence = filesStorageDao.getLastChangeSequence(username);
+        ChangeFeed.Changes changes = req.afterSequence() != null
+                ? filesStorageDao.readChanges(username, req.afterSequence(), req.size())
+                : null;
+        if (changes == null) {
+            boolean reset = req.afterSequence() != null;
+            return StringMessage.json(msg, new GetChangesResponseDTO(List.of(), lastSequence, false, reset));
+        }
+
+        List<FileChangeDTO> result = new ArrayList<>(changes.changes().size());
+        for (ChangeFeed.Change change : changes.changes()) {
+            DownloadFileDTO file = change.file() != null
+                    ? new DownloadFileDTO(change.file(), filesStorageDao.getProgressTable())
+                    : null;
+            result.add(new FileChangeDTO(change.sequence(), change.type(), change.fileId(), file));
+        }
+        return StringMessage.json(msg, new GetChangesResponseDTO(result, changes.lastSequence(), changes.hasMore(), false));
+    }
+}
@@ -1,39 +1,243 @@
 package io.remotedownloader.protocol.logic;
 
+import io.netty.channel.ChannelHandlerContext;
 import io.remotedownloader.Holder;
 import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.HistoryArchiveDao;
+import io.remotedownloader.dao.HistoryPageCache;
+import io.remotedownloader.dao.UserFiles;
 import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
 import io.remotedownloader.model.dto.DownloadFileDTO;
+import io.remotedownloader.model.dto.Error;
 import io.remotedownloader.model.dto.GetFilesHistoryRequestDTO;
 import io.remotedownloader.model.dto.Page;
+import io.remotedownloader.protocol.BaseMessageHandler;
+import io.remotedownloader.protocol.ErrorException;
+import io.remotedownloader.protocol.ProtocolCommands;
 import io.remotedownloader.protocol.StringMessage;
+import io.remotedownloader.util.JsonUtil;
 
-import java.util.Arrays;
-import java.util.Comparator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 public class GetFilesHistoryLogic {
+    private static final char CURSOR_SEPARATOR = '_';
+
     private final FilesStorageDao filesStorageDao;
+    private final HistoryArchiveDao historyArchiveDao;
+    private final ExecutorService blockingTasksExecutor;
+    private final HistoryPageCache historyPageCache;
 
     public GetFilesHistoryLogic(Holder holder) {
         this.filesStorageDao = holder.filesStorageDao;
+        this.historyArchiveDao = holder.historyArchiveDao;
+        this.blockingTasksExecutor = holder.threadPoolsHolder.blockingTasksExecutor;
+        this.historyPageCache = holder.filesStorageDao.getHistoryPageCache();
     }
 
-    public StringMessage handleRequest(StringMessage msg, String username) {
+    public StringMessage handleRequest(ChannelHandlerContext ctx, StringMessage msg, String username) {
         GetFilesHistoryRequestDTO req = msg.parseJsonAndValidate(GetFilesHistoryRequestDTO.class);
+        UserFiles.CreatedAtKey cursor = parseCursor(req.cursor());
+        int offset = cursor != null ? 0 : req.offset();
+
+        // reading the version before the files, so a concurrent change makes the page outdated rather than the version
+        long version = filesStorageDao.getUserVersion(username);
+        // the page has to be built to find out, whether it shows the downloading files
+        boolean sameVersion = req.version() != null && req.version() == version;
+        if (sameVersion && filesStorageDao.getUserFilesByStatus(username, DownloadingFileStatus.DOWNLOADING).isEmpty()) {
+            return notModified(msg);
+        }
+
+        HistoryPageCache.PageKey pageKey = new HistoryPageCache.PageKey(offset, req.size(), req.cursor());
+        byte[] cachedPage = historyPageCache.get(username, version, pageKey);
+        if (cachedPage != null) {
+            // only the pages without downloading files are cached
+            return sameVersion ? notModified(msg) : new StringMessage(msg.id(), msg.command(), cachedPage);
+        }
+
+        int hotFilesCount = filesStorageDao.getUserFiles(username).size();
+        List<DownloadingFile> files = slice(
+                filesStorageDao.getUserFilesNewestFirst(username, cursor).iterator(), offset, req.size());
+
+        if (!historyArchiveDao.hasArchivedFiles(username)) {
+            return toMessage(msg, req, username, pageKey, toPage(files, req, hotFilesCount, version));
+        }
+
+        // the page can be served from memory, if all its files are newer than the archived ones,
+        // the files, which are being archived right now, are counted twice until they leave memory and change the version
+        HistoryArchiveDao.SegmentIndex index = historyArchiveDao.getLoadedIndex(username);
+        if (index != null && files.size() == req.size() && files.getLast().createdAt > index.getNewestCreatedAt()) {
+            return toMessage(msg, req, username, pageKey, toPage(files, req, hotFilesCount + index.size(), version));
+        }
+
+        CompletableFuture<StringMessage> future = CompletableFuture.supplyAsync(() -> {
+            HistoryArchiveDao.SegmentIndex segmentIndex;
+            List<DownloadingFile> pageFiles;
+            try {
+                segmentIndex = historyArchiveDao.getIndex(username);
+                pageFiles = readPage(username, segmentIndex, cursor, offset, req.size());
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read archived files of " + username, e);
+            }
 
-        DownloadingFile[] files = filesStorageDao.getUserFiles(username);
+            int totalElements = segmentIndex.size();
+            for (DownloadingFile file : filesStorageDao.getUserFiles(username)) {
+                if (segmentIndex.get(file.id) == null) {
+                    totalElements++;
+                }
+            }
+            return toMessage(msg, req, username, pageKey, toPage(pageFiles, req, totalElements, version));
+        }, blockingTasksExecutor);
 
-        DownloadingFile[] sortedFiles = Arrays.copyOf(files, files.length);
-        Arrays.sort(sortedFiles, Comparator.<DownloadingFile>comparingLong(f -> f.createdAt).reversed());
+        future.thenAccept(ctx::writeAndFlush);
+        BaseMessageHandler.handleException(future, ctx, msg);
+        return null;
+    }
+
+    /**
+     * Merges the files in memory with the positions of the archived files, both are ordered from the newest,
+     * and reads only the archived files of the page. Performs blocking IO.
+     */
+    private List<DownloadingFile> readPage(String username,
+                                           HistoryArchiveDao.SegmentIndex index,
+                                           UserFiles.CreatedAtKey cursor,
+                                           int offset,
+                                           int size) throws IOException {
+        Iterator<DownloadingFile> hot = filesStorageDao.getUserFilesNewestFirst(username, cursor).iterator();
+        Iterator<HistoryArchiveDao.RecordPosition> archived = index.getNewestFirst(cursor).iterator();
+        DownloadingFile nextHot = hot.hasNext() ? hot.next() : null;
+        HistoryArchiveDao.RecordPosition nextArchived = nextArchived(archived);
+
+        // either the file in memory or the position of the archived file
+        List<Object> entries = new ArrayList<>(size);
+        List<HistoryArchiveDao.RecordPosition> positions = new ArrayList<>();
+        for (int i = 0; i < offset + size && (nextHot != null || nextArchived != null); i++) {
+            Object entry;
+            if (nextArchived == null
+                || (nextHot != null && new UserFiles.CreatedAtKey(nextHot).compareTo(nextArchived.key()) < 0)) {
+                entry = nextHot;
+                nextHot = hot.hasNext() ? hot.next() : null;
+            } else {
+                entry = nextArchived;
+                nextArchived = nextArchived(archived);
+            }
 
-        int size = req.size();
-        int offset = req.offset();
-        int pageSize = sortedFiles.length >= offset + size ? size : sortedFiles.length - offset;
+            if (i >= offset) {
+                entries.add(entry);
+                if (entry instanceof HistoryArchiveDao.RecordPosition position) {
+                    positions.add(position);
+                }
+            }
+        }
+
+        Map<String, DownloadingFile> archivedFiles = new HashMap<>();
+        for (DownloadingFile file : historyArchiveDao.readFiles(username, positions)) {
+            archivedFiles.put(file.id, file);
+        }
+
+        List<DownloadingFile> files = new ArrayList<>(entries.size());
+        for (Object entry : entries) {
+            DownloadingFile file = entry instanceof HistoryArchiveDao.RecordPosition position
+                    ? archivedFiles.get(position.key().id())
+                    : (DownloadingFile) entry;
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private HistoryArchiveDao.RecordPosition nextArchived(Iterator<HistoryArchiveDao.RecordPosition> archived) {
+        while (archived.hasNext()) {
+            HistoryArchiveDao.RecordPosition position = archived.next();
+            // the file is still in memory, while it's being archived
+            if (filesStorageDao.getById(position.key().id()) == null) {
+                return position;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Serializes the page to JSON and caches it, unless it shows the live progress or the files were changed meanwhile.
+     * Binary connections get the cached JSON converted.
+     * The client, which has the page of the same version, gets {@link ProtocolCommands#NOT_MODIFIED} instead.
+     */
+    private StringMessage toMessage(StringMessage msg,
+                                    GetFilesHistoryRequestDTO req,
+                                    String username,
+                                    HistoryPageCache.PageKey pageKey,
+                                    Page<DownloadFileDTO> page) {
+        if (page.version() == null) {
+            return StringMessage.json(msg, page);
+        }
+        if (page.version().equals(req.version())) {
+            return notModified(msg);
+        }
+        if (page.version() != filesStorageDao.getUserVersion(username)) {
+            return StringMessage.json(msg, page);
+        }
+
+        byte[] json = JsonUtil.writeValueAsBytes(page);
+        historyPageCache.put(username, page.version(), pageKey, json);
+        return new StringMessage(msg.id(), msg.command(), json);
+    }
+
+    private static StringMessage notModified(StringMessage msg) {
+        return new StringMessage(msg.id(), ProtocolCommands.NOT_MODIFIED, null);
+    }
+
+    private static List<DownloadingFile> slice(Iterator<DownloadingFile> files, int offset, int size) {
+        for (int i = 0; i < offset && files.hasNext(); i++) {
+            files.next();
+        }
+
+        List<DownloadingFile> result = new ArrayList<>(size);
+        while (result.size() < size && files.hasNext()) {
+            result.add(files.next());
+        }
+        return result;
+    }
+
+    private Page<DownloadFileDTO> toPage(List<DownloadingFile> files,
+                                         GetFilesHistoryRequestDTO req,
+                                         int totalElements,
+                                         long version) {
+        DownloadFileDTO[] content = new DownloadFileDTO[files.size()];
+        boolean downloading = false;
+        for (int i = 0; i < content.length; i++) {
+            content[i] = new DownloadFileDTO(files.get(i), filesStorageDao.getProgressTable());
+            downloading |= content[i].status() == DownloadingFileStatus.DOWNLOADING;
+        }
+
+        String nextCursor = null;
+        if (files.size() == req.size()) {
+            DownloadingFile last = files.getLast();
+            nextCursor = Long.toString(last.createdAt) + CURSOR_SEPARATOR + last.id;
+        }
+        // the live progress doesn't change the version, so the page with downloading files can't be requested by it
+        return new Page<>(content, totalElements, nextCursor, downloading ? null : version);
+    }
+
+    private static UserFiles.CreatedAtKey parseCursor(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
 
-        DownloadFileDTO[] response = new DownloadFileDTO[pageSize];
-        for (int i = 0; i < pageSize; i++) {
-            response[i] = new DownloadFileDTO(sortedFiles[offset + i]);
+        int separator = cursor.indexOf(CURSOR_SEPARATOR);
+        try {
+            if (separator != -1) {
+                return new UserFiles.CreatedAtKey(Long.parseLong(cursor.substring(0, separator)), cursor.substring(separator + 1));
+            }
+        } catch (NumberFormatException ignored) {
         }
-        return StringMessage.json(msg, new Page<>(response, sortedFiles.length));
+        throw new ErrorException(Error.ErrorTypes.VALIDATION, "Cursor is invalid.");
     }
 }
@@ -0,0 +1,44 @@
+package io.remotedownloader.protocol.logic;
+
+import io.remotedownloader.Holder;
+import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.SessionDao;
+import io.remotedownloader.dao.UserDao;
+import io.remotedownloader.model.DownloadingFilesReportSubscription;
+import io.remotedownloader.model.User;
+import io.remotedownloader.model.dto.FilesStatisticsDTO;
+import io.remotedownloader.model.dto.SessionLagDTO;
+import io.remotedownloader.model.dto.StatisticsResponseDTO;
+import io.remotedownloader.protocol.StringMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GetStatisticsLogic {
+    private final FilesStorageDao filesStorageDao;
+    private final UserDao userDao;
+    private final SessionDao sessionDao;
+
+    public GetStatisticsLogic(Holder holder) {
+        this.filesStorageDao = holder.filesStorageDao;
+        this.userDao = holder.userDao;
+        this.sessionDao = holder.sessionDao;
+    }
+
+    public StringMessage handleRequest(StringMessage msg, String username) {
+        User user = userDao.getUserByUsername(username);
+        boolean admin = user != null && user.isAdmin();
+        return StringMessage.json(msg, new StatisticsResponseDTO(
+                filesStorageDao.getUserStatistics(username),
+                admin ? filesStorageDao.getServerStatistics() : null,
+                admin ? getSessionsLag() : null));
+    }
+
+    private List<SessionLagDTO> getSessionsLag() {
+        List<SessionLagDTO> sessions = new ArrayList<>();
+        for (DownloadingFilesReportSubscription subscription : sessionDao.getDownloadingFilesReportSubscriptions()) {
+            sessions.add(new SessionLagDTO(subscription));
+        }
+        return sessions;
+    }
+}
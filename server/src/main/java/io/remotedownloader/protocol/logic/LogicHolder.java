@@ -9,6 +9,12 @@ public class LogicHolder {
     public final DeleteFileLogic deleteFileLogic;
     public final ResumeDownloadLogic resumeDownloadLogic;
     public final ListFoldersLogic listFoldersLogic;
+    public final SearchFilesLogic searchFilesLogic;
+    public final GetStatisticsLogic getStatisticsLogic;
+    public final GetChangesLogic getChangesLogic;
+    public final SubscribeReportsLogic subscribeReportsLogic;
+    public final SubscribeFilesLogic subscribeFilesLogic;
+    public final UnsubscribeFilesLogic unsubscribeFilesLogic;
 
     public LogicHolder(Holder holder) {
         this.downloadFileLogic = new DownloadFileLogic(holder);
@@ -17,5 +23,11 @@ public class LogicHolder {
         this.deleteFileLogic = new DeleteFileLogic(holder);
         this.resumeDownloadLogic = new ResumeDownloadLogic(holder);
         this.listFoldersLogic = new ListFoldersLogic(holder);
+        this.searchFilesLogic = new SearchFilesLogic(holder);
+        this.getStatisticsLogic = new GetStatisticsLogic(holder);
+        this.getChangesLogic = new GetChangesLogic(holder);
+        this.subscribeReportsLogic = new SubscribeReportsLogic(holder);
+        this.subscribeFilesLogic = new SubscribeFilesLogic(holder);
+        this.unsubscribeFilesLogic = new UnsubscribeFilesLogic(holder);
     }
 }
@@ -4,28 +4,39 @@ import io.netty.channel.ChannelHandlerContext;
 import io.remotedownloader.Holder;
 import io.remotedownloader.dao.DownloadManagerDao;
 import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.HistoryArchiveDao;
 import io.remotedownloader.model.DownloadingFile;
 import io.remotedownloader.model.DownloadingFileStatus;
 import io.remotedownloader.model.dto.Error;
 import io.remotedownloader.model.dto.FileIdRequestDTO;
 import io.remotedownloader.protocol.BaseMessageHandler;
+import io.remotedownloader.protocol.ErrorException;
 import io.remotedownloader.protocol.StringMessage;
 
+import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 public class ResumeDownloadLogic {
     private final FilesStorageDao filesStorageDao;
     private final DownloadManagerDao downloadManagerDao;
+    private final HistoryArchiveDao historyArchiveDao;
+    private final ExecutorService blockingTasksExecutor;
 
     public ResumeDownloadLogic(Holder holder) {
         this.filesStorageDao = holder.filesStorageDao;
         this.downloadManagerDao = holder.downloadManagerDao;
+        this.historyArchiveDao = holder.historyArchiveDao;
+        this.blockingTasksExecutor = holder.threadPoolsHolder.blockingTasksExecutor;
     }
 
     public StringMessage handleRequest(ChannelHandlerContext ctx, StringMessage req, String username) {
         String fileId = req.parseJsonAndValidate(FileIdRequestDTO.class).fileId();
 
         DownloadingFile file = filesStorageDao.getById(fileId);
+        if (file == null && historyArchiveDao.hasArchivedFiles(username)) {
+            return resumeArchivedFile(ctx, req, username, fileId);
+        }
         if (file == null || !username.equals(file.ownerUsername)) {
             return StringMessage.error(req, Error.ErrorTypes.NOT_FOUND, "File is not found.");
         }
@@ -37,4 +48,30 @@ public class ResumeDownloadLogic {
         BaseMessageHandler.handleException(future, ctx, req);
         return null;
     }
+
+    /**
+     * Paused files, which were archived, are moved back to memory before they are resumed.
+     */
+    private StringMessage resumeArchivedFile(ChannelHandlerContext ctx, StringMessage req, String username, String fileId) {
+        CompletableFuture<Void> future = CompletableFuture.supplyAsync(() -> {
+            DownloadingFile file;
+            try {
+                file = historyArchiveDao.getFile(username, fileId);
+                if (file != null && file.status == DownloadingFileStatus.PAUSED) {
+                    file = filesStorageDao.restoreArchivedFile(username, fileId);
+                }
+            } catch (IOException e) {
+                throw new ErrorException(Error.ErrorTypes.UNKNOWN, "Failed to resume downloading the file.", e);
+            }
+            if (file == null) {
+                throw new ErrorException(Error.ErrorTypes.NOT_FOUND, "File is not found.");
+            }
+            if (file.status != DownloadingFileStatus.PAUSED) {
+                throw new ErrorException(Error.ErrorTypes.FAILED_TO_DOWNLOAD, "File status should be 'Paused'.");
+            }
+            return file;
+        }, blockingTasksExecutor).thenCompose(file -> downloadManagerDao.resumeDownloading(ctx, req, file));
+        BaseMessageHandler.handleException(future, ctx, req);
+        return null;
+    }
 }
@@ -0,0 +1,33 @@
+package io.remotedownloader.protocol.logic;
+
+import io.remotedownloader.Holder;
+import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.UserFiles;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.dto.DownloadFileDTO;
+import io.remotedownloader.model.dto.Page;
+import io.remotedownloader.model.dto.SearchFilesRequestDTO;
+import io.remotedownloader.protocol.StringMessage;
+
+import java.util.List;
+
+public class SearchFilesLogic {
+    private final FilesStorageDao filesStorageDao;
+
+    public SearchFilesLogic(Holder holder) {
+        this.filesStorageDao = holder.filesStorageDao;
+    }
+
+    public StringMessage handleRequest(StringMessage msg, String username) {
+        SearchFilesRequestDTO req = msg.parseJsonAndValidate(SearchFilesRequestDTO.class);
+        UserFiles.SearchResult result = filesStorageDao.searchUserFiles(
+                username, req.query(), req.status(), req.offset(), req.size());
+
+        List<DownloadingFile> files = result.files();
+        DownloadFileDTO[] content = new DownloadFileDTO[files.size()];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = new DownloadFileDTO(files.get(i), filesStorageDao.getProgressTable());
+        }
+        return StringMessage.json(msg, new Page<>(content, result.totalMatches(), null));
+    }
+}
@@ -1,28 +1,45 @@
 package io.remotedownloader.protocol.logic;
 
+import io.netty.channel.ChannelHandlerContext;
 import io.remotedownloader.Holder;
 import io.remotedownloader.dao.DownloadManagerDao;
 import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.HistoryArchiveDao;
 import io.remotedownloader.model.DownloadingFile;
 import io.remotedownloader.model.DownloadingFileStatus;
 import io.remotedownloader.model.dto.DownloadFileDTO;
 import io.remotedownloader.model.dto.Error;
 import io.remotedownloader.model.dto.FileIdRequestDTO;
+import io.remotedownloader.protocol.BaseMessageHandler;
+import io.remotedownloader.protocol.ErrorException;
 import io.remotedownloader.protocol.StringMessage;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
 public class StopDownloadingLogic {
     private final FilesStorageDao filesStorageDao;
     private final DownloadManagerDao downloadManagerDao;
+    private final HistoryArchiveDao historyArchiveDao;
+    private final ExecutorService blockingTasksExecutor;
+    private final boolean durableAcknowledgements;
 
     public StopDownloadingLogic(Holder holder) {
         this.filesStorageDao = holder.filesStorageDao;
         this.downloadManagerDao = holder.downloadManagerDao;
+        this.historyArchiveDao = holder.historyArchiveDao;
+        this.blockingTasksExecutor = holder.threadPoolsHolder.blockingTasksExecutor;
+        this.durableAcknowledgements = holder.serverProperties.getDurableAcknowledgements();
     }
 
-    public StringMessage handleRequest(StringMessage req, String username) {
+    public StringMessage handleRequest(ChannelHandlerContext ctx, StringMessage req, String username) {
         String fileId = req.parseJsonAndValidate(FileIdRequestDTO.class).fileId();
 
         DownloadingFile file = filesStorageDao.getById(fileId);
+        if (file == null && historyArchiveDao.hasArchivedFiles(username)) {
+            return stopArchivedFile(ctx, req, username, fileId);
+        }
         if (file == null || !username.equals(file.ownerUsername)) {
             return StringMessage.error(req, Error.ErrorTypes.NOT_FOUND, "File is not found.");
         }
@@ -32,9 +49,36 @@ public class StopDownloadingLogic {
 
         downloadManagerDao.stopDownloading(file.id);
 
-        DownloadingFile updatedFile = file.commitBytes(DownloadingFileStatus.PAUSED, file.downloadedBytes);
-        filesStorageDao.updateFile(updatedFile);
+        DownloadingFile updatedFile = file.commitBytes(
+                DownloadingFileStatus.PAUSED,
+                filesStorageDao.getProgressTable().getDownloadedBytes(file));
+        CompletableFuture<Void> future = filesStorageDao.updateFile(updatedFile);
+        DownloadFileDTO response = new DownloadFileDTO(updatedFile);
+
+        if (durableAcknowledgements) {
+            BaseMessageHandler.respond(future.thenApply(ignored -> response), ctx, req);
+            return null;
+        }
+        return StringMessage.json(req, response);
+    }
 
-        return StringMessage.json(req, new DownloadFileDTO(updatedFile));
+    /**
+     * Archived files are never downloading, so only the error is chosen by whether the file is archived.
+     */
+    private StringMessage stopArchivedFile(ChannelHandlerContext ctx, StringMessage req, String username, String fileId) {
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            DownloadingFile file;
+            try {
+                file = historyArchiveDao.getFile(username, fileId);
+            } catch (IOException e) {
+                throw new ErrorException(Error.ErrorTypes.UNKNOWN, "Failed to stop downloading the file.", e);
+            }
+            if (file == null) {
+                throw new ErrorException(Error.ErrorTypes.NOT_FOUND, "File is not found.");
+            }
+            throw new ErrorException(Error.ErrorTypes.FAILED_TO_DOWNLOAD, "File status should be 'Downloading'.");
+        }, blockingTasksExecutor);
+        BaseMessageHandler.handleException(future, ctx, req);
+        return null;
     }
 }
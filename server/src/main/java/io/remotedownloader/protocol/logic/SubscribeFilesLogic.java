@@ -0,0 +1,45 @@
+package io.remotedownloader.protocol.logic;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.remotedownloader.Holder;
+import io.remotedownloader.dao.SessionDao;
+import io.remotedownloader.model.DownloadingFilesReportSubscription;
+import io.remotedownloader.model.FilesScope;
+import io.remotedownloader.model.dto.Error;
+import io.remotedownloader.model.dto.SubscribeFilesRequestDTO;
+import io.remotedownloader.protocol.ErrorException;
+import io.remotedownloader.protocol.StringMessage;
+
+/**
+ * Narrows the reports of the session to the visible files, e.g. the rows shown by the client,
+ * the rest of the downloading files is reported only as an aggregate.
+ */
+public class SubscribeFilesLogic {
+    private final SessionDao sessionDao;
+
+    public SubscribeFilesLogic(Holder holder) {
+        this.sessionDao = holder.sessionDao;
+    }
+
+    public StringMessage handleRequest(ChannelHandlerContext ctx, StringMessage msg) {
+        SubscribeFilesRequestDTO req = msg.parseJsonAndValidate(SubscribeFilesRequestDTO.class);
+        FilesScope scope = getScope(sessionDao, ctx);
+
+        if (req.fileIds() != null && !scope.addFiles(req.fileIds())) {
+            throw new ErrorException(Error.ErrorTypes.VALIDATION,
+                    "Visible files count should be less than " + FilesScope.MAX_FILE_IDS + '.');
+        }
+        if (req.pageSize() != 0) {
+            scope.setPage(req.pageOffset(), req.pageSize());
+        }
+        return StringMessage.ok(msg);
+    }
+
+    static FilesScope getScope(SessionDao sessionDao, ChannelHandlerContext ctx) {
+        DownloadingFilesReportSubscription subscription = sessionDao.getSubscription(ctx.channel());
+        if (subscription == null) {
+            throw new ErrorException(Error.ErrorTypes.NOT_FOUND, "You are not subscribed to the reports.");
+        }
+        return subscription.scope();
+    }
+}
@@ -0,0 +1,25 @@
+package io.remotedownloader.protocol.logic;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.remotedownloader.Holder;
+import io.remotedownloader.dao.SessionDao;
+import io.remotedownloader.model.dto.SubscribeReportsRequestDTO;
+import io.remotedownloader.protocol.StringMessage;
+
+/**
+ * Subscribes the session on the reports or changes its subscription, e.g. when the client goes to the background.
+ * Files of the delta reports get new handles, as the reports start over.
+ */
+public class SubscribeReportsLogic {
+    private final SessionDao sessionDao;
+
+    public SubscribeReportsLogic(Holder holder) {
+        this.sessionDao = holder.sessionDao;
+    }
+
+    public StringMessage handleRequest(ChannelHandlerContext ctx, StringMessage msg, String username) {
+        SubscribeReportsRequestDTO req = msg.parseJsonAndValidate(SubscribeReportsRequestDTO.class);
+        sessionDao.addSubscription(ctx, username, req.deltaReports(), req.reportIntervalMillis());
+        return StringMessage.ok(msg);
+    }
+}
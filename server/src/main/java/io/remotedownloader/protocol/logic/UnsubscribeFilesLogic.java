@@ -0,0 +1,32 @@
+package io.remotedownloader.protocol.logic;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.remotedownloader.Holder;
+import io.remotedownloader.dao.SessionDao;
+import io.remotedownloader.model.FilesScope;
+import io.remotedownloader.model.dto.UnsubscribeFilesRequestDTO;
+import io.remotedownloader.protocol.StringMessage;
+
+/**
+ * Removes the files from the visible ones, once none are left, all files of the user are reported again.
+ */
+public class UnsubscribeFilesLogic {
+    private final SessionDao sessionDao;
+
+    public UnsubscribeFilesLogic(Holder holder) {
+        this.sessionDao = holder.sessionDao;
+    }
+
+    public StringMessage handleRequest(ChannelHandlerContext ctx, StringMessage msg) {
+        UnsubscribeFilesRequestDTO req = msg.parseJsonAndValidate(UnsubscribeFilesRequestDTO.class);
+        FilesScope scope = SubscribeFilesLogic.getScope(sessionDao, ctx);
+
+        if (req.fileIds() != null) {
+            scope.removeFiles(req.fileIds());
+        }
+        if (req.page()) {
+            scope.removePage();
+        }
+        return StringMessage.ok(msg);
+    }
+}
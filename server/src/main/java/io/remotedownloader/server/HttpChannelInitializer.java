@@ -15,6 +15,7 @@ public class HttpChannelInitializer extends ChannelInitializer<SocketChannel> {
     private final NoAuthMessageHandler noAuthMessageHandler;
     private final ProtocolEncoderDecoder protocolEncoderDecoder;
     private final HttpRequestHandler httpRequestHandler;
+    private final OutboundBudgetHandler outboundBudgetHandler;
 
     public HttpChannelInitializer(Holder holder) {
         WebSocketDecoderConfig decoderConfig = WebSocketDecoderConfig.newBuilder()
@@ -31,11 +32,15 @@ public class HttpChannelInitializer extends ChannelInitializer<SocketChannel> {
         this.noAuthMessageHandler = new NoAuthMessageHandler(holder);
         this.protocolEncoderDecoder = new ProtocolEncoderDecoder();
         this.httpRequestHandler = new HttpRequestHandler();
+        this.outboundBudgetHandler = new OutboundBudgetHandler(
+                holder.serverProperties.getSessionOutboundBudgetBytes(),
+                holder.serverProperties.getSessionLagTimeoutMillis());
     }
 
     @Override
     protected void initChannel(SocketChannel ch) {
         ch.pipeline()
+                .addLast("OutboundBudgetHandler", outboundBudgetHandler)
                 .addLast("HttpServerCodec", new HttpServerCodec())
                 .addLast("WebSocketServerProtocolHandler", new WebSocketServerProtocolHandler(webSocketConfig))
                 .addLast("ProtocolEncoderDecoder", protocolEncoderDecoder)
@@ -3,6 +3,7 @@ package io.remotedownloader.server;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
 import io.remotedownloader.Holder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -23,6 +24,9 @@ public class HttpServer {
                     .option(ChannelOption.SO_BACKLOG, 1024)
                     .group(holder.transportTypeHolder.boosGroup, holder.transportTypeHolder.workerGroup)
                     .channel(holder.transportTypeHolder.channelClass)
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+                            holder.serverProperties.getWriteBufferLowWaterMark(),
+                            holder.serverProperties.getWriteBufferHighWaterMark()))
                     .childHandler(new HttpChannelInitializer(holder))
                     .bind(port).sync().channel();
             log.info("HTTP server is listening on port {}", port);
@@ -0,0 +1,63 @@
+package io.remotedownloader.server;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.remotedownloader.model.SessionLag;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the bytes queued to a slow client: the session, which stays over the budget for the lag timeout,
+ * is disconnected, as it would only fall further behind. The pending bytes are checked on every write
+ * and once the channel becomes writable again.
+ */
+public class OutboundBudgetHandler extends ChannelDuplexHandler {
+    private static final Logger log = LogManager.getLogger(OutboundBudgetHandler.class);
+
+    private final long budgetBytes;
+    private final long lagTimeoutMillis;
+
+    public OutboundBudgetHandler(long budgetBytes, long lagTimeoutMillis) {
+        this.budgetBytes = budgetBytes;
+        this.lagTimeoutMillis = lagTimeoutMillis;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        ctx.write(msg, promise);
+        checkBudget(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        checkBudget(ctx);
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    private void checkBudget(ChannelHandlerContext ctx) {
+        SessionLag lag = SessionLag.of(ctx.channel());
+        if (lag.updatePendingBytes(lag.getPendingBytes(), budgetBytes)) {
+            ctx.executor().schedule(() -> disconnectIfOverBudget(ctx), lagTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void disconnectIfOverBudget(ChannelHandlerContext ctx) {
+        SessionLag lag = SessionLag.of(ctx.channel());
+        long pendingBytes = lag.getPendingBytes();
+        lag.updatePendingBytes(pendingBytes, budgetBytes);
+        // the session could get under the budget and over it again meanwhile, then the later check decides
+        if (lag.getOverBudgetMillis() >= lagTimeoutMillis) {
+            log.info("Disconnecting {}, which stays over the outbound budget: {} bytes pending, {} reports skipped",
+                    ctx.channel().remoteAddress(), pendingBytes, lag.getSkippedReports());
+            ctx.close();
+        }
+    }
+
+    @Override
+    public boolean isSharable() {
+        return true;
+    }
+}
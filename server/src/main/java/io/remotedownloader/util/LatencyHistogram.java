@@ -0,0 +1,80 @@
+package io.remotedownloader.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power of two buckets in microseconds.
+ * Percentiles are reported as the upper bound of the bucket, so they are accurate up to 2x.
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0));
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        maxMicros.accumulate(micros);
+    }
+
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void addAll(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.addAndGet(i, other.buckets.get(i));
+        }
+        count.add(other.getCount());
+        maxMicros.accumulate(other.getMaxMicros());
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * @param percentile value between 0 and 100
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long threshold = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= threshold) {
+                return Math.min(i == 0 ? 0 : 1L << i, getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount()
+               + ", p50=" + getPercentileMicros(50) + "us"
+               + ", p99=" + getPercentileMicros(99) + "us"
+               + ", p999=" + getPercentileMicros(99.9) + "us"
+               + ", max=" + getMaxMicros() + "us";
+    }
+}
@@ -0,0 +1,33 @@
+package io.remotedownloader.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pool of the canonical instances of the strings, which repeat across many records, like owners and folders.
+ * The pool is a fixed table, where a value takes the slot of its hash and replaces the previous one,
+ * so the pool never grows, and the values, which don't repeat anymore, are evicted by the new ones.
+ */
+public class StringPool {
+    private static final int SLOTS = 16 * 1024;
+    private static final AtomicReferenceArray<String> POOL = new AtomicReferenceArray<>(SLOTS);
+
+    /**
+     * @return the pooled instance equal to the value, the value itself, once it is pooled, or {@code null}
+     */
+    public static String canonical(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (SLOTS - 1);
+        String pooled = POOL.get(slot);
+        if (value.equals(pooled)) {
+            return pooled;
+        }
+
+        // a racing value might be replaced right away, it just stays not shared
+        POOL.lazySet(slot, value);
+        return value;
+    }
+}
@@ -1,54 +1,498 @@
 package io.remotedownloader.worker;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.util.concurrent.EventExecutor;
 import io.remotedownloader.Holder;
+import io.remotedownloader.dao.FilesEventBus;
 import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.ProgressTable;
 import io.remotedownloader.dao.SessionDao;
 import io.remotedownloader.model.DownloadingFile;
 import io.remotedownloader.model.DownloadingFileStatus;
 import io.remotedownloader.model.DownloadingFilesReportSubscription;
+import io.remotedownloader.model.FilesReportState;
+import io.remotedownloader.model.FilesScope;
+import io.remotedownloader.model.ReportSchedule;
 import io.remotedownloader.model.dto.DownloadFileDTO;
+import io.remotedownloader.model.dto.FilesAggregateDTO;
+import io.remotedownloader.model.dto.FilesDeltaReportDTO;
 import io.remotedownloader.model.dto.FilesHistoryReportDTO;
+import io.remotedownloader.model.dto.FilesStatisticsDTO;
+import io.remotedownloader.model.dto.LoginRequestDTO;
+import io.remotedownloader.model.dto.ReportedFileDTO;
+import io.remotedownloader.protocol.PayloadFormat;
 import io.remotedownloader.protocol.ProtocolCommands;
+import io.remotedownloader.protocol.ProtocolEncoderDecoder;
 import io.remotedownloader.protocol.StringMessage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reports the files to the subscriptions on every event loop, so a report is built and written by the thread,
+ * which owns the channel, and the reports are spread across the loops.
+ * Created files and the changes of the status are pushed right away, coalesced till the loop gets to them,
+ * while the periodic ticks report only the progress of the downloading files, at the interval of every subscription.
+ * Nothing is queued to a client, which doesn't keep up: the ticks are skipped, as the next one reports
+ * the current progress anyway, and only the latest transition of every file is kept, till the channel is writable.
+ * A subscription, which narrowed its scope to the visible files, gets only them plus an aggregate of the others.
+ * The full report of a user is built and encoded once for all of its sessions on the same event loop.
+ * Sessions of the user on the other loops get their own report from their loop: the loops tick on their own,
+ * so a report shared across the loops would show stale progress to the loops, which tick later.
+ */
+public class DownloadingFilesReportWorker implements FilesEventBus.Listener {
+    private static final Logger log = LogManager.getLogger(DownloadingFilesReportWorker.class);
+    public static final long TICK_MILLIS = LoginRequestDTO.MIN_REPORT_INTERVAL_MILLIS;
 
-public class DownloadingFilesReportWorker implements Runnable {
     private final FilesStorageDao filesStorageDao;
     private final SessionDao sessionDao;
-    private long lastReported = System.currentTimeMillis();
+    private final ProgressTable progressTable;
+    private final Map<EventExecutor, PendingTransitions> pendingTransitions = new ConcurrentHashMap<>();
 
     public DownloadingFilesReportWorker(Holder holder) {
-        this.filesStorageDao = holder.filesStorageDao;
-        this.sessionDao = holder.sessionDao;
+        this(holder.filesStorageDao, holder.sessionDao);
+    }
+
+    public DownloadingFilesReportWorker(FilesStorageDao filesStorageDao, SessionDao sessionDao) {
+        this.filesStorageDao = filesStorageDao;
+        this.sessionDao = sessionDao;
+        this.progressTable = filesStorageDao.getProgressTable();
+    }
+
+    /**
+     * Subscribes on the transitions of the files and schedules the ticks on every event loop of the group.
+     */
+    public void start(EventLoopGroup eventLoopGroup) {
+        filesStorageDao.getEventBus().subscribe(this);
+        for (EventExecutor eventLoop : eventLoopGroup) {
+            eventLoop.scheduleAtFixedRate(() -> {
+                try {
+                    report(sessionDao.getDownloadingFilesReportSubscriptions(eventLoop), false);
+                } catch (Exception e) {
+                    log.warn("Failed to report the downloading files", e);
+                }
+            }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
     }
 
+    /**
+     * Queues the file to every event loop with the subscriptions, the loop pushes it on its next run.
+     */
     @Override
-    public void run() {
+    public void onTransition(DownloadingFile file) {
+        for (EventExecutor eventLoop : sessionDao.getEventLoops()) {
+            pendingTransitions.computeIfAbsent(eventLoop, PendingTransitions::new).add(file);
+        }
+    }
+
+    /**
+     * Reports to the subscriptions, which are due, on their event loops, as the ticks do, and waits for the reports.
+     */
+    public void reportDue() {
+        reportOnEventLoops(false);
+    }
+
+    /**
+     * Reports to every subscription right away, regardless of its interval, and waits for the reports.
+     */
+    public void reportAll() {
+        reportOnEventLoops(true);
+    }
+
+    private void reportOnEventLoops(boolean all) {
+        for (EventExecutor eventLoop : sessionDao.getEventLoops()) {
+            Runnable report = () -> report(sessionDao.getDownloadingFilesReportSubscriptions(eventLoop), all);
+            if (eventLoop.inEventLoop()) {
+                report.run();
+            } else {
+                eventLoop.submit(report).syncUninterruptibly();
+            }
+        }
+    }
+
+    private void report(Collection<DownloadingFilesReportSubscription> subscriptions, boolean all) {
         long now = System.currentTimeMillis();
+        // the ticks drift against the clock, so a report due right after the tick would wait for the next one
+        long dueBefore = now + TICK_MILLIS / 2;
+        Map<String, List<DownloadingFilesReportSubscription>> fullReportSubscriptions = new HashMap<>();
 
-        for (DownloadingFilesReportSubscription subscription : sessionDao.getDownloadingFilesReportSubscriptions()) {
+        for (DownloadingFilesReportSubscription subscription : subscriptions) {
             ChannelHandlerContext ctx = subscription.ctx();
-            if (!ctx.channel().isWritable()) {
+            boolean writable = ctx.channel().isWritable();
+            if (writable && !subscription.pendingTransitions().isEmpty()) {
+                push(subscription, drainPendingTransitions(subscription));
+            }
+
+            ReportSchedule schedule = subscription.schedule();
+            if (all || schedule.isDue(dueBefore)) {
+                if (!writable) {
+                    schedule.backOff(now);
+                    subscription.lag().reportSkipped();
+                } else if (subscription.reportState() != null) {
+                    reportDelta(ctx, subscription.username(), subscription.reportState(),
+                            getVisibleFileIds(subscription));
+                    schedule.reported(now);
+                } else if (!subscription.scope().isEmpty()) {
+                    reportFull(subscription.username(), List.of(subscription), getVisibleFileIds(subscription));
+                    schedule.reported(now);
+                } else {
+                    // the full report is the same for all sessions of the user, so it is built once
+                    fullReportSubscriptions.computeIfAbsent(subscription.username(), username -> new ArrayList<>(1))
+                            .add(subscription);
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<DownloadingFilesReportSubscription>> entry : fullReportSubscriptions.entrySet()) {
+            reportFull(entry.getKey(), entry.getValue(), null);
+            for (DownloadingFilesReportSubscription subscription : entry.getValue()) {
+                subscription.schedule().reported(now);
+            }
+        }
+    }
+
+    /**
+     * @param visibleFileIds files to report, the others are summed up, or {@code null} to report all files
+     */
+    private void reportFull(String username,
+                            List<DownloadingFilesReportSubscription> subscriptions,
+                            Set<String> visibleFileIds) {
+        List<DownloadFileDTO> files = new ArrayList<>();
+        OthersAggregate others = visibleFileIds != null ? new OthersAggregate() : null;
+        for (DownloadingFile file : filesStorageDao.getUserFilesByStatus(username, DownloadingFileStatus.DOWNLOADING)) {
+            if (others == null || visibleFileIds.contains(file.id)) {
+                files.add(new DownloadFileDTO(file, progressTable));
+            } else {
+                others.add(file);
+            }
+        }
+        if (!files.isEmpty() || others != null && others.filesCount > 0) {
+            FilesHistoryReportDTO report = new FilesHistoryReportDTO(
+                    files,
+                    filesStorageDao.getUserStatistics(username),
+                    others != null ? others.toDTO() : null);
+            writeToAll(subscriptions, StringMessage.json(0, ProtocolCommands.FILES_HISTORY_REPORT, report));
+        }
+    }
+
+    /**
+     * Reports the metadata of a file once, and then only its progress, if it is changed.
+     *
+     * @param visibleFileIds files to report, the others are summed up, or {@code null} to report all files
+     */
+    private void reportDelta(ChannelHandlerContext ctx,
+                             String username,
+                             FilesReportState state,
+                             Set<String> visibleFileIds) {
+        List<ReportedFileDTO> files = new ArrayList<>();
+        Collection<DownloadingFile> downloadingFiles =
+                filesStorageDao.getUserFilesByStatus(username, DownloadingFileStatus.DOWNLOADING);
+        long[] progress = new long[downloadingFiles.size() * 3];
+        int progressLength = 0;
+        OthersAggregate others = visibleFileIds != null ? new OthersAggregate() : null;
+
+        state.startReport();
+        for (DownloadingFile file : downloadingFiles) {
+            if (others != null && !visibleFileIds.contains(file.id)) {
+                // forgotten at the end of the report, so the file gets a new handle, once it's visible again
+                others.add(file);
                 continue;
             }
 
-            DownloadingFile[] files = filesStorageDao.getUserFiles(subscription.username());
-            List<DownloadFileDTO> filteredFiles = new ArrayList<>(files.length);
+            long downloadedBytes = progressTable.getDownloadedBytes(file);
+            long speedBytesPerSecond = progressTable.getSpeedBytesPerSecond(file);
+
+            FilesReportState.ReportedFile reportedFile = state.get(file.id);
+            if (reportedFile == null) {
+                reportedFile = state.add(file.id);
+                files.add(new ReportedFileDTO(reportedFile.handle, new DownloadFileDTO(file, progressTable)));
+            } else if (reportedFile.downloadedBytes != downloadedBytes
+                       || reportedFile.speedBytesPerSecond != speedBytesPerSecond) {
+                // the set of the downloading files might grow, while it's iterated
+                if (progressLength == progress.length) {
+                    progress = Arrays.copyOf(progress, progress.length * 2 + 3);
+                }
+                progress[progressLength++] = reportedFile.handle;
+                progress[progressLength++] = downloadedBytes;
+                progress[progressLength++] = speedBytesPerSecond;
+            }
+            reportedFile.downloadedBytes = downloadedBytes;
+            reportedFile.speedBytesPerSecond = speedBytesPerSecond;
+        }
+        // the files, which stopped downloading, were pushed already
+        state.finishReport();
+
+        FilesStatisticsDTO statistics = filesStorageDao.getUserStatistics(username);
+        boolean statisticsChanged = state.updateStatistics(statistics);
+        FilesAggregateDTO othersDTO = others != null ? others.toDTO() : null;
+        boolean othersChanged = state.updateOthers(othersDTO);
+        if (!files.isEmpty() || progressLength > 0 || statisticsChanged || othersChanged && othersDTO != null) {
+            FilesDeltaReportDTO report = new FilesDeltaReportDTO(
+                    files,
+                    Arrays.copyOf(progress, progressLength),
+                    statisticsChanged ? statistics : null,
+                    othersChanged ? othersDTO : null);
+            ctx.writeAndFlush(StringMessage.json(0, ProtocolCommands.FILES_DELTA_REPORT, report));
+        }
+    }
+
+    /**
+     * Pushes the transitions to the subscriptions of the event loop, which are interested in the files,
+     * regardless of the schedule. Transitions for the channels, which are not writable, are kept pending.
+     */
+    private void pushTransitions(EventExecutor eventLoop, Map<String, List<DownloadingFile>> filesByOwner) {
+        Map<String, List<DownloadingFilesReportSubscription>> fullReportSubscriptions = new HashMap<>();
+        for (DownloadingFilesReportSubscription subscription : sessionDao.getDownloadingFilesReportSubscriptions(eventLoop)) {
+            List<DownloadingFile> files = filesByOwner.get(subscription.username());
+            if (files == null) {
+                continue;
+            }
+
+            if (!subscription.ctx().channel().isWritable()) {
+                addPendingTransitions(subscription, files);
+            } else if (!subscription.pendingTransitions().isEmpty()) {
+                // the pending transitions go first, as they are older
+                addPendingTransitions(subscription, files);
+                push(subscription, drainPendingTransitions(subscription));
+            } else if (subscription.reportState() != null || !subscription.scope().isEmpty()) {
+                push(subscription, files);
+            } else {
+                fullReportSubscriptions.computeIfAbsent(subscription.username(), username -> new ArrayList<>(1))
+                        .add(subscription);
+            }
+        }
+
+        for (Map.Entry<String, List<DownloadingFilesReportSubscription>> entry : fullReportSubscriptions.entrySet()) {
+            pushFull(entry.getKey(), entry.getValue(), filesByOwner.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Pushes the transitions of the files, which are visible to the subscription.
+     */
+    private void push(DownloadingFilesReportSubscription subscription, List<DownloadingFile> files) {
+        Set<String> visibleFileIds = getVisibleFileIds(subscription);
+        if (visibleFileIds != null) {
+            List<DownloadingFile> visibleFiles = new ArrayList<>(files.size());
             for (DownloadingFile file : files) {
-                if (file.status == DownloadingFileStatus.DOWNLOADING || file.updatedAt >= lastReported) {
-                    filteredFiles.add(new DownloadFileDTO(file));
+                if (visibleFileIds.contains(file.id)) {
+                    visibleFiles.add(file);
                 }
             }
+            if (visibleFiles.isEmpty()) {
+                return;
+            }
+            files = visibleFiles;
+        }
+
+        if (subscription.reportState() != null) {
+            pushDelta(subscription.ctx(), subscription.username(), subscription.reportState(), files);
+        } else {
+            pushFull(subscription.username(), List.of(subscription), files);
+        }
+    }
+
+    /**
+     * Keeps only the latest state of every file, the replaced ones are counted as merged.
+     */
+    private static void addPendingTransitions(DownloadingFilesReportSubscription subscription,
+                                              List<DownloadingFile> files) {
+        Map<String, DownloadingFile> pendingTransitions = subscription.pendingTransitions();
+        for (DownloadingFile file : files) {
+            if (pendingTransitions.remove(file.id) != null) {
+                subscription.lag().transitionMerged();
+            }
+            pendingTransitions.put(file.id, file);
+        }
+    }
+
+    private static List<DownloadingFile> drainPendingTransitions(DownloadingFilesReportSubscription subscription) {
+        List<DownloadingFile> files = new ArrayList<>(subscription.pendingTransitions().values());
+        subscription.pendingTransitions().clear();
+        return files;
+    }
+
+    private void pushFull(String username,
+                          List<DownloadingFilesReportSubscription> subscriptions,
+                          List<DownloadingFile> transitions) {
+        List<DownloadFileDTO> files = new ArrayList<>(transitions.size());
+        for (DownloadingFile file : transitions) {
+            files.add(new DownloadFileDTO(file, progressTable));
+        }
+        FilesHistoryReportDTO report = new FilesHistoryReportDTO(files, filesStorageDao.getUserStatistics(username), null);
+        writeToAll(subscriptions, StringMessage.json(0, ProtocolCommands.FILES_HISTORY_REPORT, report));
+    }
+
+    /**
+     * @return ids of the files, which are visible to the subscription, or {@code null}, if all files are
+     */
+    private Set<String> getVisibleFileIds(DownloadingFilesReportSubscription subscription) {
+        FilesScope scope = subscription.scope();
+        if (scope.isEmpty()) {
+            return null;
+        }
+
+        Set<String> fileIds = new HashSet<>(scope.getFileIds());
+        if (scope.getPageSize() != 0) {
+            // the downloading files are never archived, so the page of the files in memory is enough
+            Iterator<DownloadingFile> iterator =
+                    filesStorageDao.getUserFilesNewestFirst(subscription.username(), null).iterator();
+            for (int i = 0; i < scope.getPageOffset() + scope.getPageSize() && iterator.hasNext(); i++) {
+                DownloadingFile file = iterator.next();
+                if (i >= scope.getPageOffset()) {
+                    fileIds.add(file.id);
+                }
+            }
+        }
+        return fileIds;
+    }
+
+    /**
+     * Reports the file with a handle, if it started downloading, so the ticks report its progress,
+     * otherwise its handle is released.
+     */
+    private void pushDelta(ChannelHandlerContext ctx,
+                           String username,
+                           FilesReportState state,
+                           List<DownloadingFile> transitions) {
+        List<ReportedFileDTO> files = new ArrayList<>(transitions.size());
+        for (DownloadingFile file : transitions) {
+            DownloadFileDTO fileDTO = new DownloadFileDTO(file, progressTable);
+            if (file.status == DownloadingFileStatus.DOWNLOADING) {
+                FilesReportState.ReportedFile reportedFile = state.get(file.id);
+                if (reportedFile == null) {
+                    reportedFile = state.add(file.id);
+                }
+                reportedFile.downloadedBytes = fileDTO.downloadedBytes();
+                reportedFile.speedBytesPerSecond = fileDTO.speedBytesPerSecond();
+                files.add(new ReportedFileDTO(reportedFile.handle, fileDTO));
+            } else {
+                state.remove(file.id);
+                files.add(new ReportedFileDTO(0, fileDTO));
+            }
+        }
 
-            if (!filteredFiles.isEmpty()) {
-                FilesHistoryReportDTO report = new FilesHistoryReportDTO(filteredFiles);
-                ctx.writeAndFlush(StringMessage.json(0, ProtocolCommands.FILES_HISTORY_REPORT, report));
+        FilesStatisticsDTO statistics = filesStorageDao.getUserStatistics(username);
+        FilesDeltaReportDTO report = new FilesDeltaReportDTO(
+                files,
+                new long[0],
+                state.updateStatistics(statistics) ? statistics : null,
+                null);
+        ctx.writeAndFlush(StringMessage.json(0, ProtocolCommands.FILES_DELTA_REPORT, report));
+    }
+
+    /**
+     * Encodes the message once per payload format for all sessions of the user on the event loop,
+     * the sessions on the other loops are reported by their own loops.
+     */
+    private static void writeToAll(List<DownloadingFilesReportSubscription> subscriptions, StringMessage message) {
+        if (subscriptions.size() == 1) {
+            subscriptions.getFirst().ctx().writeAndFlush(message);
+            return;
+        }
+
+        Map<PayloadFormat, ByteBuf> bufs = new EnumMap<>(PayloadFormat.class);
+        try {
+            for (DownloadingFilesReportSubscription subscription : subscriptions) {
+                ChannelHandlerContext ctx = subscription.ctx();
+                PayloadFormat format = PayloadFormat.of(ctx.channel());
+                ByteBuf buf = bufs.get(format);
+                if (buf == null) {
+                    buf = ProtocolEncoderDecoder.encode(ctx.alloc(), message, format);
+                    bufs.put(format, buf);
+                }
+                ctx.writeAndFlush(new BinaryWebSocketFrame(buf.retainedDuplicate()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (ByteBuf buf : bufs.values()) {
+                buf.release();
             }
         }
+    }
+
+    /**
+     * Sums up the downloading files, which are not visible to the subscription.
+     */
+    private class OthersAggregate {
+        private int filesCount;
+        private long totalBytes;
+        private long downloadedBytes;
+        private long speedBytesPerSecond;
+
+        private void add(DownloadingFile file) {
+            filesCount++;
+            totalBytes += file.totalBytes;
+            downloadedBytes += progressTable.getDownloadedBytes(file);
+            speedBytesPerSecond += progressTable.getSpeedBytesPerSecond(file);
+        }
+
+        private FilesAggregateDTO toDTO() {
+            return new FilesAggregateDTO(filesCount, totalBytes, downloadedBytes, speedBytesPerSecond);
+        }
+    }
 
-        this.lastReported = now;
+    /**
+     * Latest transitions of the files, which were not pushed by the event loop yet.
+     * The loop is woken up once for all transitions, which come till it gets to them.
+     */
+    private class PendingTransitions implements Runnable {
+        private final EventExecutor eventLoop;
+        private final ConcurrentMap<String, DownloadingFile> files = new ConcurrentHashMap<>(); // id -> file
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private PendingTransitions(EventExecutor eventLoop) {
+            this.eventLoop = eventLoop;
+        }
+
+        private void add(DownloadingFile file) {
+            files.put(file.id, file);
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    eventLoop.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // the server is stopping
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            scheduled.set(false);
+            Map<String, List<DownloadingFile>> filesByOwner = new HashMap<>();
+            for (DownloadingFile file : files.values()) {
+                // a newer transition of the file stays for the next run
+                if (files.remove(file.id, file)) {
+                    filesByOwner.computeIfAbsent(file.ownerUsername, username -> new ArrayList<>()).add(file);
+                }
+            }
+
+            try {
+                pushTransitions(eventLoop, filesByOwner);
+            } catch (Exception e) {
+                log.warn("Failed to push the transitions of the files", e);
+            }
+        }
     }
 }
@@ -0,0 +1,74 @@
+package io.remotedownloader.worker;
+
+import io.remotedownloader.Holder;
+import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the finished files, which are older than the retention age or exceed the per-user count,
+ * from memory to the history archive.
+ */
+public class RetentionWorker implements Runnable {
+    private static final Logger log = LogManager.getLogger(RetentionWorker.class);
+    private final FilesStorageDao filesStorageDao;
+    private final long maxAgeMillis;
+    private final int maxFilesPerUser;
+    private final Set<DownloadingFileStatus> statuses;
+
+    public RetentionWorker(Holder holder) {
+        this.filesStorageDao = holder.filesStorageDao;
+        this.maxAgeMillis = TimeUnit.DAYS.toMillis(holder.serverProperties.getRetentionMaxAgeDays());
+        this.maxFilesPerUser = holder.serverProperties.getRetentionMaxFilesPerUser();
+        this.statuses = holder.serverProperties.getRetentionStatuses();
+    }
+
+    @Override
+    public void run() {
+        if (maxAgeMillis <= 0 && maxFilesPerUser <= 0) {
+            return;
+        }
+
+        long minUpdatedAt = maxAgeMillis > 0 ? System.currentTimeMillis() - maxAgeMillis : Long.MIN_VALUE;
+        int archivedFiles = 0;
+        for (String username : filesStorageDao.getOwners()) {
+            if (maxAgeMillis <= 0 && filesStorageDao.getUserFiles(username).size() <= maxFilesPerUser) {
+                continue;
+            }
+
+            // only the files past the newest ones, which are kept by the count, might expire without the age
+            int skippedFiles = maxAgeMillis <= 0 ? maxFilesPerUser : 0;
+            int i = 0;
+            List<DownloadingFile> expiredFiles = new ArrayList<>();
+            for (DownloadingFile file : filesStorageDao.getUserFilesNewestFirst(username, null)) {
+                if (i++ < skippedFiles) {
+                    continue;
+                }
+                boolean expired = file.updatedAt < minUpdatedAt || (maxFilesPerUser > 0 && i > maxFilesPerUser);
+                if (expired && statuses.contains(file.status)) {
+                    expiredFiles.add(file);
+                }
+            }
+
+            if (!expiredFiles.isEmpty()) {
+                try {
+                    filesStorageDao.archiveFiles(username, expiredFiles);
+                    archivedFiles += expiredFiles.size();
+                } catch (Exception e) {
+                    log.warn("Failed to archive files of {}", username, e);
+                }
+            }
+        }
+
+        if (archivedFiles > 0) {
+            log.info("Archived {} files by the retention policy", archivedFiles);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package io.remotedownloader;
 import io.remotedownloader.model.User;
 import io.remotedownloader.server.HttpServer;
 import io.remotedownloader.util.WebClient;
+import io.remotedownloader.worker.DownloadingFilesReportWorker;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -24,11 +25,14 @@ public abstract class BaseTest {
         ServerProperties properties = new ServerProperties();
         properties.setProperty("storage.file", Files.createTempFile("remote-downloader-", "-server.properties").toString());
         properties.setProperty("download.folder", Files.createTempDirectory("remote-downloader-downloads-").toString());
+        properties.setProperty("storage.archive.folder", Files.createTempDirectory("remote-downloader-archive-").toString());
         properties.setProperty("port", "18080");
 
         holder = new Holder(properties);
         httpServer = new HttpServer(holder);
         httpServer.start();
+        // the ticks are triggered by the tests, while the transitions are pushed as on the started server
+        holder.filesStorageDao.getEventBus().subscribe(new DownloadingFilesReportWorker(holder));
     }
 
     @BeforeEach
@@ -40,6 +44,7 @@ public abstract class BaseTest {
     void tearDown() throws IOException {
         holder.downloadManagerDao.clear();
         holder.filesStorageDao.clear();
+        holder.historyArchiveDao.clear();
         holder.userDao.clear();
 
         String folder = holder.serverProperties.getProperty("download.folder");
@@ -54,8 +59,10 @@ public abstract class BaseTest {
 
         httpServer.stop();
         holder.threadPoolsHolder.close();
+        holder.storageDao.close();
         holder.transportTypeHolder.close();
 
         Files.deleteIfExists(Path.of(holder.serverProperties.getProperty("storage.file")));
+        Files.deleteIfExists(Path.of(holder.serverProperties.getProperty("storage.archive.folder")));
     }
 }
@@ -106,7 +106,7 @@ public class DownloadFileTest extends BaseTest {
             assertWithReties(5, 200, () -> {
                 webClient.reset();
 
-                reportWorker.run();
+                reportWorker.reportAll();
                 FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
                 assertNotNull(report.files());
                 assertEquals(1, report.files().size());
@@ -122,19 +122,15 @@ public class DownloadFileTest extends BaseTest {
             ctx.writeAndFlush(new DefaultLastHttpContent(content))
                     .addListener(ChannelFutureListener.CLOSE);
 
-            assertWithReties(10, 200, () -> {
-                webClient.reset();
-
-                reportWorker.run();
-                FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
-                assertNotNull(report.files());
-                assertEquals(1, report.files().size());
-                DownloadFileDTO reportedFile = report.files().getFirst();
-                assertEquals("file.txt", reportedFile.name());
-                assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
-                assertEquals(5, reportedFile.totalBytes());
-                assertEquals(5, reportedFile.downloadedBytes());
-            });
+            // the completion is pushed right away
+            FilesHistoryReportDTO report = webClient.awaitFilesHistoryReport(
+                    r -> r.files().getFirst().status() == DownloadingFileStatus.DOWNLOADED);
+            assertEquals(1, report.files().size());
+            DownloadFileDTO reportedFile = report.files().getFirst();
+            assertEquals("file.txt", reportedFile.name());
+            assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
+            assertEquals(5, reportedFile.totalBytes());
+            assertEquals(5, reportedFile.downloadedBytes());
             verifyFileContent("file.txt", "abcde");
         } finally {
             fileServer.close();
@@ -230,7 +226,7 @@ public class DownloadFileTest extends BaseTest {
             assertWithReties(5, 200, () -> {
                 webClient.reset();
 
-                reportWorker.run();
+                reportWorker.reportAll();
                 FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
                 assertNotNull(report.files());
                 assertEquals(1, report.files().size());
@@ -259,7 +255,6 @@ public class DownloadFileTest extends BaseTest {
 
     @Test
     void stopNonDownloadingFile() throws Throwable {
-        DownloadingFilesReportWorker reportWorker = new DownloadingFilesReportWorker(holder);
         TestFileServer fileServer = TestFileServer.simpleFileServer(new byte[]{'a', 'b', 'c'});
         try {
             WebClient webClient = loggedAdminWebClient();
@@ -272,23 +267,19 @@ public class DownloadFileTest extends BaseTest {
             assertEquals(DownloadingFileStatus.DOWNLOADING, file.status());
             assertEquals(3, file.totalBytes());
 
-            assertWithReties(5, 200, () -> {
-                webClient.reset();
-
-                reportWorker.run();
-                FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
-                assertNotNull(report.files());
-                assertEquals(1, report.files().size());
-                DownloadFileDTO reportedFile = report.files().getFirst();
-                assertEquals("file.txt", reportedFile.name());
-                assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
-                assertEquals(3, reportedFile.totalBytes());
-                assertEquals(3, reportedFile.downloadedBytes());
-            });
+            // the completion is pushed right away
+            FilesHistoryReportDTO report = webClient.awaitFilesHistoryReport(
+                    r -> r.files().getFirst().status() == DownloadingFileStatus.DOWNLOADED);
+            assertEquals(1, report.files().size());
+            DownloadFileDTO reportedFile = report.files().getFirst();
+            assertEquals("file.txt", reportedFile.name());
+            assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
+            assertEquals(3, reportedFile.totalBytes());
+            assertEquals(3, reportedFile.downloadedBytes());
             verifyFileContent("file.txt", "abc");
 
             webClient.stopDownloading(file.id())
-                    .verifyError(1, Error.ErrorTypes.FAILED_TO_DOWNLOAD, "File status should be 'Downloading'.");
+                    .verifyError(2, Error.ErrorTypes.FAILED_TO_DOWNLOAD, "File status should be 'Downloading'.");
         } finally {
             fileServer.close();
         }
@@ -326,7 +317,7 @@ public class DownloadFileTest extends BaseTest {
             assertWithReties(5, 200, () -> {
                 webClient.reset();
 
-                reportWorker.run();
+                reportWorker.reportAll();
                 FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
                 assertNotNull(report.files());
                 assertEquals(1, report.files().size());
@@ -358,19 +349,15 @@ public class DownloadFileTest extends BaseTest {
             assertEquals(6, file.totalBytes());
             assertEquals(2, file.downloadedBytes());
 
-            assertWithReties(5, 200, () -> {
-                webClient.reset();
-
-                reportWorker.run();
-                FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
-                assertNotNull(report.files());
-                assertEquals(1, report.files().size());
-                DownloadFileDTO reportedFile = report.files().getFirst();
-                assertEquals("file.txt", reportedFile.name());
-                assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
-                assertEquals(6, reportedFile.totalBytes());
-                assertEquals(6, reportedFile.downloadedBytes());
-            });
+            // the completion is pushed right away
+            FilesHistoryReportDTO report = webClient.awaitFilesHistoryReport(
+                    r -> r.files().getFirst().status() == DownloadingFileStatus.DOWNLOADED);
+            assertEquals(1, report.files().size());
+            DownloadFileDTO reportedFile = report.files().getFirst();
+            assertEquals("file.txt", reportedFile.name());
+            assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
+            assertEquals(6, reportedFile.totalBytes());
+            assertEquals(6, reportedFile.downloadedBytes());
             verifyFileContent("file.txt", "abcdej");
         } finally {
             fileServer.close();
@@ -401,7 +388,7 @@ public class DownloadFileTest extends BaseTest {
             assertWithReties(5, 200, () -> {
                 webClient.reset();
 
-                reportWorker.run();
+                reportWorker.reportAll();
                 FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
                 assertNotNull(report.files());
                 assertEquals(1, report.files().size());
@@ -440,19 +427,15 @@ public class DownloadFileTest extends BaseTest {
             ctx.writeAndFlush(new DefaultLastHttpContent(content))
                     .addListener(ChannelFutureListener.CLOSE);
 
-            assertWithReties(5, 200, () -> {
-                webClient.reset();
-
-                reportWorker.run();
-                FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
-                assertNotNull(report.files());
-                assertEquals(1, report.files().size());
-                DownloadFileDTO reportedFile = report.files().getFirst();
-                assertEquals("file.txt", reportedFile.name());
-                assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
-                assertEquals(5, reportedFile.totalBytes());
-                assertEquals(5, reportedFile.downloadedBytes());
-            });
+            // the completion is pushed right away
+            FilesHistoryReportDTO report = webClient.awaitFilesHistoryReport(
+                    r -> r.files().getFirst().status() == DownloadingFileStatus.DOWNLOADED);
+            assertEquals(1, report.files().size());
+            DownloadFileDTO reportedFile = report.files().getFirst();
+            assertEquals("file.txt", reportedFile.name());
+            assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
+            assertEquals(5, reportedFile.totalBytes());
+            assertEquals(5, reportedFile.downloadedBytes());
             verifyFileContent("file.txt", "abcde");
         } finally {
             fileServer.close();
@@ -461,8 +444,6 @@ public class DownloadFileTest extends BaseTest {
 
     @Test
     void resumeNonPausedFile() throws Throwable {
-        DownloadingFilesReportWorker reportWorker = new DownloadingFilesReportWorker(holder);
-
         TestFileServer fileServer = TestFileServer.simpleFileServer(new byte[]{'a', 'b', 'c'});
         try {
             WebClient webClient = loggedAdminWebClient();
@@ -473,23 +454,19 @@ public class DownloadFileTest extends BaseTest {
             assertEquals(DownloadingFileStatus.DOWNLOADING, file.status());
             assertEquals(3, file.totalBytes());
 
-            assertWithReties(5, 200, () -> {
-                webClient.reset();
-
-                reportWorker.run();
-                FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
-                assertNotNull(report.files());
-                assertEquals(1, report.files().size());
-                DownloadFileDTO reportedFile = report.files().getFirst();
-                assertEquals("file.txt", reportedFile.name());
-                assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
-                assertEquals(3, reportedFile.totalBytes());
-                assertEquals(3, reportedFile.downloadedBytes());
-            });
+            // the completion is pushed right away
+            FilesHistoryReportDTO report = webClient.awaitFilesHistoryReport(
+                    r -> r.files().getFirst().status() == DownloadingFileStatus.DOWNLOADED);
+            assertEquals(1, report.files().size());
+            DownloadFileDTO reportedFile = report.files().getFirst();
+            assertEquals("file.txt", reportedFile.name());
+            assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
+            assertEquals(3, reportedFile.totalBytes());
+            assertEquals(3, reportedFile.downloadedBytes());
             verifyFileContent("file.txt", "abc");
 
             webClient.resumeDownloading(file.id())
-                    .verifyError(1, Error.ErrorTypes.FAILED_TO_DOWNLOAD, "File status should be 'Paused'.");
+                    .verifyError(2, Error.ErrorTypes.FAILED_TO_DOWNLOAD, "File status should be 'Paused'.");
         } finally {
             fileServer.close();
         }
@@ -527,7 +504,7 @@ public class DownloadFileTest extends BaseTest {
             assertWithReties(5, 200, () -> {
                 webClient.reset();
 
-                reportWorker.run();
+                reportWorker.reportAll();
                 FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
                 assertNotNull(report.files());
                 assertEquals(1, report.files().size());
@@ -701,8 +678,6 @@ public class DownloadFileTest extends BaseTest {
 
     @Test
     void downloadLargeFile() throws Throwable {
-        DownloadingFilesReportWorker reportWorker = new DownloadingFilesReportWorker(holder);
-
         int memorySize = 64 * 1024 * 1024;
         int fileLength = 3 * memorySize;
 
@@ -720,8 +695,9 @@ public class DownloadFileTest extends BaseTest {
             response.headers().set(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
             ctx.write(response);
 
+            // flushing every chunk, so the download starts without waiting for the whole file to be encoded
             for (int chunkNo = 0; chunkNo < 6; chunkNo++) {
-                ctx.write(new DefaultHttpContent(Unpooled.wrappedBuffer(chunk)));
+                ctx.writeAndFlush(new DefaultHttpContent(Unpooled.wrappedBuffer(chunk)));
             }
 
             ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT)
@@ -731,21 +707,18 @@ public class DownloadFileTest extends BaseTest {
             WebClient webClient = loggedAdminWebClient();
 
             webClient.downloadFile("http://127.0.0.1:18081/example-file.txt", "file.txt", null);
-            DownloadFileDTO file = webClient.parseDownloadFile(1);
+            // the file server competes for the CPU with the downloader, while it encodes the chunks
+            DownloadFileDTO file = webClient.parseDownloadFile(1, 2000);
             assertEquals("file.txt", file.name());
             assertEquals(DownloadingFileStatus.DOWNLOADING, file.status());
 
-            assertWithReties(20, 200, () -> {
-                webClient.reset();
-
-                reportWorker.run();
-                FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
-                assertNotNull(report.files());
-                assertEquals(1, report.files().size());
-                DownloadFileDTO reportedFile = report.files().getFirst();
-                assertEquals("file.txt", reportedFile.name());
-                assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
-            });
+            // the completion is pushed right away
+            FilesHistoryReportDTO report = webClient.awaitFilesHistoryReport(
+                    r -> r.files().getFirst().status() == DownloadingFileStatus.DOWNLOADED);
+            assertEquals(1, report.files().size());
+            DownloadFileDTO reportedFile = report.files().getFirst();
+            assertEquals("file.txt", reportedFile.name());
+            assertEquals(DownloadingFileStatus.DOWNLOADED, reportedFile.status());
 
             Path path = Path.of(holder.serverProperties.getDownloadFolder(), "file.txt");
             assertEquals(fileLength, path.toFile().length());
@@ -0,0 +1,452 @@
+package io.remotedownloader;
+
+import io.remotedownloader.dao.ChangeFeed;
+import io.remotedownloader.dao.ProgressTable;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.model.FileChangeType;
+import io.remotedownloader.model.dto.DownloadFileDTO;
+import io.remotedownloader.model.dto.Error;
+import io.remotedownloader.model.dto.FileChangeDTO;
+import io.remotedownloader.model.dto.FilesAggregateDTO;
+import io.remotedownloader.model.dto.FilesDeltaReportDTO;
+import io.remotedownloader.model.dto.FilesHistoryReportDTO;
+import io.remotedownloader.model.dto.FilesStatisticsDTO;
+import io.remotedownloader.model.dto.GetChangesResponseDTO;
+import io.remotedownloader.model.dto.LoginRequestDTO;
+import io.remotedownloader.model.dto.Page;
+import io.remotedownloader.model.dto.StatisticsResponseDTO;
+import io.remotedownloader.protocol.PayloadFormat;
+import io.remotedownloader.util.WebClient;
+import io.remotedownloader.worker.DownloadingFilesReportWorker;
+import io.remotedownloader.worker.RetentionWorker;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static io.remotedownloader.util.WebClient.loggedAdminWebClient;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FilesHistoryTest extends BaseTest {
+    @Test
+    void pageHistoryWithCursor() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            holder.filesStorageDao.addFile(downloadingFile("file-" + i, i));
+        }
+        // files created at the same time are ordered by id
+        holder.filesStorageDao.addFile(downloadingFile("file-3b", 3));
+
+        WebClient webClient = loggedAdminWebClient();
+        Page<DownloadFileDTO> page = webClient.getFiles(0, 2).parseFilesPage(1);
+        assertEquals(List.of("file-4", "file-3"), ids(page));
+        assertEquals(6, page.totalElements());
+        assertNotNull(page.nextCursor());
+
+        // the page stays stable, even if the files before the cursor are changed
+        holder.filesStorageDao.deleteById(holder.filesStorageDao.getById("file-4"));
+        holder.filesStorageDao.updateFile(holder.filesStorageDao.getById("file-3")
+                .commitBytes(DownloadingFileStatus.ERROR, 10));
+        holder.filesStorageDao.addFile(downloadingFile("file-5", 5));
+
+        page = webClient.getFiles(page.nextCursor(), 2).parseFilesPage(2);
+        assertEquals(List.of("file-3b", "file-2"), ids(page));
+        assertEquals(6, page.totalElements());
+
+        page = webClient.getFiles(page.nextCursor(), 2).parseFilesPage(3);
+        assertEquals(List.of("file-1", "file-0"), ids(page));
+
+        page = webClient.getFiles(page.nextCursor(), 2).parseFilesPage(4);
+        assertEquals(List.of(), ids(page));
+        assertNull(page.nextCursor());
+
+        webClient.getFiles("invalid", 2);
+        webClient.verifyError(5, Error.ErrorTypes.VALIDATION, "Cursor is invalid.");
+    }
+
+    @Test
+    void pageArchivedHistoryWithCursor() throws Exception {
+        holder.serverProperties.setProperty("retention.max.files.per.user", "2");
+        try {
+            for (int i = 0; i < 5; i++) {
+                holder.filesStorageDao.addFile(downloadingFile("file-" + i, i));
+            }
+            new RetentionWorker(holder).run();
+        } finally {
+            holder.serverProperties.remove("retention.max.files.per.user");
+        }
+
+        WebClient webClient = loggedAdminWebClient();
+        Page<DownloadFileDTO> page = webClient.getFiles(0, 3).parseFilesPage(1);
+        assertEquals(List.of("file-4", "file-3", "file-2"), ids(page));
+        assertEquals(5, page.totalElements());
+
+        page = webClient.getFiles(page.nextCursor(), 3).parseFilesPage(2);
+        assertEquals(List.of("file-1", "file-0"), ids(page));
+        assertEquals(5, page.totalElements());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void replyNotModifiedForSameVersion() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            holder.filesStorageDao.addFile(downloadingFile("file-" + i, i));
+        }
+
+        WebClient webClient = loggedAdminWebClient();
+        Page<DownloadFileDTO> page = webClient.getFiles(0, 2).parseFilesPage(1);
+        assertEquals(List.of("file-2", "file-1"), ids(page));
+        long version = page.version();
+
+        webClient.getFiles(0, 2, version).verifyNotModified(2);
+
+        // the same page is served from the cache
+        assertEquals(page.version(), webClient.getFiles(0, 2).parseFilesPage(3).version());
+
+        holder.filesStorageDao.updateFile(holder.filesStorageDao.getById("file-1")
+                .commitBytes(DownloadingFileStatus.ERROR, 10));
+        page = webClient.getFiles(0, 2, version).parseFilesPage(4);
+        assertEquals(DownloadingFileStatus.ERROR, page.content()[1].status());
+        assertTrue(page.version() > version);
+
+        // the live progress doesn't change the version, so the page with downloading files is always sent
+        holder.filesStorageDao.updateFile(holder.filesStorageDao.getById("file-2")
+                .commitBytes(DownloadingFileStatus.DOWNLOADING, 10));
+        page = webClient.getFiles(0, 2).parseFilesPage(5);
+        assertNull(page.version());
+        version = webClient.getFiles(1, 2).parseFilesPage(6).version();
+        webClient.getFiles(1, 2, version).verifyNotModified(7);
+        assertEquals(List.of("file-2", "file-1"), ids(webClient.getFiles(0, 2, version).parseFilesPage(8)));
+    }
+
+    @Test
+    void readChangesAfterSequence() throws Exception {
+        WebClient webClient = loggedAdminWebClient();
+        GetChangesResponseDTO changes = webClient.getChanges(null, 10).parseChanges(1);
+        assertEquals(List.of(), changes.changes());
+        long position = changes.lastSequence();
+
+        holder.filesStorageDao.addFile(downloadingFile("file-1", 1));
+        holder.filesStorageDao.addFile(downloadingFile("file-2", 2));
+        holder.filesStorageDao.updateFile(holder.filesStorageDao.getById("file-1")
+                .commitBytes(DownloadingFileStatus.ERROR, 10));
+        holder.filesStorageDao.deleteById(holder.filesStorageDao.getById("file-2"));
+        // every user has its own feed, so the changes of other users don't take the positions
+        holder.filesStorageDao.addFile(new DownloadingFile("other-file", "other-file.txt", null,
+                "http://127.0.0.1:18081/other-file", "other", DownloadingFileStatus.DOWNLOADED, 100, 100, 5, 5));
+
+        // repeated changes of a file are merged
+        changes = webClient.getChanges(position, 10).parseChanges(2);
+        assertEquals(2, changes.changes().size());
+        FileChangeDTO created = changes.changes().get(0);
+        assertEquals(FileChangeType.CREATED, created.type());
+        assertEquals(DownloadingFileStatus.ERROR, created.file().status());
+        FileChangeDTO deleted = changes.changes().get(1);
+        assertEquals(FileChangeType.DELETED, deleted.type());
+        assertEquals("file-2", deleted.fileId());
+        assertNull(deleted.file());
+        assertEquals(position + 4, changes.lastSequence());
+        assertFalse(changes.hasMore());
+
+        changes = webClient.getChanges(position, 1).parseChanges(3);
+        assertEquals(1, changes.changes().size());
+        assertEquals(position + 1, changes.lastSequence());
+        assertTrue(changes.hasMore());
+
+        changes = webClient.getChanges(position + 4, 10).parseChanges(4);
+        assertEquals(List.of(), changes.changes());
+        assertFalse(changes.reset());
+
+        // the position is not kept, so the history should be read again
+        changes = webClient.getChanges(0L, 10).parseChanges(5);
+        assertTrue(changes.reset());
+        assertEquals(position + 4, changes.lastSequence());
+    }
+
+    @Test
+    void keepChangesWhileFeedGrows() {
+        String username = adminUser.username();
+        long position = holder.filesStorageDao.getLastChangeSequence(username);
+        for (int i = 0; i < 40; i++) {
+            holder.filesStorageDao.addFile(downloadingFile("file-" + i, i));
+        }
+        holder.filesStorageDao.deleteById(holder.filesStorageDao.getById("file-0"));
+
+        // the feed has grown from its initial size, so none of the changes are lost
+        ChangeFeed.Changes changes = holder.filesStorageDao.readChanges(username, position, 100);
+        assertNotNull(changes);
+        assertEquals(40, changes.changes().size());
+        assertEquals(position + 41, changes.lastSequence());
+        assertEquals("file-1", changes.changes().getFirst().file().id);
+
+        // the deleted file is not kept by the feed
+        ChangeFeed.Change deleted = changes.changes().getLast();
+        assertEquals(FileChangeType.DELETED, deleted.type());
+        assertEquals("file-0", deleted.fileId());
+        assertNull(deleted.file());
+    }
+
+    @Test
+    void reportProgressDeltas() throws Exception {
+        holder.filesStorageDao.addFile(downloadingFile("file-1", 1).commitBytes(DownloadingFileStatus.DOWNLOADING, 10));
+        ProgressTable progressTable = holder.filesStorageDao.getProgressTable();
+        int slot = progressTable.getSlot("file-1");
+
+        WebClient webClient = new WebClient();
+        webClient.login(new LoginRequestDTO(adminUser.username(), adminUser.encryptedPassword(), true, true, 0))
+                .verifyOk(1);
+        DownloadingFilesReportWorker reportWorker = new DownloadingFilesReportWorker(holder);
+
+        // the first report carries the metadata of the file
+        webClient.reset();
+        reportWorker.reportAll();
+        FilesDeltaReportDTO report = webClient.parseFilesDeltaReport(0);
+        assertEquals(1, report.files().size());
+        int handle = report.files().getFirst().handle();
+        assertEquals("file-1.txt", report.files().getFirst().file().name());
+        assertEquals(0, report.progress().length);
+        assertNotNull(report.statistics());
+
+        // and the following ones carry only the changed progress
+        progressTable.setDownloadedBytes(slot, "file-1", 20);
+        progressTable.setSpeedBytesPerSecond(slot, "file-1", 5);
+        webClient.reset();
+        reportWorker.reportAll();
+        report = webClient.parseFilesDeltaReport(0);
+        assertEquals(List.of(), report.files());
+        assertArrayEquals(new long[]{handle, 20, 5}, report.progress());
+
+        // the transition is pushed without waiting for the tick
+        webClient.reset();
+        holder.filesStorageDao.updateFile(holder.filesStorageDao.getById("file-1")
+                .commitBytes(DownloadingFileStatus.PAUSED, 20));
+        report = webClient.parseFilesDeltaReport(0);
+        assertEquals(1, report.files().size());
+        assertEquals(0, report.files().getFirst().handle());
+        assertEquals(DownloadingFileStatus.PAUSED, report.files().getFirst().file().status());
+        assertEquals(0, report.progress().length);
+
+        // and the ticks don't repeat it
+        webClient.reset();
+        reportWorker.reportAll();
+        webClient.verifyNoMessage(0);
+    }
+
+    @Test
+    void reportAtSubscriptionInterval() throws Exception {
+        holder.filesStorageDao.addFile(downloadingFile("file-1", 1).commitBytes(DownloadingFileStatus.DOWNLOADING, 10));
+
+        WebClient webClient = loggedAdminWebClient();
+        webClient.subscribeReports(false, 60_000).verifyOk(1);
+        DownloadingFilesReportWorker reportWorker = new DownloadingFilesReportWorker(holder);
+
+        // the first report is sent right away
+        webClient.reset();
+        reportWorker.reportDue();
+        assertEquals(1, webClient.parseFilesHistoryReport(0).files().size());
+
+        // and the next one only after the interval
+        webClient.reset();
+        reportWorker.reportDue();
+        webClient.verifyNoMessage(0);
+
+        webClient.subscribeReports(false, 10);
+        webClient.verifyError(1, Error.ErrorTypes.VALIDATION, "Report interval should be more than 100.");
+    }
+
+    @Test
+    void shareReportBetweenSessionsOfUser() throws Exception {
+        holder.filesStorageDao.addFile(downloadingFile("file-1", 1).commitBytes(DownloadingFileStatus.DOWNLOADING, 10));
+
+        WebClient firstClient = loggedAdminWebClient();
+        WebClient secondClient = loggedAdminWebClient();
+        new DownloadingFilesReportWorker(holder).reportAll();
+
+        FilesHistoryReportDTO firstReport = firstClient.parseFilesHistoryReport(0);
+        FilesHistoryReportDTO secondReport = secondClient.parseFilesHistoryReport(0);
+        assertEquals(1, firstReport.files().size());
+        assertEquals(firstReport, secondReport);
+    }
+
+    @Test
+    void reportOnlyVisibleFiles() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            holder.filesStorageDao.addFile(downloadingFile("file-" + i, i)
+                    .commitBytes(DownloadingFileStatus.DOWNLOADING, 10));
+        }
+
+        WebClient webClient = loggedAdminWebClient();
+        webClient.subscribeFiles(List.of("file-1"), 0, 0).verifyOk(1);
+        DownloadingFilesReportWorker reportWorker = new DownloadingFilesReportWorker(holder);
+
+        // the hidden files are reported only as an aggregate
+        webClient.reset();
+        reportWorker.reportAll();
+        FilesHistoryReportDTO report = webClient.parseFilesHistoryReport(0);
+        assertEquals(List.of("file-1"), report.files().stream().map(DownloadFileDTO::id).toList());
+        assertEquals(new FilesAggregateDTO(2, 200, 20, 0), report.others());
+
+        // the page of the history adds the newest file
+        webClient.reset();
+        webClient.subscribeFiles(null, 0, 1).verifyOk(1);
+        reportWorker.reportAll();
+        report = webClient.parseFilesHistoryReport(0);
+        assertEquals(Set.of("file-1", "file-3"),
+                report.files().stream().map(DownloadFileDTO::id).collect(Collectors.toSet()));
+        assertEquals(1, report.others().filesCount());
+
+        // transitions of the hidden files are not pushed
+        webClient.reset();
+        holder.filesStorageDao.updateFile(holder.filesStorageDao.getById("file-2")
+                .commitBytes(DownloadingFileStatus.PAUSED, 10));
+        holder.filesStorageDao.updateFile(holder.filesStorageDao.getById("file-3")
+                .commitBytes(DownloadingFileStatus.PAUSED, 10));
+        report = webClient.parseFilesHistoryReport(0);
+        assertEquals(List.of("file-3"), report.files().stream().map(DownloadFileDTO::id).toList());
+
+        // once no files are visible, all of them are reported again
+        webClient.reset();
+        webClient.unsubscribeFiles(List.of("file-1"), true).verifyOk(1);
+        reportWorker.reportAll();
+        report = webClient.parseFilesHistoryReport(0);
+        assertEquals(1, report.files().size());
+        assertNull(report.others());
+
+        webClient.subscribeFiles(null, 0, 200);
+        webClient.verifyError(2, Error.ErrorTypes.VALIDATION, "Page size should be less than 100.");
+    }
+
+    @Test
+    void writePayloadsInNegotiatedFormat() throws Exception {
+        holder.filesStorageDao.addFile(downloadingFile("file-1", 1));
+
+        WebClient webClient = new WebClient();
+        webClient.login(new LoginRequestDTO(
+                        adminUser.username(), adminUser.encryptedPassword(), true, false, 0, PayloadFormat.SMILE))
+                .verifyOk(1);
+        webClient.reset();
+        webClient.usePayloadFormat(PayloadFormat.SMILE);
+
+        // the second page is cached as JSON and converted
+        webClient.getFiles(0, 10).getFiles(0, 10);
+        assertEquals(List.of("file-1"), ids(webClient.parseFilesPage(1)));
+        assertEquals(List.of("file-1"), ids(webClient.parseFilesPage(2)));
+        assertTrue(webClient.isBinaryPayload(1));
+        assertTrue(webClient.isBinaryPayload(2));
+
+        holder.filesStorageDao.addFile(downloadingFile("file-2", 2).commitBytes(DownloadingFileStatus.DOWNLOADING, 10));
+        FilesHistoryReportDTO report = webClient.awaitFilesHistoryReport(r -> true);
+        assertEquals("file-2", report.files().getFirst().id());
+
+        // JSON is still accepted
+        webClient.reset();
+        webClient.usePayloadFormat(PayloadFormat.JSON);
+        webClient.getStatistics();
+        assertNotNull(webClient.parseStatistics(1).user());
+    }
+
+    @Test
+    void searchFilesByNameUrlAndStatus() throws Exception {
+        holder.filesStorageDao.addFile(downloadingFile("Report-2024", 1));
+        holder.filesStorageDao.addFile(downloadingFile("report-2025", 2));
+        holder.filesStorageDao.addFile(downloadingFile("movie", 3));
+        holder.filesStorageDao.addFile(downloadingFile("old-report", 4));
+        holder.filesStorageDao.updateFile(holder.filesStorageDao.getById("report-2025")
+                .commitBytes(DownloadingFileStatus.ERROR, 10));
+        holder.filesStorageDao.deleteById(holder.filesStorageDao.getById("old-report"));
+
+        WebClient webClient = loggedAdminWebClient();
+        Page<DownloadFileDTO> page = webClient.searchFiles("REPORT", null, 0, 10).parseFilesPage(1);
+        assertEquals(List.of("report-2025", "Report-2024"), ids(page));
+        assertEquals(2, page.totalElements());
+
+        page = webClient.searchFiles("report", DownloadingFileStatus.DOWNLOADED, 0, 10).parseFilesPage(2);
+        assertEquals(List.of("Report-2024"), ids(page));
+
+        // the query is matched against the URL as well
+        page = webClient.searchFiles("18081/mov", null, 0, 10).parseFilesPage(3);
+        assertEquals(List.of("movie"), ids(page));
+
+        page = webClient.searchFiles("2024.txt", null, 0, 10).parseFilesPage(4);
+        assertEquals(List.of("Report-2024"), ids(page));
+
+        page = webClient.searchFiles("rt-", null, 0, 10).parseFilesPage(5);
+        assertEquals(List.of("report-2025", "Report-2024"), ids(page));
+
+        page = webClient.searchFiles(null, null, 1, 1).parseFilesPage(6);
+        assertEquals(List.of("report-2025"), ids(page));
+        assertEquals(3, page.totalElements());
+
+        page = webClient.searchFiles("unknown", null, 0, 10).parseFilesPage(7);
+        assertEquals(List.of(), ids(page));
+        assertEquals(0, page.totalElements());
+
+        page = webClient.searchFiles(null, DownloadingFileStatus.DOWNLOADED, 0, 10).parseFilesPage(8);
+        assertEquals(List.of("movie", "Report-2024"), ids(page));
+        assertEquals(2, page.totalElements());
+
+        // short queries are matched only up to the first file after the page
+        page = webClient.searchFiles("e", null, 0, 1).parseFilesPage(9);
+        assertEquals(List.of("movie"), ids(page));
+        assertEquals(2, page.totalElements());
+
+        page = webClient.searchFiles("e", null, 2, 1).parseFilesPage(10);
+        assertEquals(List.of("Report-2024"), ids(page));
+        assertEquals(3, page.totalElements());
+    }
+
+    @Test
+    void maintainStatisticsOnChanges() throws Exception {
+        holder.filesStorageDao.addFile(downloadingFile("file-1", 1));
+        holder.filesStorageDao.addFile(downloadingFile("file-2", 2));
+        holder.filesStorageDao.addFile(downloadingFile("file-3", 3));
+        holder.filesStorageDao.updateFile(holder.filesStorageDao.getById("file-2")
+                .commitBytes(DownloadingFileStatus.ERROR, 10));
+        holder.filesStorageDao.updateFile(holder.filesStorageDao.getById("file-3")
+                .commitBytes(DownloadingFileStatus.DOWNLOADING, 20));
+        holder.filesStorageDao.deleteById(holder.filesStorageDao.getById("file-1"));
+
+        // live progress of the downloading file is counted instead of the committed one
+        ProgressTable progressTable = holder.filesStorageDao.getProgressTable();
+        int slot = progressTable.getSlot("file-3");
+        progressTable.setDownloadedBytes(slot, "file-3", 30);
+        progressTable.setSpeedBytesPerSecond(slot, "file-3", 5);
+
+        WebClient webClient = loggedAdminWebClient();
+        StatisticsResponseDTO statistics = webClient.getStatistics().parseStatistics(1);
+        FilesStatisticsDTO userStatistics = statistics.user();
+        assertEquals(0, userStatistics.filesCountByStatus().get(DownloadingFileStatus.DOWNLOADED));
+        assertEquals(1, userStatistics.filesCountByStatus().get(DownloadingFileStatus.ERROR));
+        assertEquals(1, userStatistics.filesCountByStatus().get(DownloadingFileStatus.DOWNLOADING));
+        assertEquals(40, userStatistics.downloadedBytes());
+        assertEquals(5, userStatistics.speedBytesPerSecond());
+        assertEquals(userStatistics, statistics.server());
+        assertNotNull(statistics.sessions());
+    }
+
+    private static List<String> ids(Page<DownloadFileDTO> page) {
+        return Arrays.stream(page.content()).map(DownloadFileDTO::id).toList();
+    }
+
+    private static DownloadingFile downloadingFile(String id, long createdAt) {
+        return new DownloadingFile(
+                id,
+                id + ".txt",
+                null,
+                "http://127.0.0.1:18081/" + id,
+                adminUser.username(),
+                DownloadingFileStatus.DOWNLOADED,
+                100,
+                100,
+                createdAt,
+                createdAt
+        );
+    }
+}
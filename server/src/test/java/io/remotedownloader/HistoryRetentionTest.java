@@ -0,0 +1,208 @@
+package io.remotedownloader;
+
+import io.remotedownloader.dao.HistoryArchiveDao;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.model.dto.DownloadFileDTO;
+import io.remotedownloader.model.dto.Error;
+import io.remotedownloader.model.dto.Page;
+import io.remotedownloader.util.WebClient;
+import io.remotedownloader.worker.RetentionWorker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static io.remotedownloader.util.WebClient.loggedAdminWebClient;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistoryRetentionTest extends BaseTest {
+    @AfterEach
+    void resetRetention() {
+        holder.serverProperties.remove("retention.max.files.per.user");
+        holder.serverProperties.remove("retention.max.age.days");
+        holder.serverProperties.remove("retention.statuses");
+    }
+
+    @Test
+    void archiveFilesOverTheCountLimit() throws Exception {
+        holder.serverProperties.setProperty("retention.max.files.per.user", "3");
+        for (int i = 0; i < 6; i++) {
+            holder.filesStorageDao.addFile(downloadingFile("file-" + i, DownloadingFileStatus.DOWNLOADED, i));
+        }
+        holder.filesStorageDao.addFile(downloadingFile("file-paused", DownloadingFileStatus.PAUSED, -1));
+
+        new RetentionWorker(holder).run();
+
+        assertEquals(4, holder.filesStorageDao.getUserFiles(adminUser.username()).size());
+        assertNull(holder.filesStorageDao.getById("file-0"));
+        assertNotNull(holder.filesStorageDao.getById("file-paused"));
+
+        WebClient webClient = loggedAdminWebClient();
+
+        // archived files are read only when the page reaches them
+        Page<DownloadFileDTO> page = webClient.getFiles(0, 2).parseFilesPage(1);
+        assertEquals(List.of("file-5", "file-4"), ids(page));
+        assertEquals(7, page.totalElements());
+
+        page = webClient.getFiles(2, 4).parseFilesPage(2);
+        assertEquals(List.of("file-3", "file-2", "file-1", "file-0"), ids(page));
+        assertEquals(7, page.totalElements());
+
+        page = webClient.getFiles(6, 4).parseFilesPage(3);
+        assertEquals(List.of("file-paused"), ids(page));
+
+        // the summary of the archive is known now, so the first page is served from memory
+        page = webClient.getFiles(0, 3).parseFilesPage(4);
+        assertEquals(List.of("file-5", "file-4", "file-3"), ids(page));
+        assertEquals(7, page.totalElements());
+    }
+
+    @Test
+    void archiveFilesOlderThanTheRetentionAge() throws Exception {
+        holder.serverProperties.setProperty("retention.max.age.days", "7");
+        long now = System.currentTimeMillis();
+        long expired = now - TimeUnit.DAYS.toMillis(8);
+        holder.filesStorageDao.addFile(downloadingFile("file-old", DownloadingFileStatus.DOWNLOADED, expired));
+        holder.filesStorageDao.addFile(downloadingFile("file-old-error", DownloadingFileStatus.ERROR, expired));
+        holder.filesStorageDao.addFile(downloadingFile("file-old-paused", DownloadingFileStatus.PAUSED, expired));
+        holder.filesStorageDao.addFile(downloadingFile("file-new", DownloadingFileStatus.DOWNLOADED, now));
+
+        new RetentionWorker(holder).run();
+
+        List<String> hotFiles = holder.filesStorageDao.getUserFiles(adminUser.username()).stream()
+                .map(file -> file.id)
+                .sorted()
+                .toList();
+        assertEquals(List.of("file-new", "file-old-paused"), hotFiles);
+
+        WebClient webClient = loggedAdminWebClient();
+        Page<DownloadFileDTO> page = webClient.getFiles(0, 10).parseFilesPage(1);
+        assertEquals(4, page.totalElements());
+        assertEquals("file-new", page.content()[0].id());
+    }
+
+    @Test
+    void deleteArchivedFiles() throws Exception {
+        holder.serverProperties.setProperty("retention.max.files.per.user", "2");
+        for (int i = 0; i < 5; i++) {
+            holder.filesStorageDao.addFile(downloadingFile("file-" + i, DownloadingFileStatus.DOWNLOADED, i));
+        }
+        new RetentionWorker(holder).run();
+
+        WebClient webClient = loggedAdminWebClient();
+        webClient.deleteFile("file-1").verifyOk(1);
+        webClient.deleteFile("file-1")
+                .verifyError(2, Error.ErrorTypes.NOT_FOUND, "File is not found.");
+
+        Page<DownloadFileDTO> page = webClient.getFiles(0, 10).parseFilesPage(3);
+        assertEquals(List.of("file-4", "file-3", "file-2", "file-0"), ids(page));
+        assertEquals(4, page.totalElements());
+
+        // the page is read only up to its last file, which is in memory
+        page = webClient.getFiles(1, 1).parseFilesPage(4);
+        assertEquals(List.of("file-3"), ids(page));
+        assertEquals(4, page.totalElements());
+
+        // the tombstone is persisted
+        HistoryArchiveDao reopened = new HistoryArchiveDao(Path.of(holder.serverProperties.getHistoryArchiveFolder()));
+        HistoryArchiveDao.SegmentIndex index = reopened.getIndex(adminUser.username());
+        assertEquals(2, index.size());
+        assertNull(index.get("file-1"));
+        assertEquals("file-0", reopened.getFile(adminUser.username(), "file-0").id);
+    }
+
+    @Test
+    void stopAndResumeArchivedFiles() throws Exception {
+        holder.serverProperties.setProperty("retention.max.files.per.user", "1");
+        holder.serverProperties.setProperty("retention.statuses", "DOWNLOADED,PAUSED");
+        holder.filesStorageDao.addFile(downloadingFile("file-downloaded", DownloadingFileStatus.DOWNLOADED, 0));
+        holder.filesStorageDao.addFile(downloadingFile("file-paused", DownloadingFileStatus.PAUSED, 1));
+        holder.filesStorageDao.addFile(downloadingFile("file-new", DownloadingFileStatus.DOWNLOADED, 2));
+        new RetentionWorker(holder).run();
+        assertNull(holder.filesStorageDao.getById("file-paused"));
+
+        WebClient webClient = loggedAdminWebClient();
+        webClient.stopDownloading("file-downloaded")
+                .verifyError(1, Error.ErrorTypes.FAILED_TO_DOWNLOAD, "File status should be 'Downloading'.");
+        webClient.resumeDownloading("file-downloaded")
+                .verifyError(2, Error.ErrorTypes.FAILED_TO_DOWNLOAD, "File status should be 'Paused'.");
+        webClient.resumeDownloading("file-unknown")
+                .verifyError(3, Error.ErrorTypes.NOT_FOUND, "File is not found.");
+
+        // the paused file is moved back to memory to be resumed
+        DownloadingFile restoredFile = holder.filesStorageDao.restoreArchivedFile(adminUser.username(), "file-paused");
+        assertEquals(DownloadingFileStatus.PAUSED, restoredFile.status);
+        assertEquals(restoredFile, holder.filesStorageDao.getById("file-paused"));
+        assertNull(holder.historyArchiveDao.getFile(adminUser.username(), "file-paused"));
+
+        Page<DownloadFileDTO> page = webClient.getFiles(0, 10).parseFilesPage(4);
+        assertEquals(List.of("file-new", "file-paused", "file-downloaded"), ids(page));
+        assertEquals(3, page.totalElements());
+    }
+
+    @Test
+    void compactSegmentOfDeletedFiles() throws Exception {
+        String username = adminUser.username();
+        List<DownloadingFile> files = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            files.add(downloadingFile("file-" + i, DownloadingFileStatus.DOWNLOADED, i));
+        }
+        holder.historyArchiveDao.archive(username, files);
+        HistoryArchiveDao.SegmentIndex index = holder.historyArchiveDao.getIndex(username);
+        HistoryArchiveDao.RecordPosition position = index.get("file-250");
+        Path archiveFolder = Path.of(holder.serverProperties.getHistoryArchiveFolder());
+        long segmentSize = segmentsSize(archiveFolder);
+
+        List<String> deletedIds = files.subList(0, 200).stream().map(file -> file.id).toList();
+        assertEquals(deletedIds, holder.historyArchiveDao.delete(username, deletedIds));
+
+        // the most of the records are dead, so only the live ones are kept
+        assertTrue(segmentsSize(archiveFolder) < segmentSize / 2);
+        assertEquals(100, holder.historyArchiveDao.getIndex(username).size());
+        assertNull(holder.historyArchiveDao.getFile(username, "file-0"));
+        assertEquals("file-299", holder.historyArchiveDao.getFile(username, "file-299").id);
+
+        // the position from the index before the compaction is followed to the moved record
+        assertEquals(List.of(files.get(250)), holder.historyArchiveDao.readFiles(username, List.of(position)));
+
+        HistoryArchiveDao reopened = new HistoryArchiveDao(archiveFolder);
+        assertEquals(100, reopened.getIndex(username).size());
+        assertEquals("file-250", reopened.getFile(username, "file-250").id);
+    }
+
+    private static long segmentsSize(Path archiveFolder) throws IOException {
+        try (Stream<Path> segments = Files.list(archiveFolder)) {
+            return segments.mapToLong(segment -> segment.toFile().length()).sum();
+        }
+    }
+
+    private static List<String> ids(Page<DownloadFileDTO> page) {
+        return Arrays.stream(page.content()).map(DownloadFileDTO::id).toList();
+    }
+
+    private static DownloadingFile downloadingFile(String id, DownloadingFileStatus status, long createdAt) {
+        return new DownloadingFile(
+                id,
+                id + ".txt",
+                null,
+                "http://127.0.0.1:18081/" + id,
+                adminUser.username(),
+                status,
+                100,
+                100,
+                createdAt,
+                createdAt
+        );
+    }
+}
@@ -0,0 +1,80 @@
+package io.remotedownloader;
+
+import io.remotedownloader.dao.KeyValueStorageDao;
+import io.remotedownloader.dao.ThreadPoolsHolder;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.model.StorageModel;
+import io.remotedownloader.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class KeyValueStorageDaoTest {
+    private Path storageFile;
+    private ThreadPoolsHolder threadPoolsHolder;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.storageFile = Files.createTempFile("remote-downloader-", "-storage.mv");
+        this.threadPoolsHolder = new ThreadPoolsHolder();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        threadPoolsHolder.close();
+        Files.deleteIfExists(storageFile);
+    }
+
+    @Test
+    void persistRecordsBetweenRestarts() {
+        KeyValueStorageDao storageDao = createStorageDao(threadPoolsHolder);
+        DownloadingFile file = downloadingFile("file-1", "admin", DownloadingFileStatus.DOWNLOADING, 0);
+        storageDao.saveRecord(file);
+        storageDao.saveRecord(new User("user", "password", false, 0));
+        storageDao.saveProgress(file.commitBytes(DownloadingFileStatus.PAUSED, 30));
+        DownloadingFile deletedFile = downloadingFile("file-2", "admin", DownloadingFileStatus.DOWNLOADING, 1);
+        storageDao.saveRecord(deletedFile);
+        storageDao.deleteRecord(deletedFile);
+        threadPoolsHolder.close();
+        storageDao.close();
+
+        KeyValueStorageDao reloaded = createStorageDao(new ThreadPoolsHolder());
+        Map<String, DownloadingFile> files = reloaded.readAllRecords(StorageModel.DOWNLOADING_FILE);
+        assertEquals(1, files.size());
+        assertEquals(DownloadingFileStatus.PAUSED, files.get("file-1").status);
+        assertEquals(30, files.get("file-1").commitedDownloadedBytes);
+        assertNull(files.get("file-2"));
+
+        Map<String, User> users = reloaded.readAllRecords(StorageModel.USER);
+        assertEquals("password", users.get("user").encryptedPassword());
+        reloaded.close();
+    }
+
+    private KeyValueStorageDao createStorageDao(ThreadPoolsHolder threadPoolsHolder) {
+        return new KeyValueStorageDao(storageFile, threadPoolsHolder.storageThreadPoolExecutor, 0, false);
+    }
+
+    private static DownloadingFile downloadingFile(String id, String owner, DownloadingFileStatus status, long createdAt) {
+        return new DownloadingFile(
+                id,
+                id + ".txt",
+                null,
+                "http://127.0.0.1:18081/" + id,
+                owner,
+                status,
+                100,
+                0,
+                createdAt,
+                createdAt
+        );
+    }
+}
@@ -0,0 +1,405 @@
+package io.remotedownloader;
+
+import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.HistoryArchiveDao;
+import io.remotedownloader.dao.LogStorageDao;
+import io.remotedownloader.dao.ProgressTable;
+import io.remotedownloader.dao.StorageDao;
+import io.remotedownloader.dao.ThreadPoolsHolder;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.model.StorageModel;
+import io.remotedownloader.model.User;
+import io.remotedownloader.protocol.ErrorException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LogStorageDaoTest {
+    private Path storageFile;
+    private ServerProperties properties;
+    private ThreadPoolsHolder threadPoolsHolder;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.storageFile = Files.createTempFile("remote-downloader-", "-storage");
+        this.properties = new ServerProperties();
+        this.threadPoolsHolder = new ThreadPoolsHolder();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        threadPoolsHolder.close();
+        Files.deleteIfExists(storageFile);
+    }
+
+    @Test
+    void coalesceUpdatesOfTheSameRecord() throws IOException {
+        LogStorageDao storageDao = createStorageDao(threadPoolsHolder);
+
+        DownloadingFile file = downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0);
+        for (int i = 1; i <= 100; i++) {
+            storageDao.saveRecord(file.commitBytes(DownloadingFileStatus.DOWNLOADING, i));
+        }
+        storageDao.saveRecord(file.commitBytes(DownloadingFileStatus.DOWNLOADED, 101));
+        threadPoolsHolder.close();
+
+        List<String> lines = Files.readAllLines(storageFile);
+        assertEquals(1, lines.size());
+        assertEquals(101, storageDao.getSubmittedActionsCount());
+        assertEquals(1, storageDao.getWrittenActionsCount());
+        assertEquals(101.0, storageDao.getCoalescingRatio());
+
+        Map<String, DownloadingFile> files = createStorageDao(new ThreadPoolsHolder())
+                .readAllRecords(StorageModel.DOWNLOADING_FILE);
+        assertEquals(1, files.size());
+        assertEquals(DownloadingFileStatus.DOWNLOADED, files.get("file-1").status);
+        assertEquals(101, files.get("file-1").commitedDownloadedBytes);
+    }
+
+    @Test
+    void keepLatestActionBetweenSaveAndDelete() {
+        LogStorageDao storageDao = createStorageDao(threadPoolsHolder);
+
+        storageDao.saveRecord(downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0));
+        storageDao.saveRecord(downloadingFile("file-2", DownloadingFileStatus.DOWNLOADING, 0));
+        storageDao.deleteRecord(downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0));
+        storageDao.saveRecord(new User("user", "password", false, 0));
+        storageDao.deleteRecord(downloadingFile("file-2", DownloadingFileStatus.DOWNLOADING, 0));
+        storageDao.saveRecord(downloadingFile("file-2", DownloadingFileStatus.PAUSED, 5));
+        threadPoolsHolder.close();
+
+        assertEquals(3, storageDao.getWrittenActionsCount());
+
+        LogStorageDao reloaded = createStorageDao(new ThreadPoolsHolder());
+        Map<String, DownloadingFile> files = reloaded.readAllRecords(StorageModel.DOWNLOADING_FILE);
+        assertEquals(1, files.size());
+        assertNull(files.get("file-1"));
+        assertEquals(DownloadingFileStatus.PAUSED, files.get("file-2").status);
+
+        Map<String, User> users = reloaded.readAllRecords(StorageModel.USER);
+        assertEquals(1, users.size());
+    }
+
+    @Test
+    void writeProgressDeltaForAlreadyStoredFile() throws Exception {
+        properties.setProperty("storage.coalesce.window.millis", "0");
+        LogStorageDao storageDao = createStorageDao(threadPoolsHolder);
+
+        DownloadingFile file = downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0);
+        storageDao.saveRecord(file);
+        awaitStorageThread();
+
+        file = file.commitBytes(DownloadingFileStatus.DOWNLOADING, 50);
+        storageDao.saveProgress(file);
+        awaitStorageThread();
+
+        file = file.commitBytes(DownloadingFileStatus.DOWNLOADED, 100);
+        storageDao.saveProgress(file);
+        threadPoolsHolder.close();
+
+        List<String> lines = Files.readAllLines(storageFile);
+        assertEquals(3, lines.size());
+        assertFalse(lines.get(1).contains(file.getUrl()));
+        assertFalse(lines.get(2).contains(file.getUrl()));
+
+        Map<String, DownloadingFile> files = createStorageDao(new ThreadPoolsHolder())
+                .readAllRecords(StorageModel.DOWNLOADING_FILE);
+        DownloadingFile replayedFile = files.get("file-1");
+        assertEquals(file, replayedFile);
+        assertEquals(DownloadingFileStatus.DOWNLOADED, replayedFile.status);
+        assertEquals(100, replayedFile.commitedDownloadedBytes);
+        assertEquals(file.updatedAt, replayedFile.updatedAt);
+    }
+
+    @Test
+    void foldProgressIntoPendingSave() throws IOException {
+        LogStorageDao storageDao = createStorageDao(threadPoolsHolder);
+
+        DownloadingFile file = downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0);
+        storageDao.saveRecord(file);
+        storageDao.saveProgress(file.commitBytes(DownloadingFileStatus.PAUSED, 30));
+        threadPoolsHolder.close();
+
+        List<String> lines = Files.readAllLines(storageFile);
+        assertEquals(1, lines.size());
+
+        Map<String, DownloadingFile> files = createStorageDao(new ThreadPoolsHolder())
+                .readAllRecords(StorageModel.DOWNLOADING_FILE);
+        assertEquals(DownloadingFileStatus.PAUSED, files.get("file-1").status);
+        assertEquals(30, files.get("file-1").commitedDownloadedBytes);
+    }
+
+    @Test
+    void skipCorruptedRecordsAndTruncateTornTail() throws IOException {
+        LogStorageDao storageDao = createStorageDao(threadPoolsHolder);
+        storageDao.saveRecord(downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0));
+        storageDao.saveRecord(downloadingFile("file-2", DownloadingFileStatus.DOWNLOADING, 0));
+        storageDao.saveRecord(downloadingFile("file-3", DownloadingFileStatus.DOWNLOADING, 0));
+        threadPoolsHolder.close();
+
+        List<String> lines = Files.readAllLines(storageFile);
+        assertEquals(3, lines.size());
+        String corruptedLine = lines.get(1).replace("file-2.txt", "file-X.txt");
+        String tornLine = lines.get(2).substring(0, lines.get(2).length() / 2);
+        Files.writeString(storageFile, lines.get(0) + '\n' + corruptedLine + '\n' + lines.get(2) + '\n' + tornLine);
+        long validLength = Files.size(storageFile) - tornLine.length();
+
+        LogStorageDao reloaded = createStorageDao(new ThreadPoolsHolder());
+        assertEquals(1, reloaded.getCorruptedRecordsCount());
+        assertEquals(validLength, Files.size(storageFile));
+
+        Map<String, DownloadingFile> files = reloaded.readAllRecords(StorageModel.DOWNLOADING_FILE);
+        assertEquals(2, files.size());
+        assertNotNull(files.get("file-1"));
+        assertNull(files.get("file-2"));
+        assertNotNull(files.get("file-3"));
+    }
+
+    @Test
+    void readRecordsWithoutChecksum() throws IOException {
+        Files.writeString(storageFile, """
+                {"type":"save","record":{"type":"USER","username":"user","encryptedPassword":"pwd","isAdmin":false,"createdAt":0}}
+                {"type":"save","record":{"type":"USER","username":"user2","encryptedPassword":"pwd","isAdmin":false,"createdAt":0}}
+                {"type":"delete","model":"USER","id":"user2"}
+                """);
+
+        LogStorageDao storageDao = createStorageDao(threadPoolsHolder);
+        assertEquals(0, storageDao.getCorruptedRecordsCount());
+
+        Map<String, User> users = storageDao.readAllRecords(StorageModel.USER);
+        assertEquals(1, users.size());
+        assertEquals("pwd", users.get("user").encryptedPassword());
+    }
+
+    @Test
+    void completeFutureOnceRecordIsPersisted() throws Exception {
+        LogStorageDao storageDao = createStorageDao(threadPoolsHolder);
+
+        DownloadingFile file = downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0);
+        CompletableFuture<Void> saveFuture = storageDao.saveRecord(file);
+        CompletableFuture<Void> progressFuture = storageDao.saveProgress(
+                file.commitBytes(DownloadingFileStatus.PAUSED, 10));
+
+        progressFuture.get(1, TimeUnit.SECONDS);
+        assertTrue(saveFuture.isDone());
+        assertEquals(1, Files.readAllLines(storageFile).size());
+        assertEquals(2, storageDao.getAcknowledgementLatency().getCount());
+    }
+
+    @Test
+    void failFutureWhenRecordIsNotPersisted() throws Exception {
+        LogStorageDao storageDao = createStorageDao(threadPoolsHolder);
+        Files.delete(storageFile);
+        Files.createDirectory(storageFile);
+
+        CompletableFuture<Void> future = storageDao.deleteRecord(
+                downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0));
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(ErrorException.class, exception.getCause());
+        assertEquals(0, storageDao.getAcknowledgementLatency().getCount());
+    }
+
+    @Test
+    void retryFailedBatch() throws Exception {
+        properties.setProperty("storage.coalesce.window.millis", "0");
+        LogStorageDao storageDao = createStorageDao(threadPoolsHolder);
+        Files.delete(storageFile);
+        Files.createDirectory(storageFile);
+
+        CompletableFuture<Void> future = storageDao.saveRecord(
+                downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0));
+        awaitStorageThread();
+        assertFalse(future.isDone());
+
+        Files.delete(storageFile);
+        Files.createFile(storageFile);
+        future.get(1, TimeUnit.SECONDS);
+        assertEquals(1, Files.readAllLines(storageFile).size());
+        assertEquals(1, storageDao.getAcknowledgementLatency().getCount());
+    }
+
+    @Test
+    void rollbackFilesWhichFailedToBePersisted() throws Exception {
+        properties.setProperty("storage.coalesce.window.millis", "0");
+        Path archiveFolder = Files.createTempDirectory("remote-downloader-archive-");
+        FilesStorageDao filesStorageDao = new FilesStorageDao(
+                createStorageDao(threadPoolsHolder), new HistoryArchiveDao(archiveFolder));
+
+        DownloadingFile file = downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0);
+        filesStorageDao.addFile(file).get(1, TimeUnit.SECONDS);
+
+        Files.delete(storageFile);
+        Files.createDirectory(storageFile);
+
+        CompletableFuture<Void> updateFuture = filesStorageDao.updateFile(
+                file.commitBytes(DownloadingFileStatus.PAUSED, 10));
+        CompletableFuture<Void> addFuture = filesStorageDao.addFile(
+                downloadingFile("file-2", DownloadingFileStatus.DOWNLOADING, 0));
+        assertEquals(DownloadingFileStatus.PAUSED, filesStorageDao.getById("file-1").status);
+        assertNotNull(filesStorageDao.getById("file-2"));
+
+        assertThrows(ExecutionException.class, () -> updateFuture.get(1, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> addFuture.get(1, TimeUnit.SECONDS));
+        assertSame(file, filesStorageDao.getById("file-1"));
+        assertNull(filesStorageDao.getById("file-2"));
+        assertEquals(List.of(file), List.copyOf(filesStorageDao.getUserFiles("admin")));
+
+        CompletableFuture<Void> deleteFuture = filesStorageDao.deleteById(file);
+        assertNull(filesStorageDao.getById("file-1"));
+        assertThrows(ExecutionException.class, () -> deleteFuture.get(1, TimeUnit.SECONDS));
+        assertSame(file, filesStorageDao.getById("file-1"));
+        Files.delete(archiveFolder);
+    }
+
+    @Test
+    void keepNewerProgressWhenOlderWriteFails() throws Exception {
+        Path archiveFolder = Files.createTempDirectory("remote-downloader-archive-");
+        StorageDao storageDao = mock(StorageDao.class);
+        when(storageDao.readAllRecords(StorageModel.DOWNLOADING_FILE)).thenReturn(Map.of());
+        when(storageDao.saveRecord(any())).thenReturn(CompletableFuture.completedFuture(null));
+        CompletableFuture<Void> failingWrite = new CompletableFuture<>();
+        when(storageDao.saveProgress(any()))
+                .thenReturn(failingWrite)
+                .thenReturn(CompletableFuture.completedFuture(null));
+        FilesStorageDao filesStorageDao = new FilesStorageDao(storageDao, new HistoryArchiveDao(archiveFolder));
+
+        DownloadingFile file = downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0);
+        filesStorageDao.addFile(file);
+        filesStorageDao.updateFile(file.commitBytes(DownloadingFileStatus.DOWNLOADING, 10));
+        DownloadingFile newerFile = file.commitBytes(DownloadingFileStatus.DOWNLOADING, 20);
+        filesStorageDao.updateFile(newerFile);
+
+        // the newer file is equal to the failed one, as they differ only by the progress
+        failingWrite.completeExceptionally(new IOException("Failed to write"));
+        assertSame(newerFile, filesStorageDao.getById("file-1"));
+        Files.delete(archiveFolder);
+    }
+
+    @Test
+    void commitProgressWithoutReplacingFile() throws Exception {
+        Path archiveFolder = Files.createTempDirectory("remote-downloader-archive-");
+        StorageDao storageDao = mock(StorageDao.class);
+        when(storageDao.readAllRecords(StorageModel.DOWNLOADING_FILE)).thenReturn(Map.of());
+        when(storageDao.saveRecord(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(storageDao.saveProgress(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(storageDao.saveProgress(any(), anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(null));
+        FilesStorageDao filesStorageDao = new FilesStorageDao(storageDao, new HistoryArchiveDao(archiveFolder));
+        ProgressTable progressTable = filesStorageDao.getProgressTable();
+
+        DownloadingFile file = downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0);
+        filesStorageDao.addFile(file);
+        int slot = progressTable.getSlot(file.id);
+        filesStorageDao.commitProgress(file, slot, 50);
+        assertSame(file, filesStorageDao.getById("file-1"));
+        assertEquals(50, progressTable.getCommitedDownloadedBytes(file));
+        verify(storageDao).saveProgress(eq(file), eq(50L), anyLong());
+
+        // the late commit of the downloader doesn't persist the paused file as downloading
+        DownloadingFile pausedFile = file.commitBytes(DownloadingFileStatus.PAUSED, 60);
+        filesStorageDao.updateFile(pausedFile);
+        filesStorageDao.commitProgress(file, slot, 70);
+        verify(storageDao, never()).saveProgress(eq(file), eq(70L), anyLong());
+        assertSame(pausedFile, filesStorageDao.getById("file-1"));
+        assertEquals(60, progressTable.getCommitedDownloadedBytes(pausedFile));
+        Files.delete(archiveFolder);
+    }
+
+    @Test
+    void compactLogToLatestRecordStates() throws Exception {
+        properties.setProperty("storage.coalesce.window.millis", "0");
+        LogStorageDao storageDao = createStorageDao(threadPoolsHolder);
+
+        DownloadingFile file = downloadingFile("file-1", DownloadingFileStatus.DOWNLOADING, 0);
+        DownloadingFile deletedFile = downloadingFile("file-2", DownloadingFileStatus.DOWNLOADING, 0);
+        storageDao.saveRecord(file);
+        storageDao.saveRecord(deletedFile);
+        awaitStorageThread();
+        storageDao.saveProgress(file.commitBytes(DownloadingFileStatus.DOWNLOADED, 100));
+        storageDao.deleteRecord(deletedFile);
+        awaitStorageThread();
+        assertEquals(4, Files.readAllLines(storageFile).size());
+
+        threadPoolsHolder.storageThreadPoolExecutor.submit(storageDao::compact).get();
+        assertEquals(1, Files.readAllLines(storageFile).size());
+
+        storageDao.saveRecord(new User("user", "password", false, 0));
+        threadPoolsHolder.close();
+
+        LogStorageDao reloaded = createStorageDao(new ThreadPoolsHolder());
+        Map<String, DownloadingFile> files = reloaded.readAllRecords(StorageModel.DOWNLOADING_FILE);
+        assertEquals(1, files.size());
+        assertEquals(DownloadingFileStatus.DOWNLOADED, files.get("file-1").status);
+        assertEquals(100, files.get("file-1").commitedDownloadedBytes);
+        assertEquals(1, reloaded.<String, User>readAllRecords(StorageModel.USER).size());
+    }
+
+    @Test
+    void shareRepeatedStringsOfReplayedFiles() throws Exception {
+        LogStorageDao storageDao = createStorageDao(threadPoolsHolder);
+        storageDao.saveRecord(downloadingFile("file-1", DownloadingFileStatus.DOWNLOADED, 100));
+        storageDao.saveRecord(downloadingFile("file-2", DownloadingFileStatus.DOWNLOADED, 100));
+        threadPoolsHolder.close();
+
+        Map<String, DownloadingFile> files = createStorageDao(new ThreadPoolsHolder())
+                .readAllRecords(StorageModel.DOWNLOADING_FILE);
+        DownloadingFile file1 = files.get("file-1");
+        DownloadingFile file2 = files.get("file-2");
+        assertEquals("http://127.0.0.1:18081/file-1", file1.getUrl());
+        assertEquals("http://127.0.0.1:18081/file-2", file2.getUrl());
+        assertSame(file1.ownerUsername, file2.ownerUsername);
+        assertSame(file1.getUrlPrefix(), file2.getUrlPrefix());
+    }
+
+    private LogStorageDao createStorageDao(ThreadPoolsHolder threadPoolsHolder) {
+        return new LogStorageDao(
+                storageFile,
+                threadPoolsHolder.storageThreadPoolExecutor,
+                properties.getStorageCoalesceWindowMillis(),
+                properties.getStorageFsync());
+    }
+
+    private void awaitStorageThread() throws Exception {
+        threadPoolsHolder.storageThreadPoolExecutor.submit(() -> {}).get();
+    }
+
+    static DownloadingFile downloadingFile(String id, DownloadingFileStatus status, long commitedBytes) {
+        return new DownloadingFile(
+                id,
+                id + ".txt",
+                null,
+                "http://127.0.0.1:18081/" + id,
+                "admin",
+                status,
+                100,
+                commitedBytes,
+                0,
+                0
+        );
+    }
+}
@@ -0,0 +1,55 @@
+package io.remotedownloader;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.remotedownloader.model.SessionLag;
+import io.remotedownloader.server.OutboundBudgetHandler;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutboundBudgetHandlerTest {
+    @Test
+    void disconnectSessionOverBudget() {
+        EmbeddedChannel channel = new EmbeddedChannel(new OutboundBudgetHandler(1000, 50));
+        channel.write(Unpooled.wrappedBuffer(new byte[600]));
+        channel.write(Unpooled.wrappedBuffer(new byte[600]));
+
+        SessionLag lag = SessionLag.of(channel);
+        // the outbound buffer counts the overhead of every entry as well
+        assertTrue(lag.getPendingBytes() > 1200);
+        assertEquals(lag.getPendingBytes(), lag.getMaxPendingBytes());
+
+        channel.advanceTimeBy(30, TimeUnit.MILLISECONDS);
+        channel.runScheduledPendingTasks();
+        assertTrue(channel.isOpen());
+
+        channel.advanceTimeBy(20, TimeUnit.MILLISECONDS);
+        channel.runScheduledPendingTasks();
+        assertFalse(channel.isOpen());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void keepSessionCaughtUpBeforeTimeout() {
+        EmbeddedChannel channel = new EmbeddedChannel(new OutboundBudgetHandler(1000, 50));
+        channel.write(Unpooled.wrappedBuffer(new byte[1200]));
+        channel.advanceTimeBy(30, TimeUnit.MILLISECONDS);
+        channel.flush();
+        channel.write(Unpooled.wrappedBuffer(new byte[10]));
+
+        channel.advanceTimeBy(20, TimeUnit.MILLISECONDS);
+        channel.runScheduledPendingTasks();
+        assertTrue(channel.isOpen());
+
+        SessionLag lag = SessionLag.of(channel);
+        assertTrue(lag.getPendingBytes() < 1000);
+        assertTrue(lag.getMaxPendingBytes() > 1200);
+        assertEquals(0, lag.getOverBudgetMillis());
+        channel.finishAndReleaseAll();
+    }
+}
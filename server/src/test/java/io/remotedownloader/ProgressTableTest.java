@@ -0,0 +1,79 @@
+package io.remotedownloader;
+
+import io.remotedownloader.dao.ProgressTable;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ProgressTableTest {
+    @Test
+    void trackProgressOfDownloadingFiles() {
+        ProgressTable progressTable = new ProgressTable();
+        DownloadingFile file1 = downloadingFile("file-1", 10);
+        DownloadingFile file2 = downloadingFile("file-2", 20);
+
+        int slot1 = progressTable.acquire(file1.id, file1.commitedDownloadedBytes);
+        int slot2 = progressTable.acquire(file2.id, file2.commitedDownloadedBytes);
+        assertEquals(slot1, progressTable.acquire(file1.id, 0));
+        assertEquals(2, progressTable.size());
+
+        progressTable.setDownloadedBytes(slot1, file1.id, 15);
+        progressTable.setSpeedBytesPerSecond(slot1, file1.id, 5);
+        assertEquals(15, progressTable.getDownloadedBytes(file1));
+        assertEquals(5, progressTable.getSpeedBytesPerSecond(file1));
+        assertEquals(20, progressTable.getDownloadedBytes(file2));
+        assertEquals(0, progressTable.getSpeedBytesPerSecond(file2));
+
+        // the committed bytes are kept in the slot, ahead of the file
+        progressTable.setCommitedDownloadedBytes(slot1, file1.id, 12);
+        assertEquals(12, progressTable.getCommitedDownloadedBytes(file1));
+        assertEquals(20, progressTable.getCommitedDownloadedBytes(file2));
+
+        // the released file falls back to the committed bytes and its slot is reused
+        progressTable.release(file1.id);
+        assertEquals(-1, progressTable.getSlot(file1.id));
+        assertEquals(10, progressTable.getDownloadedBytes(file1));
+        assertEquals(0, progressTable.getSpeedBytesPerSecond(file1));
+        assertEquals(10, progressTable.getCommitedDownloadedBytes(file1));
+
+        DownloadingFile file3 = downloadingFile("file-3", 30);
+        assertEquals(slot1, progressTable.acquire(file3.id, file3.commitedDownloadedBytes));
+
+        // late writes of the previous owner of the slot are ignored
+        progressTable.setDownloadedBytes(slot1, file1.id, 100);
+        assertEquals(30, progressTable.getDownloadedBytes(file3));
+        assertEquals(slot2, progressTable.getSlot(file2.id));
+    }
+
+    @Test
+    void growBeyondSinglePage() {
+        ProgressTable progressTable = new ProgressTable();
+        for (int i = 0; i < 5000; i++) {
+            int slot = progressTable.acquire("file-" + i, 0);
+            progressTable.setDownloadedBytes(slot, "file-" + i, i);
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, progressTable.getDownloadedBytes(downloadingFile("file-" + i, 0)));
+        }
+        progressTable.clear();
+        assertEquals(0, progressTable.size());
+    }
+
+    private static DownloadingFile downloadingFile(String id, long commitedDownloadedBytes) {
+        return new DownloadingFile(
+                id,
+                id + ".txt",
+                null,
+                "http://127.0.0.1:18081/" + id,
+                "admin",
+                DownloadingFileStatus.DOWNLOADING,
+                100,
+                commitedDownloadedBytes,
+                0,
+                0
+        );
+    }
+}
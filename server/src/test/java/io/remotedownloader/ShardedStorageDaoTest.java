@@ -0,0 +1,116 @@
+package io.remotedownloader;
+
+import io.remotedownloader.dao.LogStorageDao;
+import io.remotedownloader.dao.ShardedStorageDao;
+import io.remotedownloader.dao.StorageDao;
+import io.remotedownloader.dao.ThreadPoolsHolder;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.model.StorageModel;
+import io.remotedownloader.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedStorageDaoTest {
+    private Path storageFolder;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.storageFolder = Files.createTempDirectory("remote-downloader-storage-");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(storageFolder)) {
+            paths.sorted((a, b) -> b.compareTo(a)).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    void splitRecordsBetweenShardsByOwner() throws IOException {
+        ThreadPoolsHolder threadPoolsHolder = new ThreadPoolsHolder(4);
+        StorageDao storageDao = createStorageDao(threadPoolsHolder);
+        for (int i = 0; i < 20; i++) {
+            storageDao.saveRecord(new User("user-" + i, "password", false, 0));
+            storageDao.saveRecord(downloadingFile("file-" + i, "user-" + i));
+        }
+        threadPoolsHolder.close();
+
+        for (int shard = 0; shard < 4; shard++) {
+            assertTrue(Files.size(shardPath(shard)) > 0, "shard " + shard + " is empty");
+        }
+
+        ThreadPoolsHolder reloadedThreadPoolsHolder = new ThreadPoolsHolder(4);
+        StorageDao reloaded = createStorageDao(reloadedThreadPoolsHolder);
+        Map<String, DownloadingFile> files = reloaded.readAllRecords(StorageModel.DOWNLOADING_FILE);
+        Map<String, User> users = reloaded.readAllRecords(StorageModel.USER);
+        assertEquals(20, files.size());
+        assertEquals(20, users.size());
+        reloadedThreadPoolsHolder.close();
+    }
+
+    @Test
+    void moveRecordsWhenShardsCountIsChanged() throws IOException {
+        ThreadPoolsHolder threadPoolsHolder = new ThreadPoolsHolder(1);
+        StorageDao storageDao = createStorageDao(threadPoolsHolder);
+        for (int i = 0; i < 20; i++) {
+            storageDao.saveRecord(downloadingFile("file-" + i, "user-" + i));
+        }
+        threadPoolsHolder.close();
+
+        ThreadPoolsHolder shardedThreadPoolsHolder = new ThreadPoolsHolder(4);
+        StorageDao sharded = createStorageDao(shardedThreadPoolsHolder);
+        assertEquals(20, sharded.readAllRecords(StorageModel.DOWNLOADING_FILE).size());
+        // the moved records are already deleted from the previous shard
+        Map<String, DownloadingFile> previousShardFiles = new LogStorageDao(shardPath(0), null, 0, false)
+                .readAllRecords(StorageModel.DOWNLOADING_FILE);
+        for (DownloadingFile file : previousShardFiles.values()) {
+            assertEquals(0, Math.floorMod(file.ownerUsername.hashCode(), 4), file.id);
+        }
+        assertTrue(previousShardFiles.size() < 20);
+        // deleting the record from the new shard, it should not be resurrected from the old one
+        sharded.deleteRecord(downloadingFile("file-1", "user-1"));
+        shardedThreadPoolsHolder.close();
+
+        ThreadPoolsHolder reloadedThreadPoolsHolder = new ThreadPoolsHolder(4);
+        Map<String, DownloadingFile> files = createStorageDao(reloadedThreadPoolsHolder)
+                .readAllRecords(StorageModel.DOWNLOADING_FILE);
+        assertEquals(19, files.size());
+        reloadedThreadPoolsHolder.close();
+    }
+
+    private StorageDao createStorageDao(ThreadPoolsHolder threadPoolsHolder) {
+        return new ShardedStorageDao(threadPoolsHolder.storageThreadPoolExecutors, (shard, executor) ->
+                new LogStorageDao(shardPath(shard), executor, 0, false));
+    }
+
+    private Path shardPath(int shard) {
+        return storageFolder.resolve("storage." + shard);
+    }
+
+    private static DownloadingFile downloadingFile(String id, String owner) {
+        return new DownloadingFile(
+                id,
+                id + ".txt",
+                null,
+                "http://127.0.0.1:18081/" + id,
+                owner,
+                DownloadingFileStatus.DOWNLOADED,
+                100,
+                100,
+                0,
+                0
+        );
+    }
+}
@@ -0,0 +1,117 @@
+package io.remotedownloader.benchmark;
+
+import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.HistoryArchiveDao;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the progress updates, of the user files scan, done by the report worker,
+ * compared to the scan of the active files only, and of the search, depending on the number of files of a single user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class FilesStorageDaoBenchmark {
+    private static final String USERNAME = "user";
+    private static final int ACTIVE_FILES = 10;
+
+    @Param({"1000", "100000", "1000000"})
+    public int filesPerUser;
+
+    private FilesStorageDao filesStorageDao;
+    private DownloadingFile[] files;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        HistoryArchiveDao historyArchiveDao = new HistoryArchiveDao(Files.createTempDirectory("benchmark-archive-"));
+        this.filesStorageDao = new FilesStorageDao(new NoopStorageDao(), historyArchiveDao);
+        this.files = new DownloadingFile[filesPerUser];
+        for (int i = 0; i < filesPerUser; i++) {
+            files[i] = new DownloadingFile(
+                    "file-" + i,
+                    "file-" + i + ".txt",
+                    null,
+                    "http://127.0.0.1/file-" + i,
+                    USERNAME,
+                    DownloadingFileStatus.DOWNLOADED,
+                    100,
+                    100,
+                    i,
+                    i
+            );
+            filesStorageDao.addFile(files[i]);
+        }
+        for (int i = 0; i < ACTIVE_FILES; i++) {
+            filesStorageDao.updateFile(files[i].commitBytes(DownloadingFileStatus.DOWNLOADING, 50));
+        }
+    }
+
+    @Benchmark
+    public Object updateFile() {
+        DownloadingFile file = files[ThreadLocalRandom.current().nextInt(filesPerUser)];
+        return filesStorageDao.updateFile(file.commitBytes(DownloadingFileStatus.DOWNLOADED, 100));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long scanUserFiles() {
+        long downloadingBytes = 0;
+        for (DownloadingFile file : filesStorageDao.getUserFiles(USERNAME)) {
+            if (file.status == DownloadingFileStatus.DOWNLOADING) {
+                downloadingBytes += file.totalBytes;
+            }
+        }
+        return downloadingBytes;
+    }
+
+    @Benchmark
+    public long scanActiveUserFiles() {
+        long downloadingBytes = 0;
+        for (DownloadingFile file : filesStorageDao.getUserFilesByStatus(USERNAME, DownloadingFileStatus.DOWNLOADING)) {
+            downloadingBytes += file.totalBytes;
+        }
+        return downloadingBytes;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object searchUserFiles() {
+        String query = "file-" + ThreadLocalRandom.current().nextInt(filesPerUser) + ".txt";
+        return filesStorageDao.searchUserFiles(USERNAME, query, null, 0, 20);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object searchUserFilesByStatus() {
+        return filesStorageDao.searchUserFiles(USERNAME, null, DownloadingFileStatus.DOWNLOADED, 0, 20);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(FilesStorageDaoBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,63 @@
+package io.remotedownloader.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.HistoryArchiveDao;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.util.JsonUtil;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.UUID;
+
+/**
+ * Measures the heap retained by {@link FilesStorageDao} per history record.
+ * Records are read from JSON, as they are on the storage replay, so every record comes with its own strings.
+ * Run with the number of records as an argument, e.g. {@code -Xmx8g ... HeapPerRecordReport 1000000}.
+ */
+public class HeapPerRecordReport {
+    private static final int USERS = 100;
+    private static final int FOLDERS = 20;
+    private static final int HOSTS = 50;
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        ObjectReader fileReader = JsonUtil.MAPPER.readerFor(DownloadingFile.class);
+        HistoryArchiveDao historyArchiveDao = new HistoryArchiveDao(Files.createTempDirectory("heap-report-archive-"));
+
+        long before = usedHeap();
+        FilesStorageDao filesStorageDao = new FilesStorageDao(new NoopStorageDao(), historyArchiveDao);
+        for (int i = 0; i < records; i++) {
+            DownloadingFile file = new DownloadingFile(
+                    UUID.randomUUID().toString(),
+                    "file-" + i + ".iso",
+                    "folder-" + (i % FOLDERS),
+                    "https://mirror-" + (i % HOSTS) + ".example.com/releases/2024/file-" + i + ".iso",
+                    "user-" + (i % USERS),
+                    DownloadingFileStatus.DOWNLOADED,
+                    1024L * 1024 * 1024,
+                    1024L * 1024 * 1024,
+                    i,
+                    i
+            );
+            filesStorageDao.addFile(fileReader.readValue(JsonUtil.MAPPER.writeValueAsBytes(file)));
+        }
+        long after = usedHeap();
+
+        System.out.printf("Records: %d, retained heap: %d MB, per record: %d bytes%n",
+                records, (after - before) / (1024 * 1024), (after - before) / records);
+        // keeps the storage reachable until the measurement is done
+        System.out.println("Owners: " + filesStorageDao.getOwners().size());
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+}
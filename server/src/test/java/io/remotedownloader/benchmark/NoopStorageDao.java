@@ -0,0 +1,44 @@
+package io.remotedownloader.benchmark;
+
+import io.remotedownloader.dao.StorageDao;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.StorageModel;
+import io.remotedownloader.model.StorageRecord;
+import io.remotedownloader.util.LatencyHistogram;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Storage, which doesn't persist anything, so the benchmarks measure only the in-memory structures.
+ */
+public class NoopStorageDao implements StorageDao {
+    private static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+    private final LatencyHistogram acknowledgementLatency = new LatencyHistogram();
+
+    @Override
+    public CompletableFuture<Void> saveRecord(StorageRecord<?> record) {
+        return COMPLETED;
+    }
+
+    @Override
+    public CompletableFuture<Void> saveProgress(DownloadingFile file, long commitedDownloadedBytes, long updatedAt) {
+        return COMPLETED;
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteRecord(StorageRecord<?> record) {
+        return COMPLETED;
+    }
+
+    @Override
+    public <I, T extends StorageRecord<I>> Map<I, T> readAllRecords(StorageModel model) {
+        return new HashMap<>();
+    }
+
+    @Override
+    public LatencyHistogram getAcknowledgementLatency() {
+        return acknowledgementLatency;
+    }
+}
@@ -0,0 +1,108 @@
+package io.remotedownloader.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.model.dto.DownloadFileDTO;
+import io.remotedownloader.model.dto.FilesHistoryReportDTO;
+import io.remotedownloader.model.dto.FilesStatisticsDTO;
+import io.remotedownloader.protocol.PayloadFormat;
+import io.remotedownloader.protocol.ProtocolCommands;
+import io.remotedownloader.protocol.ProtocolEncoderDecoder;
+import io.remotedownloader.protocol.StringMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serializing a report into a frame and of decoding it on the client in every payload format.
+ * Bytes on the wire of every report are printed at the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadFormatBenchmark {
+    @Param({"JSON", "SMILE"})
+    public PayloadFormat format;
+
+    @Param({"20", "500"})
+    public int files;
+
+    private FilesHistoryReportDTO report;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<DownloadFileDTO> reportedFiles = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            reportedFiles.add(new DownloadFileDTO(
+                    "0b5e4c2a-7f3d-4a8e-9c61-" + String.format("%012d", i),
+                    "ubuntu-24.04." + i + "-desktop-amd64.iso",
+                    DownloadingFileStatus.DOWNLOADING,
+                    6_114_656_256L,
+                    1_073_741_824L + i * 4096L,
+                    10_485_760L + i
+            ));
+        }
+        Map<DownloadingFileStatus, Long> filesCountByStatus = new EnumMap<>(DownloadingFileStatus.class);
+        for (DownloadingFileStatus status : DownloadingFileStatus.values()) {
+            filesCountByStatus.put(status, (long) files);
+        }
+        this.report = new FilesHistoryReportDTO(
+                reportedFiles, new FilesStatisticsDTO(filesCountByStatus, 1L << 40, 10L << 20), null);
+
+        ByteBuf buf = encodeReport();
+        try {
+            System.out.printf("%n%s report of %d files: %d bytes on the wire%n", format, files, buf.readableBytes());
+            this.payload = ByteBufUtil.getBytes(buf, 6, buf.readableBytes() - 6);
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Benchmark
+    public int encode() throws Exception {
+        ByteBuf buf = encodeReport();
+        int size = buf.readableBytes();
+        buf.release();
+        return size;
+    }
+
+    @Benchmark
+    public FilesHistoryReportDTO decode() throws Exception {
+        return format.mapper.readValue(payload, FilesHistoryReportDTO.class);
+    }
+
+    private ByteBuf encodeReport() throws Exception {
+        StringMessage message = StringMessage.json(0, ProtocolCommands.FILES_HISTORY_REPORT, report);
+        return ProtocolEncoderDecoder.encode(ByteBufAllocator.DEFAULT, message, format);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(PayloadFormatBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+}
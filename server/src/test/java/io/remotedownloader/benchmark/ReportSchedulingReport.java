@@ -0,0 +1,196 @@
+package io.remotedownloader.benchmark;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalIoHandler;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.HistoryArchiveDao;
+import io.remotedownloader.dao.ProgressTable;
+import io.remotedownloader.dao.SessionDao;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.protocol.ProtocolEncoderDecoder;
+import io.remotedownloader.worker.DownloadingFilesReportWorker;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the scheduling jitter of the reports and the CPU time of the threads, which build and write them.
+ * Sessions are connected over the local transport, the peers record the deviation of the time between the reports from the interval.
+ * Run with the mode as an argument: {@code single-thread} ticks on the single scheduled jobs thread,
+ * which hands the reports to the event loops and waits for them one by one,
+ * {@code event-loop} ticks on every event loop on its own, as the server does.
+ */
+public class ReportSchedulingReport {
+    private static final int SESSIONS = 4000;
+    private static final int USERS = 400;
+    private static final int DOWNLOADING_FILES_PER_USER = 10;
+    private static final int SERVER_THREADS = 4;
+    private static final int CLIENT_THREADS = 2;
+    private static final int REPORT_INTERVAL_MILLIS = 200;
+    private static final long WARMUP_MILLIS = 5_000;
+    private static final long MEASUREMENT_MILLIS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        boolean eventLoop = args.length == 0 || args[0].equals("event-loop");
+
+        FilesStorageDao filesStorageDao = new FilesStorageDao(
+                new NoopStorageDao(), new HistoryArchiveDao(Files.createTempDirectory("scheduling-report-archive-")));
+        ProgressTable progressTable = filesStorageDao.getProgressTable();
+        for (int user = 0; user < USERS; user++) {
+            for (int i = 0; i < DOWNLOADING_FILES_PER_USER; i++) {
+                String id = "file-" + user + '-' + i;
+                filesStorageDao.addFile(new DownloadingFile(
+                        id,
+                        id + ".iso",
+                        null,
+                        "https://example.com/releases/" + id + ".iso",
+                        "user-" + user,
+                        DownloadingFileStatus.DOWNLOADING,
+                        1024L * 1024 * 1024,
+                        0,
+                        i,
+                        i
+                ));
+                int slot = progressTable.getSlot(id);
+                progressTable.setDownloadedBytes(slot, id, 512L * 1024 * 1024);
+                progressTable.setSpeedBytesPerSecond(slot, id, 10L * 1024 * 1024);
+            }
+        }
+
+        SessionDao sessionDao = new SessionDao(REPORT_INTERVAL_MILLIS);
+        EventLoopGroup serverGroup = new MultiThreadIoEventLoopGroup(
+                SERVER_THREADS, new DefaultThreadFactory("server-loop"), LocalIoHandler.newFactory());
+        EventLoopGroup clientGroup = new MultiThreadIoEventLoopGroup(
+                CLIENT_THREADS, new DefaultThreadFactory("client-loop"), LocalIoHandler.newFactory());
+        AtomicInteger sessions = new AtomicInteger();
+        LocalAddress address = new LocalAddress("scheduling-report");
+        Channel serverChannel = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(LocalServerChannel.class)
+                .childHandler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        channel.pipeline().addLast(new ProtocolEncoderDecoder(), new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void handlerAdded(ChannelHandlerContext ctx) {
+                                String username = "user-" + (sessions.getAndIncrement() % USERS);
+                                sessionDao.addSubscription(ctx, username, false, 0);
+                            }
+                        });
+                    }
+                })
+                .bind(address).sync().channel();
+
+        List<ReportReceiver> receivers = new ArrayList<>();
+        Bootstrap clientBootstrap = new Bootstrap().group(clientGroup).channel(LocalChannel.class);
+        for (int i = 0; i < SESSIONS; i++) {
+            ReportReceiver receiver = new ReportReceiver();
+            receivers.add(receiver);
+            clientBootstrap.handler(receiver).connect(address).sync();
+        }
+
+        DownloadingFilesReportWorker reportWorker = new DownloadingFilesReportWorker(filesStorageDao, sessionDao);
+        ScheduledExecutorService scheduledJobs = Executors.newSingleThreadScheduledExecutor(
+                new DefaultThreadFactory("Scheduled-Jobs"));
+        if (eventLoop) {
+            reportWorker.start(serverGroup);
+        } else {
+            scheduledJobs.scheduleAtFixedRate(reportWorker::reportDue,
+                    DownloadingFilesReportWorker.TICK_MILLIS, DownloadingFilesReportWorker.TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        Thread.sleep(WARMUP_MILLIS);
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Map<String, Long> cpuBefore = threadCpuTimes(threadMXBean);
+        for (ReportReceiver receiver : receivers) {
+            receiver.measuring = true;
+        }
+        Thread.sleep(MEASUREMENT_MILLIS);
+        for (ReportReceiver receiver : receivers) {
+            receiver.measuring = false;
+        }
+        Map<String, Long> cpuAfter = threadCpuTimes(threadMXBean);
+
+        scheduledJobs.shutdownNow();
+        serverChannel.close().sync();
+        serverGroup.shutdownGracefully().sync();
+        clientGroup.shutdownGracefully().sync();
+
+        long[] jitter = receivers.stream()
+                .flatMapToLong(receiver -> receiver.jitterMicros.stream().mapToLong(Long::longValue))
+                .sorted()
+                .toArray();
+        System.out.printf("Mode: %s, sessions: %d, users: %d, interval: %d ms%n",
+                eventLoop ? "event-loop" : "single-thread", SESSIONS, USERS, REPORT_INTERVAL_MILLIS);
+        System.out.printf("Reports: %d, jitter p50: %.2f ms, p99: %.2f ms, p99.9: %.2f ms, max: %.2f ms%n",
+                jitter.length,
+                percentile(jitter, 0.5), percentile(jitter, 0.99), percentile(jitter, 0.999),
+                jitter.length > 0 ? jitter[jitter.length - 1] / 1000.0 : 0);
+        System.out.println("CPU time per thread, ms:");
+        for (Map.Entry<String, Long> entry : cpuAfter.entrySet()) {
+            long cpuMillis = (entry.getValue() - cpuBefore.getOrDefault(entry.getKey(), 0L)) / 1_000_000;
+            if (cpuMillis > 0) {
+                System.out.printf("  %-24s %6d%n", entry.getKey(), cpuMillis);
+            }
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted.length > 0 ? sorted[(int) Math.min(sorted.length - 1, sorted.length * percentile)] / 1000.0 : 0;
+    }
+
+    private static Map<String, Long> threadCpuTimes(ThreadMXBean threadMXBean) {
+        Map<String, Long> result = new TreeMap<>();
+        for (long threadId : threadMXBean.getAllThreadIds()) {
+            ThreadInfo threadInfo = threadMXBean.getThreadInfo(threadId);
+            long cpuTime = threadMXBean.getThreadCpuTime(threadId);
+            if (threadInfo != null && cpuTime > 0) {
+                result.put(threadInfo.getThreadName(), cpuTime);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records, how far from the interval after the previous one every report comes.
+     */
+    private static class ReportReceiver extends ChannelInboundHandlerAdapter {
+        private final List<Long> jitterMicros = new ArrayList<>();
+        private volatile boolean measuring;
+        private long lastReportAt;
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+            long now = System.nanoTime();
+            if (measuring && lastReportAt != 0) {
+                long intervalMicros = (now - lastReportAt) / 1000;
+                jitterMicros.add(Math.abs(intervalMicros - REPORT_INTERVAL_MILLIS * 1000L));
+            }
+            this.lastReportAt = now;
+        }
+    }
+}
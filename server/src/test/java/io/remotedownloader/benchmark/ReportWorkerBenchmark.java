@@ -0,0 +1,179 @@
+package io.remotedownloader.benchmark;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.MultiThreadIoEventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalIoHandler;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.remotedownloader.dao.FilesStorageDao;
+import io.remotedownloader.dao.HistoryArchiveDao;
+import io.remotedownloader.dao.ProgressTable;
+import io.remotedownloader.dao.SessionDao;
+import io.remotedownloader.model.DownloadingFile;
+import io.remotedownloader.model.DownloadingFileStatus;
+import io.remotedownloader.protocol.ProtocolEncoderDecoder;
+import io.remotedownloader.worker.DownloadingFilesReportWorker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of a single report round of 1000 sessions, split between the users,
+ * each downloading a few files. The sessions are connected over the local transport and spread
+ * across the event loops, as the server does, so the report of a user is shared only by its sessions on the same loop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportWorkerBenchmark {
+    private static final int SESSIONS = 1000;
+    private static final int DOWNLOADING_FILES_PER_USER = 10;
+
+    @Param({"100", "1000"})
+    public int users;
+
+    @Param({"1", "4"})
+    public int eventLoops;
+
+    private EventLoopGroup serverGroup;
+    private EventLoopGroup clientGroup;
+    private Channel serverChannel;
+    private final AtomicLong receivedReports = new AtomicLong();
+    private long sentReports;
+    private DownloadingFilesReportWorker reportWorker;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        HistoryArchiveDao historyArchiveDao = new HistoryArchiveDao(Files.createTempDirectory("benchmark-archive-"));
+        FilesStorageDao filesStorageDao = new FilesStorageDao(new NoopStorageDao(), historyArchiveDao);
+        ProgressTable progressTable = filesStorageDao.getProgressTable();
+        for (int user = 0; user < users; user++) {
+            for (int i = 0; i < DOWNLOADING_FILES_PER_USER; i++) {
+                String id = "file-" + user + '-' + i;
+                filesStorageDao.addFile(new DownloadingFile(
+                        id,
+                        id + ".iso",
+                        null,
+                        "https://example.com/releases/" + id + ".iso",
+                        "user-" + user,
+                        DownloadingFileStatus.DOWNLOADING,
+                        1024L * 1024 * 1024,
+                        0,
+                        i,
+                        i
+                ));
+                int slot = progressTable.getSlot(id);
+                progressTable.setDownloadedBytes(slot, id, 512L * 1024 * 1024);
+                progressTable.setSpeedBytesPerSecond(slot, id, 10L * 1024 * 1024);
+            }
+        }
+
+        SessionDao sessionDao = new SessionDao(1000);
+        this.serverGroup = new MultiThreadIoEventLoopGroup(
+                eventLoops, new DefaultThreadFactory("server-loop"), LocalIoHandler.newFactory());
+        this.clientGroup = new MultiThreadIoEventLoopGroup(
+                1, new DefaultThreadFactory("client-loop"), LocalIoHandler.newFactory());
+        AtomicInteger sessions = new AtomicInteger();
+        LocalAddress address = new LocalAddress("report-worker-benchmark");
+        this.serverChannel = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(LocalServerChannel.class)
+                .childHandler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        channel.pipeline().addLast(new ProtocolEncoderDecoder(), new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void handlerAdded(ChannelHandlerContext ctx) {
+                                String username = "user-" + (sessions.getAndIncrement() % users);
+                                sessionDao.addSubscription(ctx, username, false, 0);
+                            }
+                        });
+                    }
+                })
+                .bind(address).sync().channel();
+
+        Bootstrap clientBootstrap = new Bootstrap()
+                .group(clientGroup)
+                .channel(LocalChannel.class)
+                .handler(new ReportCounter());
+        for (int i = 0; i < SESSIONS; i++) {
+            clientBootstrap.connect(address).sync();
+        }
+        while (sessionDao.getDownloadingFilesReportSubscriptions().size() < SESSIONS) {
+            Thread.sleep(1);
+        }
+        this.reportWorker = new DownloadingFilesReportWorker(filesStorageDao, sessionDao);
+    }
+
+    @Benchmark
+    public void reportAll() {
+        reportWorker.reportAll();
+    }
+
+    /**
+     * Waits for the peers to receive the reports, so the channels stay writable and the next round isn't skipped.
+     */
+    @TearDown(Level.Invocation)
+    public void awaitReports() throws InterruptedException {
+        sentReports += SESSIONS;
+        while (receivedReports.get() < sentReports) {
+            Thread.sleep(0, 100_000);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        serverChannel.close().sync();
+        serverGroup.shutdownGracefully().sync();
+        clientGroup.shutdownGracefully().sync();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ReportWorkerBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+
+    /**
+     * Counts the reports received by all the peers.
+     */
+    @ChannelHandler.Sharable
+    private class ReportCounter extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ReferenceCountUtil.release(msg);
+            receivedReports.incrementAndGet();
+        }
+    }
+}
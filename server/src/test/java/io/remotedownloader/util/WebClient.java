@@ -2,6 +2,7 @@ package io.remotedownloader.util;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
@@ -27,28 +28,44 @@ import io.netty.handler.codec.http.websocketx.WebSocketVersion;
 import io.netty.util.ReferenceCountUtil;
 import io.remotedownloader.BaseTest;
 import io.remotedownloader.model.User;
+import io.remotedownloader.model.DownloadingFileStatus;
 import io.remotedownloader.model.dto.DownloadFileDTO;
 import io.remotedownloader.model.dto.DownloadUrlRequestDTO;
 import io.remotedownloader.model.dto.Error;
 import io.remotedownloader.model.dto.FileIdRequestDTO;
+import io.remotedownloader.model.dto.FilesDeltaReportDTO;
 import io.remotedownloader.model.dto.FilesHistoryReportDTO;
+import io.remotedownloader.model.dto.GetChangesRequestDTO;
+import io.remotedownloader.model.dto.GetChangesResponseDTO;
 import io.remotedownloader.model.dto.GetFilesHistoryRequestDTO;
 import io.remotedownloader.model.dto.ListFoldersRequestDTO;
 import io.remotedownloader.model.dto.ListFoldersResponseDTO;
 import io.remotedownloader.model.dto.LoginRequestDTO;
 import io.remotedownloader.model.dto.Page;
+import io.remotedownloader.model.dto.SearchFilesRequestDTO;
+import io.remotedownloader.model.dto.StatisticsResponseDTO;
+import io.remotedownloader.model.dto.SubscribeFilesRequestDTO;
+import io.remotedownloader.model.dto.SubscribeReportsRequestDTO;
+import io.remotedownloader.model.dto.UnsubscribeFilesRequestDTO;
 import io.remotedownloader.protocol.ProtocolCommands;
+import io.remotedownloader.protocol.PayloadFormat;
 import io.remotedownloader.protocol.ProtocolEncoderDecoder;
 import io.remotedownloader.protocol.StringMessage;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Mockito;
 
 import java.net.URI;
+import java.util.List;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.after;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.timeout;
@@ -59,6 +76,7 @@ public class WebClient {
     private final Channel channel;
     private final MultiThreadIoEventLoopGroup eventExecutors;
     private final MessageHandler messageHandler;
+    private final Set<Integer> binaryPayloadIds = ConcurrentHashMap.newKeySet();
     private int commandId;
 
     public WebClient() throws InterruptedException {
@@ -76,7 +94,7 @@ public class WebClient {
                 true,
                 new DefaultHttpHeaders()
         );
-        WebSocketClientHandler handler = new WebSocketClientHandler(handshaker);
+        WebSocketClientHandler handler = new WebSocketClientHandler(handshaker, binaryPayloadIds);
 
         this.channel = new Bootstrap()
                 .group(eventExecutors)
@@ -115,12 +133,32 @@ public class WebClient {
         return send(ProtocolCommands.LOGIN, req);
     }
 
+    /**
+     * Writes the following requests in the format, the responses are recognized by their content.
+     */
+    public WebClient usePayloadFormat(PayloadFormat format) {
+        PayloadFormat.set(channel, format);
+        return this;
+    }
+
+    /**
+     * @return whether the payload of the message was received in a binary format
+     */
+    public boolean isBinaryPayload(int id) {
+        getMessage(id);
+        return binaryPayloadIds.contains(id);
+    }
+
     public WebClient downloadFile(String url, String fileName, String path) {
         return send(ProtocolCommands.DOWNLOAD_URL, new DownloadUrlRequestDTO(url, fileName, path));
     }
 
     public DownloadFileDTO parseDownloadFile(int id) {
-        return getMessage(id).parseJson(DownloadFileDTO.class);
+        return parseDownloadFile(id, 500);
+    }
+
+    public DownloadFileDTO parseDownloadFile(int id, long timeoutMillis) {
+        return getMessage(id, timeoutMillis).parseJson(DownloadFileDTO.class);
     }
 
     public WebClient stopDownloading(String fileId) {
@@ -139,6 +177,41 @@ public class WebClient {
         return getMessage(id).parseJson(FilesHistoryReportDTO.class);
     }
 
+    /**
+     * Waits for a report, which is pushed or sent on a tick, matching the predicate.
+     */
+    public FilesHistoryReportDTO awaitFilesHistoryReport(Predicate<FilesHistoryReportDTO> predicate) {
+        ArgumentMatcher<StringMessage> matcher = m -> m.id() == 0
+                && m.command() == ProtocolCommands.FILES_HISTORY_REPORT
+                && predicate.test(m.parseJson(FilesHistoryReportDTO.class));
+        ArgumentCaptor<StringMessage> messageCaptor = ArgumentCaptor.forClass(StringMessage.class);
+        verify(messageHandler, timeout(5000).atLeastOnce()).message(argThat(matcher));
+        verify(messageHandler, atLeastOnce()).message(messageCaptor.capture());
+
+        for (StringMessage msg : messageCaptor.getAllValues()) {
+            if (matcher.matches(msg)) {
+                return msg.parseJson(FilesHistoryReportDTO.class);
+            }
+        }
+        throw new RuntimeException("Message is not found.");
+    }
+
+    public WebClient subscribeReports(boolean deltaReports, int reportIntervalMillis) {
+        return send(ProtocolCommands.SUBSCRIBE_REPORTS, new SubscribeReportsRequestDTO(deltaReports, reportIntervalMillis));
+    }
+
+    public WebClient subscribeFiles(List<String> fileIds, int pageOffset, int pageSize) {
+        return send(ProtocolCommands.SUBSCRIBE_FILES, new SubscribeFilesRequestDTO(fileIds, pageOffset, pageSize));
+    }
+
+    public WebClient unsubscribeFiles(List<String> fileIds, boolean page) {
+        return send(ProtocolCommands.UNSUBSCRIBE_FILES, new UnsubscribeFilesRequestDTO(fileIds, page));
+    }
+
+    public FilesDeltaReportDTO parseFilesDeltaReport(int id) {
+        return getMessage(id).parseJson(FilesDeltaReportDTO.class);
+    }
+
     public WebClient listFolders(String path) {
         return send(ProtocolCommands.LIST_FOLDERS, new ListFoldersRequestDTO(path));
     }
@@ -151,12 +224,40 @@ public class WebClient {
         return send(ProtocolCommands.GET_FILES_HISTORY, new GetFilesHistoryRequestDTO(offset, size));
     }
 
+    public WebClient getFiles(String cursor, int size) {
+        return send(ProtocolCommands.GET_FILES_HISTORY, new GetFilesHistoryRequestDTO(0, size, cursor));
+    }
+
+    public WebClient getFiles(int offset, int size, long version) {
+        return send(ProtocolCommands.GET_FILES_HISTORY, new GetFilesHistoryRequestDTO(offset, size, null, version));
+    }
+
+    public WebClient searchFiles(String query, DownloadingFileStatus status, int offset, int size) {
+        return send(ProtocolCommands.SEARCH_FILES, new SearchFilesRequestDTO(query, status, offset, size));
+    }
+
+    public WebClient getChanges(Long afterSequence, int size) {
+        return send(ProtocolCommands.GET_CHANGES, new GetChangesRequestDTO(afterSequence, size));
+    }
+
+    public GetChangesResponseDTO parseChanges(int id) {
+        return getMessage(id).parseJson(GetChangesResponseDTO.class);
+    }
+
+    public WebClient getStatistics() {
+        return send(ProtocolCommands.GET_STATISTICS, null);
+    }
+
+    public StatisticsResponseDTO parseStatistics(int id) {
+        return getMessage(id).parseJson(StatisticsResponseDTO.class);
+    }
+
     public Page<DownloadFileDTO> parseFilesPage(int id) {
         return getMessage(id).parseJson(new TypeReference<>() {});
     }
 
     private WebClient send(short command, Object data) {
-        StringMessage msg = new StringMessage(++commandId, command, JsonUtil.writeValueAsString(data));
+        StringMessage msg = new StringMessage(++commandId, command, JsonUtil.writeValueAsBytes(data));
         channel.writeAndFlush(msg);
         return this;
     }
@@ -177,8 +278,12 @@ public class WebClient {
     }
 
     private StringMessage getMessage(int id) {
+        return getMessage(id, 500);
+    }
+
+    private StringMessage getMessage(int id, long timeoutMillis) {
         ArgumentCaptor<StringMessage> messageCaptor = ArgumentCaptor.forClass(StringMessage.class);
-        verify(messageHandler, timeout(500).times(1))
+        verify(messageHandler, timeout(timeoutMillis).times(1))
                 .message(argThat(m -> m.id() == id && m.command() != ProtocolCommands.ERROR));
         verify(messageHandler, atLeastOnce()).message(messageCaptor.capture());
 
@@ -196,17 +301,30 @@ public class WebClient {
         return this;
     }
 
+    public WebClient verifyNotModified(int id) {
+        verify(messageHandler, timeout(500).times(1))
+                .message(argThat(m -> m.id() == id && m.data() == null && m.command() == ProtocolCommands.NOT_MODIFIED));
+        return this;
+    }
+
+    public void verifyNoMessage(int id) {
+        verify(messageHandler, after(200).never()).message(argThat(m -> m.id() == id));
+    }
+
     public void reset() {
         Mockito.clearInvocations(messageHandler);
+        binaryPayloadIds.clear();
         commandId = 0;
     }
 
     private static class WebSocketClientHandler extends ChannelInboundHandlerAdapter {
         private final WebSocketClientHandshaker handshaker;
+        private final Set<Integer> binaryPayloadIds;
         private ChannelPromise handshakeFuture;
 
-        public WebSocketClientHandler(WebSocketClientHandshaker handshaker) {
+        public WebSocketClientHandler(WebSocketClientHandshaker handshaker, Set<Integer> binaryPayloadIds) {
             this.handshaker = handshaker;
+            this.binaryPayloadIds = binaryPayloadIds;
         }
 
         public ChannelFuture handshakeFuture() {
@@ -239,7 +357,13 @@ public class WebClient {
                         }
                     }
                     case CloseWebSocketFrame ignored -> channel.close();
-                    case BinaryWebSocketFrame frame -> ctx.fireChannelRead(frame);
+                    case BinaryWebSocketFrame frame -> {
+                        ByteBuf content = frame.content();
+                        if (PayloadFormat.isSmile(content.slice(6, content.readableBytes() - 6))) {
+                            binaryPayloadIds.add(content.getInt(0));
+                        }
+                        ctx.fireChannelRead(frame);
+                    }
                     default -> System.out.println("Handled unknown message in WebSocketClientHandler: " + msg);
                 }
             } finally {